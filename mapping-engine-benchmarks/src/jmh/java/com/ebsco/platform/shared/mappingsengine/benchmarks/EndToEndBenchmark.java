@@ -0,0 +1,68 @@
+package com.ebsco.platform.shared.mappingsengine.benchmarks;
+
+import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import com.ebsco.platform.shared.mappingsengine.core.DefaultTransformers;
+import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine;
+import com.ebsco.platform.shared.mappingsengine.core.MaterializedPaths;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML in, pretty printed JSON out, as the CLI does it:  parse, apply the sample mappings, serialize.  The rawJson
+ * output leaves the subtrees no transform touches as raw JSON while parsing (rawJsonForUntransformedSubtrees).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int scale;
+
+    @Param({"tree", "rawJson"})
+    public String output;
+
+    private byte[] xml;
+    private XmlToRecordParser parser;
+    private MappingsEngine engine;
+    private final ObjectWriter writer = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    @Setup
+    public void setup() {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.SAMPLE_MAPPINGS);
+        List<TransformsConfig> transforms = BenchmarkDocuments.runnableSampleTransforms(mappings);
+        List<List<String>> materializedPaths = output.equals("rawJson") ?
+                MaterializedPaths.of(transforms, DefaultTransformers.TRANFORMERS) : null;
+        xml = BenchmarkDocuments.sampleXml(scale);
+        parser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), materializedPaths));
+        engine = MappingsEngine.builder().transforms(transforms).jsonProvider(parser.getJson()).build();
+        engine.getPlan();
+    }
+
+    @Benchmark
+    public String xmlToJson() throws Exception {
+        Map<String, Object> document = BenchmarkDocuments.parseDocument(parser, xml);
+        engine.processDocument(document);
+        return writer.writeValueAsString(document);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+}
@@ -0,0 +1,61 @@
+package com.ebsco.platform.shared.mappingsengine.benchmarks;
+
+import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
+import com.ebsco.platform.shared.mappingsengine.core.PathUtils;
+import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PathUtils#resolveTargetPaths} for the titles of every section, to an upward relative, a current node and an
+ * absolute target.  Resolving does not change the document, so it is parsed once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PathUtilsBenchmark {
+    private static final String SECTION_TITLES = "$.book.body[0].book-part[0].body[0].sec[*].title";
+
+    @Param({"@^sec+heading", "@+heading", "$.book.body[0].book-part[0].body[0].sec[*]+heading"})
+    public String targetPath;
+
+    @Param({"1", "10", "100", "1000"})
+    public int scale;
+
+    private DocumentContext documentContext;
+    private TargetPath compiledTargetPath;
+    private List<String> matchingPaths;
+
+    @Setup
+    public void setup() {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.BENCHMARK_MAPPINGS);
+        XmlToRecordParser parser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), null));
+        Configuration pathList = Configuration.builder()
+                .options(Option.AS_PATH_LIST, Option.SUPPRESS_EXCEPTIONS)
+                .jsonProvider(parser.getJson())
+                .build();
+        documentContext = JsonPath.using(pathList).parse(BenchmarkDocuments.parseDocument(parser, BenchmarkDocuments.sampleXml(scale)));
+        matchingPaths = documentContext.read(SECTION_TITLES);
+        compiledTargetPath = TargetPath.fromString(targetPath);
+    }
+
+    @Benchmark
+    public List<ResolvedPaths> resolveTargetPaths() {
+        return PathUtils.resolveTargetPaths(documentContext, compiledTargetPath, matchingPaths, true);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ebsco.platform.shared.mappingsengine.benchmarks;
+
+import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
+import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine;
+import com.ebsco.platform.shared.mappingsengine.xml.SyntheticDocumentConfig;
+import com.ebsco.platform.shared.mappingsengine.xml.SyntheticDocuments;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing, and parsing then mapping with synthetic-mappings.json, of generated articles much larger than the sample:
+ * fanOut^depth sections at the deepest level, each with its paragraphs of mixed content.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SyntheticDocumentBenchmark {
+
+    @Param({"2", "3"})
+    public int depth;
+
+    @Param({"2", "4", "8"})
+    public int fanOut;
+
+    private byte[] xml;
+    private XmlToRecordParser parser;
+    private MappingsEngine engine;
+
+    @Setup
+    public void setup() {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.SYNTHETIC_MAPPINGS);
+        xml = SyntheticDocuments.xml(SyntheticDocumentConfig.builder().depth(depth).fanOut(fanOut).build());
+        parser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), null));
+        engine = MappingsEngine.builder().transforms(mappings.getTransforms()).jsonProvider(parser.getJson()).build();
+        engine.getPlan();
+    }
+
+    @Benchmark
+    public XmlToRecordParser.Result parse() {
+        return parser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Map<String, Object> parseAndMap() {
+        Map<String, Object> document = BenchmarkDocuments.parseDocument(parser, xml);
+        engine.processDocument(document);
+        return document;
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+}
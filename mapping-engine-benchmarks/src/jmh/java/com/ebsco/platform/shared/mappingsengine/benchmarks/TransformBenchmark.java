@@ -0,0 +1,71 @@
+package com.ebsco.platform.shared.mappingsengine.benchmarks;
+
+import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
+import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * {@link MappingsEngine#processDocument(Object)} with a single transform of each type from benchmark-mappings.json.
+ * A transform changes the document, so each invocation gets a freshly parsed one, which is not measured.  At scale 1
+ * an invocation is short enough that the per invocation setup adds noise, compare the larger scales across releases.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TransformBenchmark {
+
+    @Param({"rename", "copy", "delete", "concat", "insert", "pivot", "multiselect", "disarray", "lookup"})
+    public String type;
+
+    @Param({"1", "10", "100", "1000"})
+    public int scale;
+
+    private byte[] xml;
+    private XmlToRecordParser parser;
+    private MappingsEngine engine;
+    private Map<String, Object> document;
+
+    @Setup
+    public void setup() {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.BENCHMARK_MAPPINGS);
+        xml = BenchmarkDocuments.sampleXml(scale);
+        parser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), null));
+        engine = MappingsEngine.builder()
+                .transforms(singletonList(BenchmarkDocuments.transform(mappings, type)))
+                .jsonProvider(parser.getJson())
+                .build();
+        // compiled here so the first measured invocation does not pay for it
+        engine.getPlan();
+    }
+
+    @Setup(Level.Invocation)
+    public void parseDocument() {
+        document = BenchmarkDocuments.parseDocument(parser, xml);
+    }
+
+    @Benchmark
+    public Object processDocument() {
+        engine.processDocument(document);
+        return document;
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.ebsco.platform.shared.mappingsengine.benchmarks;
+
+import com.ebsco.platform.shared.mappingsengine.xml.StreamingXmlToRecordParser;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParserConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML to JsonProvider tree, with the sample mappings' xml2json configuration, by the DOM and the streaming parser
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class XmlToRecordParserBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int scale;
+
+    @Param({"dom", "streaming"})
+    public String parser;
+
+    private byte[] xml;
+    private XmlToRecordParser domParser;
+    private StreamingXmlToRecordParser streamingParser;
+
+    @Setup
+    public void setup() {
+        XmlToRecordParserConfig config = BenchmarkDocuments.parserConfig(
+                BenchmarkDocuments.mappings(BenchmarkDocuments.SAMPLE_MAPPINGS).getConfiguration().getXml2json(), null);
+        xml = BenchmarkDocuments.sampleXml(scale);
+        domParser = new XmlToRecordParser(config);
+        streamingParser = new StreamingXmlToRecordParser(config);
+    }
+
+    @Benchmark
+    public XmlToRecordParser.Result parse() {
+        if (parser.equals("dom")) {
+            return domParser.parse(new ByteArrayInputStream(xml));
+        } else {
+            return streamingParser.parse(new ByteArrayInputStream(xml));
+        }
+    }
+}
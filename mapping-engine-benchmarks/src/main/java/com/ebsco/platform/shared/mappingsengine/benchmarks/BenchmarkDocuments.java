@@ -0,0 +1,178 @@
+package com.ebsco.platform.shared.mappingsengine.benchmarks;
+
+import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import com.ebsco.platform.shared.mappingsengine.config.Xml2JsonConfig;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParserConfig;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import lombok.SneakyThrows;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The inputs shared by the benchmarks:  the sample document from the repository's sample directory, scaled up by
+ * repeating its body sections, and the mappings that run on it.
+ * <p>
+ * The sample mappings run without their lookup transform, its table is not in the repository, and without the
+ * transforms of $.contrib, which is not in the sample document and fails the multiselect.  The transform types are each
+ * benchmarked on their own with benchmark-mappings.json, which only uses paths present in every scaled document, most
+ * of them through the repeated sections so their cost grows with the scale.
+ */
+@UtilityClass
+public class BenchmarkDocuments {
+    public static final String SAMPLE_XML = "/1920_rs_54172.xml";
+    public static final String SAMPLE_MAPPINGS = "/mappings-example.json";
+    public static final String BENCHMARK_MAPPINGS = "/benchmark-mappings.json";
+    // for the articles of SyntheticDocuments
+    public static final String SYNTHETIC_MAPPINGS = "/synthetic-mappings.json";
+
+    // book/body/book-part/body holds the sections that are repeated
+    private static final String[] REPEATED_PARENT = {"body", "book-part", "body"};
+
+    /**
+     * The sample document with the sections of its book part body repeated, scale 1 is the sample as it is
+     */
+    @NotNull
+    @SneakyThrows
+    public byte[] sampleXml(final int scale) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Scale must be at least 1, was " + scale);
+        }
+        Document document;
+        try (InputStream sample = resource(SAMPLE_XML)) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // like the parsers, the sample's DTD is not read
+            builder.setEntityResolver((publicId, systemId) -> new InputSource(new StringReader("")));
+            document = builder.parse(sample);
+        }
+        Element parent = document.getDocumentElement();
+        for (String name : REPEATED_PARENT) {
+            parent = firstChildElement(parent, name);
+            if (parent == null) {
+                throw new IllegalStateException("The sample document has no book/body/book-part/body element");
+            }
+        }
+        List<Node> sections = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && "sec".equals(child.getLocalName())) {
+                sections.add(child);
+            }
+        }
+        for (int copy = 1; copy < scale; copy++) {
+            for (Node section : sections) {
+                parent.appendChild(section.cloneNode(true));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        transformer.transform(new DOMSource(document), new StreamResult(out));
+        return out.toByteArray();
+    }
+
+    @NotNull
+    @SneakyThrows
+    public MappingsEngineJsonConfig mappings(@NotNull final String resourceName) {
+        try (InputStream json = resource(resourceName)) {
+            return MappingsEngineJsonConfig.fromJson(json);
+        }
+    }
+
+    /**
+     * The sample mappings that can run on the sample document, see the class comment
+     */
+    @NotNull
+    public List<TransformsConfig> runnableSampleTransforms(@NotNull final MappingsEngineJsonConfig sampleMappings) {
+        return sampleMappings.getTransforms().stream()
+                .filter(it -> !it.getType().equals("lookup"))
+                .filter(it -> !String.valueOf(it.getConfig().get("fromPath")).startsWith("$.contrib"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The one transform of benchmark-mappings.json with the given id, which is its type
+     */
+    @NotNull
+    public TransformsConfig transform(@NotNull final MappingsEngineJsonConfig mappings, @NotNull final String id) {
+        return mappings.getTransforms().stream()
+                .filter(it -> id.equals(it.getId()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No transform with id " + id));
+    }
+
+    /**
+     * The parser configured the way the CLI configures it from the mappings
+     */
+    @NotNull
+    public XmlToRecordParserConfig parserConfig(@NotNull final Xml2JsonConfig xml2json, @Nullable final List<List<String>> materializedPaths) {
+        return XmlToRecordParserConfig.builder()
+                .preserveNestedTextElements_ByXPath(xml2json.getEmbedLiteralXmlAtPaths())
+                .preserveNestedTextElements_AutoDetect(xml2json.isAutoDetectMixedContent())
+                .preserveNestedTextElements_UnhandledResultInError(xml2json.isUnhandledMixedContentIsError())
+                .forceSingleValueNodes_ByXPath(xml2json.getForceSingleValueElementAtPaths())
+                .forceElevateTextNode_ByXPath(xml2json.getForceElevateTextNodesAtPaths())
+                .forceElevateTextNodesAreSingleValued(xml2json.isForceElevateTextNodesAsSingleValue())
+                .textNodeName(xml2json.getTextNodeName())
+                .attributeNodePrefix(xml2json.getAttributeNodePrefix())
+                .attributePrefixesToKeep(xml2json.getPreserveAttributePrefixes())
+                .namespaces(xml2json.getNamespaces())
+                .materializedPaths(materializedPaths)
+                .jsonProvider(new JacksonJsonProvider())
+                .build();
+    }
+
+    /**
+     * The parsed document under its root element name, as the CLI hands it to the engine
+     */
+    @NotNull
+    public Map<String, Object> parseDocument(@NotNull final XmlToRecordParser parser, @NotNull final byte[] xml) {
+        XmlToRecordParser.Result parsed = parser.parse(new ByteArrayInputStream(xml));
+        Map<String, Object> document = new HashMap<>();
+        document.put(parsed.getName(), parsed.getJsonNode());
+        return document;
+    }
+
+    private InputStream resource(final String name) {
+        InputStream stream = BenchmarkDocuments.class.getResourceAsStream(name);
+        if (stream == null) {
+            throw new IllegalStateException("Benchmark resource not found in classpath: " + name);
+        }
+        return stream;
+    }
+
+    @Nullable
+    private Element firstChildElement(final Element parent, final String localName) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && localName.equals(child.getLocalName())) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+}
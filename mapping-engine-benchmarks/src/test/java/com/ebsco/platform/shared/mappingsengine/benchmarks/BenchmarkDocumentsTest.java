@@ -0,0 +1,99 @@
+package com.ebsco.platform.shared.mappingsengine.benchmarks;
+
+import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import com.ebsco.platform.shared.mappingsengine.core.DefaultTransformers;
+import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine;
+import com.ebsco.platform.shared.mappingsengine.core.MaterializedPaths;
+import com.ebsco.platform.shared.mappingsengine.xml.SyntheticDocumentConfig;
+import com.ebsco.platform.shared.mappingsengine.xml.SyntheticDocuments;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+// the benchmarks only measure something if their inputs still parse and their transforms still apply
+public class BenchmarkDocumentsTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    public void testScaledSampleRepeatsTheSections() {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.BENCHMARK_MAPPINGS);
+        XmlToRecordParser parser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), null));
+        for (int scale : new int[]{1, 10}) {
+            JsonNode document = OBJECT_MAPPER.valueToTree(BenchmarkDocuments.parseDocument(parser, BenchmarkDocuments.sampleXml(scale)));
+            assertEquals(5 * scale, document.path("book").path("body").get(0).path("book-part").get(0).path("body").get(0).path("sec").size());
+        }
+    }
+
+    @Test
+    public void testEveryTransformTypeChangesTheDocument() throws Exception {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.BENCHMARK_MAPPINGS);
+        XmlToRecordParser parser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), null));
+        byte[] xml = BenchmarkDocuments.sampleXml(10);
+        String original = OBJECT_MAPPER.writeValueAsString(BenchmarkDocuments.parseDocument(parser, xml));
+
+        for (TransformsConfig transform : mappings.getTransforms()) {
+            try (MappingsEngine engine = MappingsEngine.builder().transforms(singletonList(transform)).build()) {
+                Map<String, Object> document = BenchmarkDocuments.parseDocument(parser, xml);
+                engine.processDocument(document);
+                // disarray only unwraps ArrayLists, the parser builds other lists, so it writes back equal sections
+                if (!transform.getType().equals("disarray")) {
+                    assertNotEquals(transform.getId(), original, OBJECT_MAPPER.writeValueAsString(document));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSampleMappingsGiveTheSameJsonWithRawSubtrees() throws Exception {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.SAMPLE_MAPPINGS);
+        List<TransformsConfig> transforms = BenchmarkDocuments.runnableSampleTransforms(mappings);
+        byte[] xml = BenchmarkDocuments.sampleXml(10);
+
+        XmlToRecordParser treeParser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), null));
+        XmlToRecordParser rawParser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(),
+                MaterializedPaths.of(transforms, DefaultTransformers.TRANFORMERS)));
+        try (MappingsEngine engine = MappingsEngine.builder().transforms(transforms).build()) {
+            Map<String, Object> tree = BenchmarkDocuments.parseDocument(treeParser, xml);
+            engine.processDocument(tree);
+            Map<String, Object> raw = BenchmarkDocuments.parseDocument(rawParser, xml);
+            engine.processDocument(raw);
+            assertEquals(OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsString(tree)), OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsString(raw)));
+        }
+    }
+
+    @Test
+    public void testSyntheticMappingsApplyToGeneratedArticles() throws Exception {
+        MappingsEngineJsonConfig mappings = BenchmarkDocuments.mappings(BenchmarkDocuments.SYNTHETIC_MAPPINGS);
+        XmlToRecordParser parser = new XmlToRecordParser(BenchmarkDocuments.parserConfig(mappings.getConfiguration().getXml2json(), null));
+        byte[] xml = SyntheticDocuments.xml(SyntheticDocumentConfig.builder().depth(3).fanOut(2).build());
+        String original = OBJECT_MAPPER.writeValueAsString(BenchmarkDocuments.parseDocument(parser, xml));
+
+        for (TransformsConfig transform : mappings.getTransforms()) {
+            try (MappingsEngine engine = MappingsEngine.builder().transforms(singletonList(transform)).build()) {
+                Map<String, Object> document = BenchmarkDocuments.parseDocument(parser, xml);
+                engine.processDocument(document);
+                assertNotEquals(transform.getId(), original, OBJECT_MAPPER.writeValueAsString(document));
+            }
+        }
+
+        try (MappingsEngine engine = MappingsEngine.builder().transforms(mappings.getTransforms()).build()) {
+            Map<String, Object> document = BenchmarkDocuments.parseDocument(parser, xml);
+            engine.processDocument(document);
+            String mapped = OBJECT_MAPPER.writeValueAsString(document);
+            // the nested sections too
+            assertEquals(2 + 4 + 8, mapped.split("\"heading\"", -1).length - 1);
+            assertTrue(mapped.contains("\"doi\":\"10.5555/synthetic.1.0\""));
+            assertTrue(mapped.matches(".*\"displayName\":\"\\w+, \\w+\".*"));
+        }
+    }
+}
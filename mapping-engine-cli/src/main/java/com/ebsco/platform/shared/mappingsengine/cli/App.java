@@ -3,8 +3,15 @@ package com.ebsco.platform.shared.mappingsengine.cli;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
+import com.ebsco.platform.shared.mappingsengine.config.Xml2JsonConfig;
 import com.ebsco.platform.shared.mappingsengine.core.DefaultTransformers;
+import com.ebsco.platform.shared.mappingsengine.core.FlightRecorderEvents;
 import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine;
+import com.ebsco.platform.shared.mappingsengine.core.MaterializedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.transformers.LookupIndexFile;
+import com.ebsco.platform.shared.mappingsengine.xml.StreamingXmlToRecordParser;
+import com.ebsco.platform.shared.mappingsengine.xml.SyntheticDocumentConfig;
+import com.ebsco.platform.shared.mappingsengine.xml.SyntheticDocuments;
 import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
 import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParserConfig;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,7 +23,9 @@ import lombok.val;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public class App {
 
@@ -53,12 +62,44 @@ public class App {
         }
 
         try {
+            val buildLookupIndexArgs = new BuildLookupIndexArgs();
+            val generateArgs = new GenerateArgs();
             val cmdline = JCommander.newBuilder()
                     .addObject(parsedArgs)
+                    .addCommand(buildLookupIndexArgs)
+                    .addCommand(generateArgs)
                     .build();
 
             cmdline.parse(args);
 
+            if (BuildLookupIndexArgs.COMMAND.equals(cmdline.getParsedCommand())) {
+                val indexFile = new File(buildLookupIndexArgs.getIndexFileName());
+                if (indexFile.getAbsoluteFile().getParentFile() == null || !indexFile.getAbsoluteFile().getParentFile().exists()) {
+                    printUsageAndExit("Index output file parent directory must already exist: " + indexFile.getAbsolutePath(), cmdline);
+                }
+                String lookupResource = buildLookupIndexArgs.getLookupResource();
+                String resource = lookupResource.startsWith("file:") || lookupResource.startsWith("classpath:") ?
+                        lookupResource : "file:" + lookupResource;
+                runOrExit(() -> LookupIndexFile.build(resource, indexFile), parsedArgs.getStackTrace());
+                return;
+            }
+
+            if (GenerateArgs.COMMAND.equals(cmdline.getParsedCommand())) {
+                val outputFile = new File(generateArgs.getOutputFileName());
+                if (outputFile.getAbsoluteFile().getParentFile() == null || !outputFile.getAbsoluteFile().getParentFile().exists()) {
+                    printUsageAndExit("Output file parent directory must already exist: " + outputFile.getAbsolutePath(), cmdline);
+                }
+                if (generateArgs.getConfigFileName() != null && !new File(generateArgs.getConfigFileName()).exists()) {
+                    printUsageAndExit("Config file does not exist: " + new File(generateArgs.getConfigFileName()).getAbsolutePath(), cmdline);
+                }
+                runOrExit(() -> generate(generateArgs, outputFile), parsedArgs.getStackTrace());
+                return;
+            }
+
+            if (parsedArgs.getXmlInputFileName() == null || parsedArgs.getConfigFileName() == null) {
+                printUsageAndExit("The following options are required: --config, --input", cmdline);
+            }
+
             val inputXmlFile = new File(parsedArgs.getXmlInputFileName());
             val configFile = new File(parsedArgs.getConfigFileName());
 
@@ -81,22 +122,31 @@ public class App {
 
 
 
-            try {
-                new App(configFile, inputXmlFile, outputJsonFile, !quiet).run();
-            } catch (Exception ex) {
-                System.err.println("Error: " + ex.getMessage());
-                if (parsedArgs.getStackTrace()) {
-                    ex.printStackTrace();
-                } else {
-                    System.err.println("  (use the --stacktrace option to see full error stacktrace)");
-                }
-                System.exit(-2);
-            }
+            val outputJson = outputJsonFile;
+            runOrExit(() -> new App(configFile, inputXmlFile, outputJson, !quiet).run(), parsedArgs.getStackTrace());
         } catch (ParameterException ex) {
             printUsageAndExit(ex.getMessage(), ex.getJCommander());
         }
     }
 
+    private interface CliTask {
+        void run() throws Exception;
+    }
+
+    private static void runOrExit(final CliTask task, final boolean stackTrace) {
+        try {
+            task.run();
+        } catch (Exception ex) {
+            System.err.println("Error: " + ex.getMessage());
+            if (stackTrace) {
+                ex.printStackTrace();
+            } else {
+                System.err.println("  (use the --stacktrace option to see full error stacktrace)");
+            }
+            System.exit(-2);
+        }
+    }
+
     private static void printUsageAndExit(final String errMessage, final JCommander cmdline) {
         System.err.println(errMessage);
         cmdline.usage();
@@ -111,34 +161,30 @@ public class App {
 
         val xml2jsonCfg = cfgFile.getConfiguration().getXml2json();
         JsonProvider jsonProvider = new JacksonJsonProvider();
-        val parser = new XmlToRecordParser(XmlToRecordParserConfig.builder()
-                .preserveNestedTextElements_ByXPath(xml2jsonCfg.getEmbedLiteralXmlAtPaths())
-                .preserveNestedTextElements_AutoDetect(xml2jsonCfg.isAutoDetectMixedContent())
-                .preserveNestedTextElements_UnhandledResultInError(xml2jsonCfg.isUnhandledMixedContentIsError())
-                .forceSingleValueNodes_ByXPath(xml2jsonCfg.getForceSingleValueElementAtPaths())
-                .forceElevateTextNode_ByXPath(xml2jsonCfg.getForceElevateTextNodesAtPaths())
-                .forceElevateTextNodesAreSingleValued(xml2jsonCfg.isForceElevateTextNodesAsSingleValue())
-                .textNodeName(xml2jsonCfg.getTextNodeName())
-                .attributeNodePrefix(xml2jsonCfg.getAttributeNodePrefix())
-                .attributePrefixesToKeep(xml2jsonCfg.getPreserveAttributePrefixes())
+        val parserConfig = parserConfig(xml2jsonCfg)
+                .materializedPaths(xml2jsonCfg.isRawJsonForUntransformedSubtrees() ?
+                        MaterializedPaths.of(cfgFile.getTransforms(), DefaultTransformers.TRANFORMERS) : null)
                 .jsonProvider(jsonProvider)
-                .build());
-
-        val mappings = MappingsEngine.builder().transforms(cfgFile.getTransforms()).transformerClasses(DefaultTransformers.TRANFORMERS).jsonProvider(parser.getConfig().getJsonProvider()).build();
+                .build();
+        val parser = new XmlToRecordParser(parserConfig);
 
-        try (final InputStream xmlInputStream = new FileInputStream(inputXmlFile)) {
+        try (final MappingsEngine mappings = MappingsEngine.builder().transforms(cfgFile.getTransforms()).transformerClasses(DefaultTransformers.TRANFORMERS).jsonProvider(parser.getConfig().getJsonProvider()).build();
+             final InputStream xmlInputStream = new FileInputStream(inputXmlFile)) {
             String prettyJson = "";
             ObjectMapper mapper = new ObjectMapper();
-            if (inputXmlFile.toURI().toString().endsWith(".xml")) {
+            if (inputXmlFile.toURI().toString().endsWith(".xml") && parserConfig.getSplitRecords_ByXPath() != null) {
+                mapSplitRecords(parserConfig, mappings, xmlInputStream, mapper);
+                return;
+            } else if (inputXmlFile.toURI().toString().endsWith(".xml")) {
                 Map<String, Map<String, Object>> jsonObject = new HashMap<>();
                 XmlToRecordParser.Result parsed = parser.parse(xmlInputStream);
                 jsonObject.put(parsed.getName(), (Map<String, Object>) parsed.getJsonNode());
                 mappings.processDocument(jsonObject);
-                prettyJson = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject);
+                prettyJson = FlightRecorderEvents.serialize("json-pretty", () -> mapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject));
             } else if (inputXmlFile.toURI().toString().endsWith(".json")) {
                 val pureJsonInputObject = mapper.readValue(inputXmlFile, Map.class);
                 mappings.processDocument(pureJsonInputObject);
-                prettyJson = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(pureJsonInputObject);
+                prettyJson = FlightRecorderEvents.serialize("json-pretty", () -> mapper.writerWithDefaultPrettyPrinter().writeValueAsString(pureJsonInputObject));
             }
 
             if (outputJsonToConsole) {
@@ -153,5 +199,88 @@ public class App {
             }
         }
     }
-}
 
+    private static XmlToRecordParserConfig.XmlToRecordParserConfigBuilder parserConfig(final Xml2JsonConfig xml2jsonCfg) {
+        return XmlToRecordParserConfig.builder()
+                .preserveNestedTextElements_ByXPath(xml2jsonCfg.getEmbedLiteralXmlAtPaths())
+                .preserveNestedTextElements_AutoDetect(xml2jsonCfg.isAutoDetectMixedContent())
+                .preserveNestedTextElements_UnhandledResultInError(xml2jsonCfg.isUnhandledMixedContentIsError())
+                .forceSingleValueNodes_ByXPath(xml2jsonCfg.getForceSingleValueElementAtPaths())
+                .forceElevateTextNode_ByXPath(xml2jsonCfg.getForceElevateTextNodesAtPaths())
+                .forceElevateTextNodesAreSingleValued(xml2jsonCfg.isForceElevateTextNodesAsSingleValue())
+                .textNodeName(xml2jsonCfg.getTextNodeName())
+                .attributeNodePrefix(xml2jsonCfg.getAttributeNodePrefix())
+                .attributePrefixesToKeep(xml2jsonCfg.getPreserveAttributePrefixes())
+                .namespaces(xml2jsonCfg.getNamespaces())
+                .splitRecords_ByXPath(xml2jsonCfg.getSplitRecordsAtPath());
+    }
+
+    // XML is written as it is generated, JSON is parsed from the XML in memory and written one article per line
+    private static void generate(final GenerateArgs args, final File outputFile) throws IOException {
+        val config = SyntheticDocumentConfig.builder()
+                .seed(args.getSeed())
+                .depth(args.getDepth())
+                .fanOut(args.getFanOut())
+                .repeats(args.getRepeats())
+                .records(args.getRecords())
+                .mixedContent(args.getMixedContent())
+                .namespaces(args.getNamespaces())
+                .build();
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            if (!outputFile.getName().endsWith(".json")) {
+                SyntheticDocuments.writeXml(config, out);
+                return;
+            }
+
+            XmlToRecordParserConfig.XmlToRecordParserConfigBuilder parserConfig;
+            if (args.getConfigFileName() != null) {
+                try (InputStream cfgInputStream = new FileInputStream(args.getConfigFileName())) {
+                    parserConfig = parserConfig(MappingsEngineJsonConfig.fromJson(cfgInputStream).getConfiguration().getXml2json());
+                }
+            } else {
+                parserConfig = parserConfig(new Xml2JsonConfig()).preserveNestedTextElements_AutoDetect(true);
+            }
+            parserConfig.splitRecords_ByXPath(config.getRecords() > 1 ? "/article-set/article" : null);
+
+            ObjectMapper mapper = new ObjectMapper();
+            val xml = new ByteArrayInputStream(SyntheticDocuments.xml(config));
+            try (Stream<XmlToRecordParser.Result> records = config.getRecords() > 1 ?
+                    new StreamingXmlToRecordParser(parserConfig.build()).parseRecords(xml) :
+                    Stream.of(new XmlToRecordParser(parserConfig.build()).parse(xml))) {
+                Iterator<XmlToRecordParser.Result> parsedRecords = records.iterator();
+                while (parsedRecords.hasNext()) {
+                    XmlToRecordParser.Result parsed = parsedRecords.next();
+                    Map<String, Object> jsonObject = new HashMap<>();
+                    jsonObject.put(parsed.getName(), parsed.getJsonNode());
+                    out.write(mapper.writeValueAsString(jsonObject).getBytes(Charset.forName("UTF-8")));
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    // each record mapped and written as one line of JSON as it is read, so a file of any size runs in constant memory
+    private void mapSplitRecords(final XmlToRecordParserConfig parserConfig, final MappingsEngine mappings,
+                                 final InputStream xmlInputStream, final ObjectMapper mapper) throws IOException {
+        try (OutputStream jsonOutputStream = outputJsonFile != null ? new BufferedOutputStream(new FileOutputStream(outputJsonFile)) : null;
+             Stream<XmlToRecordParser.Result> records = new StreamingXmlToRecordParser(parserConfig).parseRecords(xmlInputStream)) {
+            Iterator<XmlToRecordParser.Result> parsedRecords = records.iterator();
+            while (parsedRecords.hasNext()) {
+                XmlToRecordParser.Result parsed = parsedRecords.next();
+                Map<String, Map<String, Object>> jsonObject = new HashMap<>();
+                jsonObject.put(parsed.getName(), (Map<String, Object>) parsed.getJsonNode());
+                mappings.processDocument(jsonObject);
+                String json = FlightRecorderEvents.serialize("json", () -> mapper.writeValueAsString(jsonObject));
+
+                if (outputJsonToConsole) {
+                    System.out.println(json);
+                }
+                if (jsonOutputStream != null) {
+                    jsonOutputStream.write(json.getBytes(Charset.forName("UTF-8")));
+                    jsonOutputStream.write('\n');
+                }
+            }
+        }
+    }
+}
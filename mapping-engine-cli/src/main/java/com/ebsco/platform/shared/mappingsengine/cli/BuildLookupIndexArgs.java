@@ -0,0 +1,30 @@
+package com.ebsco.platform.shared.mappingsengine.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Parameters(
+        commandNames = {BuildLookupIndexArgs.COMMAND},
+        commandDescription = "convert a lookup TSV into an index file for a lookup transform with lookupResource mmap:<output>"
+)
+class BuildLookupIndexArgs {
+    static final String COMMAND = "build-lookup-index";
+
+    @Parameter(
+            names = {"--lookup"},
+            description = "lookup TSV filename (gzipped if it ends with .gz), or a file: or classpath: resource",
+            required = true
+    )
+    private String lookupResource;
+
+    @Parameter(
+            names = {"--output"},
+            description = "index filename to write",
+            required = true
+    )
+    private String indexFileName;
+}
@@ -9,15 +9,15 @@ import lombok.NoArgsConstructor;
 class CliArgs {
     @Parameter(
             names = {"--config"},
-            description = "configuration filename for mappings instructions",
-            required = true
+            description = "configuration filename for mappings instructions, required unless running a command",
+            required = false
     )
     private String configFileName;
 
     @Parameter(
             names = {"--input", "--xml"},
-            description = "input XML or JSON filename",
-            required = true
+            description = "input XML or JSON filename, required unless running a command",
+            required = false
     )
     private String xmlInputFileName;
 
@@ -0,0 +1,83 @@
+package com.ebsco.platform.shared.mappingsengine.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.ebsco.platform.shared.mappingsengine.xml.SyntheticDocumentConfig;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Parameters(
+        commandNames = {GenerateArgs.COMMAND},
+        commandDescription = "write a synthetic JATS-like article of the given size, for load and scale tests"
+)
+class GenerateArgs {
+    static final String COMMAND = "generate";
+
+    @Parameter(
+            names = {"--output"},
+            description = "filename to write, XML unless it ends with .json, then the XML is parsed to JSON (one line per article)",
+            required = true
+    )
+    private String outputFileName;
+
+    @Parameter(
+            names = {"--config"},
+            description = "optional mappings configuration whose xml2json settings parse the XML for JSON output, " +
+                    "otherwise the defaults with mixed content auto detected",
+            required = false
+    )
+    private String configFileName;
+
+    @Parameter(
+            names = {"--seed"},
+            description = "random seed, the same seed and sizes give the same document",
+            required = false
+    )
+    private Long seed = SyntheticDocumentConfig.DEFAULTS.getSeed();
+
+    @Parameter(
+            names = {"--depth"},
+            description = "levels of sections nested in the body",
+            required = false
+    )
+    private Integer depth = SyntheticDocumentConfig.DEFAULTS.getDepth();
+
+    @Parameter(
+            names = {"--fan-out"},
+            description = "sections in each section, and in the body",
+            required = false
+    )
+    private Integer fanOut = SyntheticDocumentConfig.DEFAULTS.getFanOut();
+
+    @Parameter(
+            names = {"--repeats"},
+            description = "paragraphs in each section, and authors, keywords and references of each article",
+            required = false
+    )
+    private Integer repeats = SyntheticDocumentConfig.DEFAULTS.getRepeats();
+
+    @Parameter(
+            names = {"--records"},
+            description = "articles in the file, more than one are written in an article-set split by /article-set/article",
+            required = false
+    )
+    private Integer records = SyntheticDocumentConfig.DEFAULTS.getRecords();
+
+    @Parameter(
+            names = {"--mixed-content"},
+            description = "inline elements in paragraphs",
+            arity = 1,
+            required = false
+    )
+    private Boolean mixedContent = SyntheticDocumentConfig.DEFAULTS.isMixedContent();
+
+    @Parameter(
+            names = {"--namespaces"},
+            description = "xlink attributes and MathML formulas",
+            arity = 1,
+            required = false
+    )
+    private Boolean namespaces = SyntheticDocumentConfig.DEFAULTS.isNamespaces();
+}
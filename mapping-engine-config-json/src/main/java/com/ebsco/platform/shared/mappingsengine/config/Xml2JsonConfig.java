@@ -4,10 +4,12 @@ import lombok.Getter;
 import lombok.ToString;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.toSet;
 
 @Getter
@@ -22,4 +24,7 @@ public class Xml2JsonConfig {
     String textNodeName = "value";
     String attributeNodePrefix = "";
     Set<String> preserveAttributePrefixes = Stream.of("xmlns", "xml").collect(toSet());
+    Map<String, String> namespaces = emptyMap();
+    String splitRecordsAtPath = null;
+    boolean rawJsonForUntransformedSubtrees = false;
 }
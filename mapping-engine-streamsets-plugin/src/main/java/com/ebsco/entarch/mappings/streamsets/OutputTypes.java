@@ -0,0 +1,5 @@
+package com.ebsco.entarch.mappings.streamsets;
+
+public enum OutputTypes {
+    JSON_PRETTY, JSON, FIELDS
+}
@@ -0,0 +1,9 @@
+package com.ebsco.entarch.mappings.streamsets;
+
+import com.streamsets.pipeline.api.base.BaseEnumChooserValues;
+
+public class OutputTypesChooser extends BaseEnumChooserValues<OutputTypes> {
+    public OutputTypesChooser() {
+        super(OutputTypes.JSON_PRETTY, OutputTypes.JSON, OutputTypes.FIELDS);
+    }
+}
@@ -1,12 +1,20 @@
 package com.ebsco.entarch.mappings.streamsets;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import com.jayway.jsonpath.spi.json.JsonProvider;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.Record;
 import lombok.experimental.UtilityClass;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -16,6 +24,9 @@ import static com.ebsco.platform.shared.mappingsengine.core.StringUtils.*;
 
 @UtilityClass
 public class RecordUtils {
+    // for the values in a tree that Jackson writes as they are
+    private final ObjectMapper JACKSON = new ObjectMapper();
+    private final JsonProvider JACKSON_JSON = new JacksonJsonProvider(JACKSON);
 
     public Field write(Record record, String path, String value, Map<String, String> fieldAttributes, boolean append) {
         ensureFieldPathIsSettable(record, path);
@@ -29,6 +40,62 @@ public class RecordUtils {
         return write(record, path, value, new HashMap<>(), false);
     }
 
+    /**
+     * A JSON tree of the provider as fields:  objects as LIST_MAP fields, which keep the order of their properties,
+     * arrays as LIST fields and values as fields of their own type, null as a null STRING.  A {@link RawValue} (a
+     * subtree the parser wrote straight to JSON) and a Jackson {@link JsonNode} (set by some transforms) are converted
+     * the same way.
+     */
+    public Field toField(JsonProvider json, Object node) {
+        if (node instanceof RawValue) {
+            return toField(JACKSON_JSON, JACKSON_JSON.parse(String.valueOf(((RawValue) node).rawValue())));
+        } else if (node instanceof JsonNode) {
+            return toField(JACKSON_JSON, JACKSON.convertValue(node, Object.class));
+        } else if (json.isMap(node)) {
+            LinkedHashMap<String, Field> fields = new LinkedHashMap<>();
+            for (String key : json.getPropertyKeys(node)) {
+                fields.put(key, toField(json, json.getMapValue(node, key)));
+            }
+            return Field.createListMap(fields);
+        } else if (json.isArray(node)) {
+            List<Field> items = new ArrayList<>();
+            for (Object item : json.toIterable(node)) {
+                items.add(toField(json, item));
+            }
+            return Field.create(items);
+        } else {
+            return valueField(json.unwrap(node));
+        }
+    }
+
+    private Field valueField(Object value) {
+        if (value == null) {
+            return Field.create(Field.Type.STRING, null);
+        } else if (value instanceof String) {
+            return Field.create((String) value);
+        } else if (value instanceof Boolean) {
+            return Field.create((Boolean) value);
+        } else if (value instanceof Integer) {
+            return Field.create((Integer) value);
+        } else if (value instanceof Long) {
+            return Field.create((Long) value);
+        } else if (value instanceof Double) {
+            return Field.create((Double) value);
+        } else if (value instanceof Float) {
+            return Field.create((Float) value);
+        } else if (value instanceof Short) {
+            return Field.create((Short) value);
+        } else if (value instanceof Byte) {
+            return Field.create((Byte) value);
+        } else if (value instanceof BigDecimal) {
+            return Field.create((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            return Field.create(new BigDecimal((BigInteger) value));
+        } else {
+            throw new IllegalArgumentException("No field type for JSON value of " + value.getClass().getName());
+        }
+    }
+
 
 
     private void ensureFieldPathIsSettable(Record record, String path) {
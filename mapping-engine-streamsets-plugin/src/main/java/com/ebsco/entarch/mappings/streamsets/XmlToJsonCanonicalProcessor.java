@@ -7,7 +7,11 @@ import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.S3Object;
 import com.ebsco.platform.shared.mappingsengine.config.MappingsEngineJsonConfig;
 import com.ebsco.platform.shared.mappingsengine.config.Xml2JsonConfig;
+import com.ebsco.platform.shared.mappingsengine.core.DefaultTransformers;
+import com.ebsco.platform.shared.mappingsengine.core.FlightRecorderEvents;
 import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine;
+import com.ebsco.platform.shared.mappingsengine.core.MaterializedPaths;
+import com.ebsco.platform.shared.mappingsengine.xml.StreamingXmlToRecordParser;
 import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
 import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParserConfig;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,17 +20,29 @@ import com.streamsets.pipeline.api.*;
 import com.streamsets.pipeline.api.base.OnRecordErrorException;
 import com.streamsets.pipeline.api.base.SingleLaneRecordProcessor;
 import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @StageDef(version = 1, label = "XML2JSON Canonical Processor", icon = "default.png", onlineHelpRefUrl = "")
 @ConfigGroups(Groups.class)
 @GenerateResourceBundle
 public class XmlToJsonCanonicalProcessor extends SingleLaneRecordProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(XmlToJsonCanonicalProcessor.class);
 
     private static final String EMPTY_CONFIG = "{\n" +
             "  \"metadata\": {\n" +
@@ -139,10 +155,24 @@ public class XmlToJsonCanonicalProcessor extends SingleLaneRecordProcessor {
     @ConfigDef(required = true, type = ConfigDef.Type.MODEL,
             defaultValue = "/json",
             label = "JSON output Field", displayPosition = 8, group = "MAPPINGS",
-            description = "Output field to place the text version of the resulting JSON")
+            description = "Output field to place the resulting JSON, as text or as fields by the Output Type")
     @FieldSelectorModel(singleValued = true)
     public String outJsonField = null;
 
+    @ConfigDef(required = true, type = ConfigDef.Type.MODEL,
+            defaultValue = "JSON_PRETTY",
+            label = "Output Type", displayPosition = 9, group = "MAPPINGS",
+            description = "JSON_PRETTY or JSON (compact) text, or FIELDS to output map and list fields that later stages " +
+                    "can use without parsing the JSON again")
+    @ValueChooserModel(OutputTypesChooser.class)
+    public OutputTypes outputType = OutputTypes.JSON_PRETTY;
+
+    @ConfigDef(required = true, type = ConfigDef.Type.NUMBER, defaultValue = "1",
+            label = "Parallel Threads", displayPosition = 30, group = "MAPPINGS",
+            min = 1, max = 256,
+            description = "Records of a batch mapped at the same time, each on a thread of its own, output in the order of the batch")
+    public int parallelThreads = 1;
+
     @Getter(lazy = true)
     private final MappingsEngineJsonConfig cfgJson = MappingsEngineJsonConfig.fromJson(mappingInstructions);
 
@@ -153,13 +183,16 @@ public class XmlToJsonCanonicalProcessor extends SingleLaneRecordProcessor {
     private final XmlToRecordParser parser = buildParser();
 
     @Getter(lazy = true)
-    private final MappingsEngine mappings = MappingsEngine.builder()
-            .transforms(getCfgJson().getTransforms())
-            .jsonProvider(getParser().getJson())
-            .build();
+    private final StreamingXmlToRecordParser recordSplitter = new StreamingXmlToRecordParser(getParser().getConfig());
+
+    // not a lazy getter, destroy() must be able to tell whether the engine was ever built
+    private final AtomicReference<MappingsEngine> mappings = new AtomicReference<>();
 
     private final ObjectMapper jsonMapper = new ObjectMapper();
 
+    // with more than one parallel thread, null otherwise
+    private ExecutorService workers = null;
+
     @Override
     public List<ConfigIssue> init(Info info, Processor.Context context) {
         List<ConfigIssue> issues = super.init(info, context);
@@ -253,48 +286,221 @@ public class XmlToJsonCanonicalProcessor extends SingleLaneRecordProcessor {
             return issues;
         }
 
+        if (parallelThreads < 1) {
+            issues.add(context.createConfigIssue(Groups.MAPPINGS.getLabel(), "parallelThreads",
+                    Errors.EBSCO_INVALID_CONFIG,
+                    "parallel threads must be at least 1: " + parallelThreads));
+            return issues;
+        } else if (parallelThreads > 1) {
+            AtomicInteger threads = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(parallelThreads, task -> {
+                Thread thread = new Thread(task, "xml2json-mappings-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
         // TODO: auto refresh mappings file on interval?
         return issues;
     }
 
     @Override
     public void destroy() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+        MappingsEngine engine;
+        synchronized (mappings) {
+            engine = mappings.getAndSet(null);
+        }
+        if (engine != null) {
+            try {
+                // lets go of the lookup tables shared with other processor instances
+                engine.close();
+            } catch (RuntimeException ex) {
+                LOG.warn("Error closing the mappings engine: {}", ex.getMessage(), ex);
+            }
+        }
         super.destroy();
     }
 
+    public MappingsEngine getMappings() {
+        MappingsEngine engine = mappings.get();
+        if (engine == null) {
+            synchronized (mappings) {
+                engine = mappings.get();
+                if (engine == null) {
+                    engine = MappingsEngine.builder()
+                            .transforms(getCfgJson().getTransforms())
+                            .jsonProvider(getParser().getJson())
+                            .build();
+                    mappings.set(engine);
+                }
+            }
+        }
+        return engine;
+    }
+
+    @Override
+    public void process(Batch batch, SingleLaneBatchMaker batchMaker) throws StageException {
+        if (workers == null) {
+            super.process(batch, batchMaker);
+            return;
+        }
+        Iterator<Record> records = batch.getRecords();
+        if (!records.hasNext()) {
+            // as the sequential mode does
+            emptyBatch(batchMaker);
+            return;
+        }
+        List<Future<MappedRecord>> mapped = new ArrayList<>();
+        try {
+            while (records.hasNext()) {
+                Record record = records.next();
+                mapped.add(workers.submit(() -> map(record)));
+            }
+            // added in the order of the batch, each as soon as it and the ones before it are done
+            for (Future<MappedRecord> result : mapped) {
+                addMapped(awaitMapped(result), batchMaker);
+            }
+        } finally {
+            // left over when a record stops the pipeline
+            mapped.forEach(result -> result.cancel(true));
+        }
+    }
+
     @Override
     protected void process(Record record, SingleLaneBatchMaker batchMaker) throws StageException {
-        applyMappings(record, rawXmlField);
-        batchMaker.addRecord(record);
+        addMapped(map(record), batchMaker);
     }
 
-    private void applyMappings(Record record, String inputFieldName) throws OnRecordErrorException {
+    private MappedRecord awaitMapped(Future<MappedRecord> result) throws StageException {
         try {
-            String inputFieldNameFixed = fixInputFieldName(inputFieldName);
-            Field inputField = record.get(inputFieldNameFixed);
-            try (InputStream is = getInputStream(inputField)) {
-                final Map<String, Map<String, Object>> jsonObject;
-                if (rawInputType == InputTypes.XML) {
-                    XmlToRecordParser.Result parsed = getParser().parse(is);
-                    jsonObject = new HashMap<>();
-                    jsonObject.put(parsed.getName(), (Map<String, Object>) parsed.getJsonNode());
-                } else if (rawInputType == InputTypes.JSON) {
-                    jsonObject = jsonMapper.readValue(is, Map.class);
-                } else {
-                    throw new IllegalArgumentException("Input Type " + rawInputType.name() + " is not supported.");
-                }
-                getMappings().processDocument(jsonObject);
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StageException(Errors.EBSCO_RECORD_ERROR, "interrupted while mapping the batch");
+        } catch (ExecutionException e) {
+            // map catches the failures of a record, so this is a bug
+            throw new IllegalStateException("Mapping a record failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
 
-                String prettyJson = jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject);
-                Field field = Field.create(prettyJson);
-                if (outJsonField == null) {
-                    record.set("/json", field);
-                } else {
-                    record.set(outJsonField, field);
+    // the parsing, mapping and serializing of a record, on a worker thread in parallel mode, so it only reads the
+    // input record and leaves the records and the batch to addMapped
+    private MappedRecord map(Record record) {
+        MappedRecord mapped = new MappedRecord(record);
+        if (rawInputType == InputTypes.XML && getParser().getConfig().getSplitRecords_ByXPath() != null) {
+            try (InputStream is = getInputStream(record.get(fixInputFieldName(rawXmlField)));
+                 Stream<XmlToRecordParser.Result> records = getRecordSplitter().parseRecords(is)) {
+                Iterator<XmlToRecordParser.Result> parsedRecords = records.iterator();
+                while (true) {
+                    XmlToRecordParser.Result parsed;
+                    try {
+                        // the iterator reads ahead, so a record that failed to convert throws from hasNext
+                        if (!parsedRecords.hasNext()) {
+                            break;
+                        }
+                        parsed = parsedRecords.next();
+                    } catch (IllegalStateException e) {
+                        // only this record failed, the records after it can still be read
+                        mapped.outputs.add(e);
+                        continue;
+                    }
+                    try {
+                        Map<String, Map<String, Object>> jsonObject = new HashMap<>();
+                        jsonObject.put(parsed.getName(), (Map<String, Object>) parsed.getJsonNode());
+                        mapped.outputs.add(mappedJson(jsonObject));
+                    } catch (Exception e) {
+                        mapped.outputs.add(e);
+                    }
                 }
+            } catch (Exception e) {
+                // the input itself could not be read
+                mapped.failure = e;
+            }
+        } else {
+            try {
+                mapped.outputs.add(mappedJson(readDocument(record, rawXmlField)));
+            } catch (Exception e) {
+                mapped.failure = e;
+            }
+        }
+        return mapped;
+    }
+
+    // a split input gives one output record per record of the split input, cloned from the input record, a failed one
+    // is handled by the on record error setting without stopping the ones after it
+    private void addMapped(MappedRecord mapped, SingleLaneBatchMaker batchMaker) throws StageException {
+        Record record = mapped.record;
+        boolean split = rawInputType == InputTypes.XML && getParser().getConfig().getSplitRecords_ByXPath() != null;
+        for (int index = 0; index < mapped.outputs.size(); index++) {
+            Object output = mapped.outputs.get(index);
+            Record outputRecord = split ? getContext().cloneRecord(record, String.valueOf(index)) : record;
+            if (output instanceof Field) {
+                setMappedJson(outputRecord, (Field) output);
+                batchMaker.addRecord(outputRecord);
+            } else {
+                onRecordError(new OnRecordErrorException(outputRecord, Errors.EBSCO_RECORD_ERROR, ((Exception) output).getMessage()));
+            }
+        }
+        if (mapped.failure != null) {
+            onRecordError(new OnRecordErrorException(record, Errors.EBSCO_RECORD_ERROR, mapped.failure.getMessage()));
+        }
+    }
+
+    private void onRecordError(OnRecordErrorException error) throws StageException {
+        switch (getContext().getOnErrorRecord()) {
+            case DISCARD:
+                break;
+            case TO_ERROR:
+                getContext().toError(error.getRecord(), error);
+                break;
+            case STOP_PIPELINE:
+                throw error;
+            default:
+                throw new IllegalStateException("Unknown on error value: " + getContext().getOnErrorRecord());
+        }
+    }
+
+    private Map<String, Map<String, Object>> readDocument(Record record, String inputFieldName) throws IOException {
+        String inputFieldNameFixed = fixInputFieldName(inputFieldName);
+        Field inputField = record.get(inputFieldNameFixed);
+        try (InputStream is = getInputStream(inputField)) {
+            if (rawInputType == InputTypes.XML) {
+                XmlToRecordParser.Result parsed = getParser().parse(is);
+                Map<String, Map<String, Object>> jsonObject = new HashMap<>();
+                jsonObject.put(parsed.getName(), (Map<String, Object>) parsed.getJsonNode());
+                return jsonObject;
+            } else if (rawInputType == InputTypes.JSON) {
+                return jsonMapper.readValue(is, Map.class);
+            } else {
+                throw new IllegalArgumentException("Input Type " + rawInputType.name() + " is not supported.");
             }
-        } catch (Exception e) {
-            throw new OnRecordErrorException(record, Errors.EBSCO_RECORD_ERROR, e.getMessage());
+        }
+    }
+
+    private Field mappedJson(Map<String, Map<String, Object>> jsonObject) throws IOException {
+        getMappings().processDocument(jsonObject);
+
+        switch (outputType) {
+            case FIELDS:
+                return RecordUtils.toField(getMappings().getJsonProvider(), jsonObject);
+            case JSON:
+                return Field.create(FlightRecorderEvents.serialize("json", () -> jsonMapper.writeValueAsString(jsonObject)));
+            case JSON_PRETTY:
+                return Field.create(FlightRecorderEvents.serialize("json-pretty", () -> jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject)));
+            default:
+                throw new IllegalArgumentException("Output Type " + outputType.name() + " is not supported.");
+        }
+    }
+
+    private void setMappedJson(Record record, Field field) {
+        if (outJsonField == null) {
+            record.set("/json", field);
+        } else {
+            record.set(outJsonField, field);
         }
     }
 
@@ -328,8 +534,27 @@ public class XmlToJsonCanonicalProcessor extends SingleLaneRecordProcessor {
                 .textNodeName(xml2JsonConfig.getTextNodeName())
                 .attributeNodePrefix(xml2JsonConfig.getAttributeNodePrefix())
                 .attributePrefixesToKeep(xml2JsonConfig.getPreserveAttributePrefixes())
+                .namespaces(xml2JsonConfig.getNamespaces())
+                .splitRecords_ByXPath(xml2JsonConfig.getSplitRecordsAtPath())
+                // the engine is built with the parser's provider, so its paths are worked out from the config instead
+                .materializedPaths(xml2JsonConfig.isRawJsonForUntransformedSubtrees() ?
+                        MaterializedPaths.of(getCfgJson().getTransforms(), DefaultTransformers.TRANFORMERS) : null)
                 .jsonProvider(new JacksonJsonProvider())
                 .build();
         return new XmlToRecordParser(xmlToRecordParserConfig);
     }
+
+    /**
+     * What mapping an input record gave:  its output fields in order, or for a split record that failed its exception,
+     * and the failure of the input as a whole
+     */
+    private static final class MappedRecord {
+        private final Record record;
+        private final List<Object> outputs = new ArrayList<>();
+        private Exception failure = null;
+
+        private MappedRecord(Record record) {
+            this.record = record;
+        }
+    }
 }
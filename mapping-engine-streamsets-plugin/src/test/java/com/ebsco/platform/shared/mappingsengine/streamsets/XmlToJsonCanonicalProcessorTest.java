@@ -2,9 +2,14 @@ package com.ebsco.platform.shared.mappingsengine.streamsets;
 
 import com.ebsco.entarch.mappings.streamsets.InputTypes;
 import com.ebsco.entarch.mappings.streamsets.InstructionsSources;
+import com.ebsco.entarch.mappings.streamsets.OutputTypes;
+import com.ebsco.entarch.mappings.streamsets.RecordUtils;
 import com.ebsco.entarch.mappings.streamsets.XmlToJsonCanonicalProcessor;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
 import com.streamsets.pipeline.api.Field;
 import com.streamsets.pipeline.api.FileRef;
+import com.streamsets.pipeline.api.OnRecordError;
 import com.streamsets.pipeline.api.Record;
 import com.streamsets.pipeline.api.Stage;
 import com.streamsets.pipeline.sdk.ProcessorRunner;
@@ -19,13 +24,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.ebsco.entarch.mappings.streamsets.RecordUtils.write;
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 public class XmlToJsonCanonicalProcessorTest {
 
     private static final String XML_INPUT_FIELD_NAME = "/rawXML";
@@ -146,6 +159,130 @@ public class XmlToJsonCanonicalProcessorTest {
         }
     }
 
+    @Test
+    // later stages read the mapped document as fields, or as JSON without the pretty printing
+    public void processorCanOutputFieldsAndCompactJson() throws Exception {
+        Record fields = runOutputType(OutputTypes.FIELDS);
+        assertEquals(Field.Type.LIST_MAP, fields.get(OUT_JSON_FIELD_NAME).getType());
+        assertEquals("fred", fields.get(OUT_JSON_FIELD_NAME + "/book/author").getValueAsString());
+
+        String compact = runOutputType(OutputTypes.JSON).get(OUT_JSON_FIELD_NAME).getValueAsString();
+        assertEquals("{\"book\":{\"author\":\"fred\"}}", compact);
+    }
+
+    private Record runOutputType(OutputTypes outputType) throws Exception {
+        ProcessorRunner runner = new ProcessorRunner.Builder(XmlToJsonCanonicalProcessor.class)
+                .addConfiguration("mappingInstructionsSource", InstructionsSources.Inline)
+                .addConfiguration("mappingInstructions", EMPTY_MAPPINGS)
+                .addConfiguration("rawXmlField", JSON_INPUT_FIELD_NAME)
+                .addConfiguration("rawInputType", InputTypes.JSON)
+                .addConfiguration("outJsonField", OUT_JSON_FIELD_NAME)
+                .addConfiguration("outputType", outputType)
+                .addOutputLane("output")
+                .build();
+        runner.runInit();
+        try {
+            Record record = RecordCreator.create();
+            record.set(Field.create(new HashMap<>()));
+            write(record, JSON_INPUT_FIELD_NAME, BASIC_JSON_BOOK);
+
+            StageRunner.Output output = runner.runProcess(singletonList(record));
+            assertEquals(1, output.getRecords().get("output").size());
+            return output.getRecords().get("output").get(0);
+        } finally {
+            runner.runDestroy();
+        }
+    }
+
+    @Test
+    // subtrees the parser kept as raw JSON become fields like the rest of the tree
+    public void rawJsonSubtreesBecomeFields() {
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("id", 7);
+        document.put("body", new RawValue("{\"p\":[\"one\",{\"b\":true}],\"n\":null}"));
+
+        Field field = RecordUtils.toField(new JacksonJsonProvider(), document);
+
+        assertEquals(asList("id", "body"), new ArrayList<>(field.getValueAsListMap().keySet()));
+        assertEquals(Field.Type.INTEGER, field.getValueAsListMap().get("id").getType());
+        Map<String, Field> body = field.getValueAsListMap().get("body").getValueAsListMap();
+        List<Field> paragraphs = body.get("p").getValueAsList();
+        assertEquals("one", paragraphs.get(0).getValueAsString());
+        assertEquals(Field.Type.BOOLEAN, paragraphs.get(1).getValueAsListMap().get("b").getType());
+        assertNull(body.get("n").getValue());
+    }
+
+    @Test
+    // the records of a batch mapped on several threads are output as mapped one by one, in the order of the batch
+    public void processorCanRunInParallel() throws Exception {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Record record = RecordCreator.create();
+            record.set(Field.create(new HashMap<>()));
+            write(record, JSON_INPUT_FIELD_NAME, "{\"book\": { \"author\": \"fred " + i + "\" } }");
+            records.add(record);
+        }
+
+        List<String> sequential = runJson(records, 1);
+        List<String> parallel = runJson(records, 4);
+
+        assertEquals(20, parallel.size());
+        assertEquals(sequential, parallel);
+        assertTrue(parallel.get(19).contains("fred 19"));
+    }
+
+    private List<String> runJson(List<Record> records, int parallelThreads) throws Exception {
+        ProcessorRunner runner = new ProcessorRunner.Builder(XmlToJsonCanonicalProcessor.class)
+                .addConfiguration("mappingInstructionsSource", InstructionsSources.Inline)
+                .addConfiguration("mappingInstructions", getText())
+                .addConfiguration("rawXmlField", JSON_INPUT_FIELD_NAME)
+                .addConfiguration("rawInputType", InputTypes.JSON)
+                .addConfiguration("outJsonField", OUT_JSON_FIELD_NAME)
+                .addConfiguration("parallelThreads", parallelThreads)
+                .addOutputLane("output")
+                .build();
+        runner.runInit();
+        try {
+            StageRunner.Output output = runner.runProcess(records);
+            return output.getRecords().get("output").stream()
+                    .map(it -> it.get(OUT_JSON_FIELD_NAME).getValueAsString())
+                    .collect(Collectors.toList());
+        } finally {
+            runner.runDestroy();
+        }
+    }
+
+    @Test
+    // a record of a split input that fails goes to error, the records after it are still output
+    public void splitRecordFailureIsPerRecord() throws Exception {
+        ProcessorRunner runner = new ProcessorRunner.Builder(XmlToJsonCanonicalProcessor.class)
+                .addConfiguration("mappingInstructionsSource", InstructionsSources.Inline)
+                .addConfiguration("mappingInstructions", SPLIT_MAPPINGS)
+                .addConfiguration("rawXmlField", XML_INPUT_FIELD_NAME)
+                .addConfiguration("rawInputType", InputTypes.XML)
+                .addConfiguration("outJsonField", OUT_JSON_FIELD_NAME)
+                .addConfiguration("outputType", OutputTypes.JSON)
+                .setOnRecordError(OnRecordError.TO_ERROR)
+                .addOutputLane("output")
+                .build();
+        runner.runInit();
+        try {
+            Record record = RecordCreator.create();
+            record.set(Field.create(new HashMap<>()));
+            write(record, XML_INPUT_FIELD_NAME, "<records><record>one</record><record>mixed <b>content</b></record><record>three</record></records>");
+
+            StageRunner.Output output = runner.runProcess(singletonList(record));
+
+            List<String> mapped = output.getRecords().get("output").stream()
+                    .map(it -> it.get(OUT_JSON_FIELD_NAME).getValueAsString())
+                    .collect(Collectors.toList());
+            assertEquals(asList("{\"record\":{\"value\":\"one\"}}", "{\"record\":{\"value\":\"three\"}}"), mapped);
+            assertEquals(1, runner.getErrorRecords().size());
+        } finally {
+            runner.runDestroy();
+        }
+    }
+
     @Test
     public void canLoadMappingsFromFile() throws Exception {
         ProcessorRunner runner = new ProcessorRunner.Builder(XmlToJsonCanonicalProcessor.class)
@@ -174,6 +311,12 @@ public class XmlToJsonCanonicalProcessorTest {
         runner.runDestroy();
     }
 
+    private static final String EMPTY_MAPPINGS = "{\"metadata\": {\"id\": \"empty\", \"version\": \"1.0.0\", \"primaryKey\": \"$.id\"}, " +
+            "\"transforms\": [], \"configuration\": {\"xml2json\": {}}}";
+
+    private static final String SPLIT_MAPPINGS = "{\"metadata\": {\"id\": \"split\", \"version\": \"1.0.0\", \"primaryKey\": \"$.id\"}, " +
+            "\"transforms\": [], \"configuration\": {\"xml2json\": {\"splitRecordsAtPath\": \"/records/record\"}}}";
+
     private static final String BASIC_JSON_BOOK = "{\"book\": { \"author\": \"fred\" } }";
 
     private static final String REALISTIC_XML = "<?xml version=\"1.0\" encoding=\"utf-8\"?><?xml-stylesheet href=\"file:////edc-filer1/busdev/PropPubProjects/Research Starters/Common Documents/CSS/CSS_Salem.css\"?>\n" +
@@ -0,0 +1,65 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.namespace.NamespaceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ElementPathPattern}s with their prefixes bound once, when the parser is created, to the configured namespaces.
+ * Only patterns using a prefix that is not configured are bound again for each document, to the namespaces it declares,
+ * so with all prefixes configured a document needs no namespace work at all.
+ */
+final class BoundElementPaths {
+    static final BoundElementPaths NONE = new BoundElementPaths(Collections.emptyList(), Collections.emptyList());
+
+    private final List<ElementPathPattern> bound;
+    private final List<ElementPathPattern> unbound;
+    private final ElementPathMatcher boundMatcher;
+
+    private BoundElementPaths(final List<ElementPathPattern> bound, final List<ElementPathPattern> unbound) {
+        this.bound = bound;
+        this.unbound = unbound;
+        this.boundMatcher = ElementPathMatcher.of(bound);
+    }
+
+    @NotNull
+    static BoundElementPaths of(@NotNull final List<ElementPathPattern> patterns, @NotNull final NamespaceContext configured) {
+        if (patterns.isEmpty()) {
+            return NONE;
+        }
+        List<ElementPathPattern> bound = new ArrayList<>();
+        List<ElementPathPattern> unbound = new ArrayList<>();
+        for (ElementPathPattern pattern : patterns) {
+            ElementPathPattern boundPattern = pattern.tryBind(configured);
+            if (boundPattern != null) {
+                bound.add(boundPattern);
+            } else {
+                unbound.add(pattern);
+            }
+        }
+        return new BoundElementPaths(Collections.unmodifiableList(bound), Collections.unmodifiableList(unbound));
+    }
+
+    boolean isEmpty() {
+        return bound.isEmpty() && unbound.isEmpty();
+    }
+
+    /**
+     * The matcher for a document, the namespace context is only asked about the prefixes that are not configured
+     */
+    @NotNull
+    ElementPathMatcher matcher(@NotNull final NamespaceContext documentNamespaces) {
+        if (unbound.isEmpty()) {
+            return boundMatcher;
+        }
+        List<ElementPathPattern> all = new ArrayList<>(bound.size() + unbound.size());
+        all.addAll(bound);
+        for (ElementPathPattern pattern : unbound) {
+            all.add(pattern.bind(documentNamespaces));
+        }
+        return ElementPathMatcher.of(all);
+    }
+}
@@ -0,0 +1,263 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The XPaths of one {@link XmlToRecordParserConfig} option, compiled once when the parser is created so that invalid
+ * expressions fail there instead of on the first document.
+ * <p>
+ * Simple element paths (see {@link ElementPathPattern}) are compiled to an {@link ElementPathMatcher}, advanced on each
+ * element of the tree walk, and never run the XPath engine.  Other expressions are evaluated against each document,
+ * compiled once per thread when their prefixes are all configured namespaces (or they have none), or per document
+ * when they do not as the other prefixes are bound to the namespaces of the document root.
+ */
+final class CompiledXPaths {
+    static final XmlNamespaceCache NO_NAMESPACES = new XmlNamespaceCache(Collections.emptyMap());
+    static final CompiledXPaths NONE = new CompiledXPaths(BoundElementPaths.NONE, Collections.emptyList(),
+            Collections.emptyList(), NO_NAMESPACES);
+
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+
+    private final BoundElementPaths patterns;
+    private final List<String> configuredExpressions;
+    private final List<String> documentExpressions;
+    private final ThreadLocal<List<XPathExpression>> compiledConfigured;
+
+    private CompiledXPaths(final BoundElementPaths patterns, final List<String> configuredExpressions,
+                           final List<String> documentExpressions, final NamespaceContext configuredNamespaces) {
+        this.patterns = patterns;
+        this.configuredExpressions = configuredExpressions;
+        this.documentExpressions = documentExpressions;
+        this.compiledConfigured = ThreadLocal.withInitial(() -> {
+            XPath xPath = newXPath();
+            xPath.setNamespaceContext(configuredNamespaces);
+            List<XPathExpression> compiled = new ArrayList<>(configuredExpressions.size());
+            for (String expression : configuredExpressions) {
+                compiled.add(compile(xPath, expression));
+            }
+            return compiled;
+        });
+    }
+
+    @NotNull
+    static CompiledXPaths compile(@NotNull final List<String> xpaths) {
+        return compile(xpaths, NO_NAMESPACES);
+    }
+
+    /**
+     * @param configuredNamespaces namespaces known up front, that take precedence over the ones a document declares
+     */
+    @NotNull
+    static CompiledXPaths compile(@NotNull final List<String> xpaths, @NotNull final NamespaceContext configuredNamespaces) {
+        if (xpaths.isEmpty()) {
+            return NONE;
+        }
+        List<ElementPathPattern> patterns = new ArrayList<>();
+        List<String> configured = new ArrayList<>();
+        List<String> document = new ArrayList<>();
+
+        XPath xPath = newXPath();
+        for (String expression : xpaths) {
+            ElementPathPattern pattern = ElementPathPattern.tryParse(expression);
+            if (pattern != null) {
+                patterns.add(pattern);
+                continue;
+            }
+            try {
+                // an expression compiles only if all its prefixes are configured
+                xPath.reset();
+                xPath.setNamespaceContext(configuredNamespaces);
+                xPath.compile(expression);
+                configured.add(expression);
+                continue;
+            } catch (XPathExpressionException ex) {
+                // maybe prefixed by the document, checked next
+            }
+            try {
+                xPath.reset();
+                xPath.setNamespaceContext(ANY_PREFIX);
+                xPath.compile(expression);
+                document.add(expression);
+            } catch (XPathExpressionException ex) {
+                throw new IllegalArgumentException("Invalid XPath " + expression + ": " + ex.getMessage(), ex);
+            }
+        }
+        return new CompiledXPaths(BoundElementPaths.of(patterns, configuredNamespaces), Collections.unmodifiableList(configured),
+                Collections.unmodifiableList(document), configuredNamespaces);
+    }
+
+    boolean isEmpty() {
+        return patterns.isEmpty() && configuredExpressions.isEmpty() && documentExpressions.isEmpty();
+    }
+
+    /**
+     * The nodes of the document selected by these XPaths, the expressions needing the XPath engine are evaluated here
+     *
+     * @param xPath      a (reset) XPath with the namespace context of the document
+     * @param namespaces the namespace context of the document, only asked about prefixes that are not configured
+     */
+    @NotNull
+    Selection select(@NotNull final Document document, @NotNull final XPath xPath, @NotNull final NamespaceContext namespaces) {
+        if (isEmpty()) {
+            return Selection.NONE;
+        }
+        Set<Node> nodes = Collections.emptySet();
+        if (!configuredExpressions.isEmpty() || !documentExpressions.isEmpty()) {
+            nodes = new HashSet<>();
+            for (XPathExpression expression : compiledConfigured.get()) {
+                nodes.addAll(XmlUtils.evaluateToNodes(expression, document));
+            }
+            for (String expression : documentExpressions) {
+                nodes.addAll(XmlUtils.evaluateToNodes(compile(xPath, expression), document));
+            }
+        }
+        return new Selection(nodes, patterns.matcher(namespaces));
+    }
+
+    private static XPath newXPath() {
+        synchronized (XPATH_FACTORY) {
+            return XPATH_FACTORY.newXPath();
+        }
+    }
+
+    private static XPathExpression compile(final XPath xPath, final String expression) {
+        try {
+            return xPath.compile(expression);
+        } catch (XPathExpressionException ex) {
+            throw new IllegalStateException("Invalid XPath " + expression + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    // binds every prefix, so that compiling checks only the syntax
+    private static final NamespaceContext ANY_PREFIX = new NamespaceContext() {
+        @Override
+        public String getNamespaceURI(final String prefix) {
+            return "urn:prefix:" + prefix;
+        }
+
+        @Override
+        public String getPrefix(final String namespaceURI) {
+            return null;
+        }
+
+        @Override
+        public Iterator getPrefixes(final String namespaceURI) {
+            return null;
+        }
+    };
+
+    /**
+     * The nodes selected in one document.  Elements are entered top down, with the state of their parent, as the tree
+     * is walked
+     */
+    static final class Selection {
+        static final Selection NONE = new Selection(Collections.emptySet(), ElementPathMatcher.NONE);
+
+        private final Set<Node> nodes;
+        private final ElementPathMatcher matcher;
+
+        private Selection(final Set<Node> nodes, final ElementPathMatcher matcher) {
+            this.nodes = nodes;
+            this.matcher = matcher;
+        }
+
+        @NotNull
+        long[] start() {
+            return matcher.start();
+        }
+
+        @NotNull
+        long[] enter(@NotNull final long[] parentState, @NotNull final Node element) {
+            return matcher.isEmpty() ? parentState : matcher.enter(parentState, new DomElement((Element) element));
+        }
+
+        boolean contains(@NotNull final Node node, @NotNull final long[] state) {
+            if (nodes.contains(node)) {
+                return true;
+            }
+            ElementPathMatcher.Match match = matcher.matches(state);
+            return match == ElementPathMatcher.Match.YES ||
+                    (match == ElementPathMatcher.Match.IF_HAS_ELEMENT_CHILDREN && hasElementChild(node));
+        }
+
+        private static boolean hasElementChild(final Node node) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class DomElement implements ElementPathPattern.Element {
+        private final Element element;
+
+        private DomElement(final Element element) {
+            this.element = element;
+        }
+
+        @Nullable
+        @Override
+        public String getNamespaceUri() {
+            return element.getNamespaceURI();
+        }
+
+        @NotNull
+        @Override
+        public String getLocalName() {
+            return element.getLocalName();
+        }
+
+        @Override
+        public int getSameNamePosition() {
+            int position = 1;
+            for (Node sibling = element.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+                if (sibling.getNodeType() == Node.ELEMENT_NODE && sibling.getLocalName().equals(element.getLocalName()) &&
+                        equalUris(sibling.getNamespaceURI(), element.getNamespaceURI())) {
+                    position++;
+                }
+            }
+            return position;
+        }
+
+        @Override
+        public int getElementPosition() {
+            int position = 1;
+            for (Node sibling = element.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+                if (sibling.getNodeType() == Node.ELEMENT_NODE) {
+                    position++;
+                }
+            }
+            return position;
+        }
+
+        @Nullable
+        @Override
+        public String getAttribute(@Nullable final String namespaceUri, @NotNull final String localName) {
+            Attr attribute = element.getAttributeNodeNS(namespaceUri, localName);
+            return attribute != null ? attribute.getValue() : null;
+        }
+
+        private static boolean equalUris(final String left, final String right) {
+            return left == null ? right == null : left.equals(right);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of (bound) {@link ElementPathPattern}s compiled to a state machine that is advanced once per start element,
+ * from the state of the parent element, so matching never looks back up the tree.
+ * <p>
+ * Each alternative of each pattern is a small NFA kept as bits of a long: bit i set means the steps before i matched
+ * an ancestor chain and step i is the one to match next, bit n (the number of steps) means the element itself matched
+ * the whole path.  A step after // keeps its bit set while going deeper, a step after / only lives for one level.
+ * A state is a long[] with one entry per alternative, never modified once created.
+ */
+final class ElementPathMatcher {
+    static final ElementPathMatcher NONE = new ElementPathMatcher(Collections.emptyList());
+
+    private static final long[] NO_STATE = new long[0];
+
+    private final ElementPathPattern.Step[][] machines;
+    private final long[] start;
+
+    enum Match {
+        NO,
+        YES,
+        // everything matched except a [*] on the element itself, which depends on children not seen yet
+        IF_HAS_ELEMENT_CHILDREN
+    }
+
+    private ElementPathMatcher(final List<List<ElementPathPattern.Step>> alternatives) {
+        this.machines = new ElementPathPattern.Step[alternatives.size()][];
+        this.start = new long[alternatives.size()];
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = alternatives.get(i).toArray(new ElementPathPattern.Step[0]);
+            start[i] = 1L;
+        }
+    }
+
+    @NotNull
+    static ElementPathMatcher of(@NotNull final List<ElementPathPattern> patterns) {
+        if (patterns.isEmpty()) {
+            return NONE;
+        }
+        List<List<ElementPathPattern.Step>> alternatives = new ArrayList<>();
+        for (ElementPathPattern pattern : patterns) {
+            alternatives.addAll(pattern.getAlternatives());
+        }
+        return new ElementPathMatcher(alternatives);
+    }
+
+    boolean isEmpty() {
+        return machines.length == 0;
+    }
+
+    /**
+     * The state of the document, before the root element
+     */
+    @NotNull
+    long[] start() {
+        return machines.length == 0 ? NO_STATE : start;
+    }
+
+    /**
+     * The state of an element, from the state of its parent
+     */
+    @NotNull
+    long[] enter(@NotNull final long[] parentState, @NotNull final ElementPathPattern.Element element) {
+        if (parentState == NO_STATE) {
+            return NO_STATE;
+        }
+        long[] state = null;
+        for (int m = 0; m < machines.length; m++) {
+            ElementPathPattern.Step[] steps = machines[m];
+            long parent = parentState[m];
+            long next = 0L;
+            // the bit of a completed match does not carry over to children
+            long waiting = parent & ~(1L << steps.length);
+            while (waiting != 0L) {
+                int i = Long.numberOfTrailingZeros(waiting);
+                waiting &= waiting - 1;
+                ElementPathPattern.Step step = steps[i];
+                if (step.isDescendant()) {
+                    next |= 1L << i;
+                }
+                if (step.matchesNode(element)) {
+                    next |= 1L << (i + 1);
+                }
+            }
+            if (next != 0L) {
+                if (state == null) {
+                    state = new long[machines.length];
+                }
+                state[m] = next;
+            }
+        }
+        // nothing can match below an element with no live steps
+        return state != null ? state : NO_STATE;
+    }
+
+    /**
+     * Whether the element of the state is selected by any of the patterns
+     */
+    @NotNull
+    Match matches(@NotNull final long[] state) {
+        if (state == NO_STATE) {
+            return Match.NO;
+        }
+        Match result = Match.NO;
+        for (int m = 0; m < machines.length; m++) {
+            ElementPathPattern.Step[] steps = machines[m];
+            if ((state[m] & (1L << steps.length)) != 0L) {
+                // [*] on an ancestor is always true, it has the element below it as a child, on the element itself it
+                // depends on children not seen yet
+                if (!steps[steps.length - 1].isRequiresElementChild()) {
+                    return Match.YES;
+                }
+                result = Match.IF_HAS_ELEMENT_CHILDREN;
+            }
+        }
+        return result;
+    }
+}
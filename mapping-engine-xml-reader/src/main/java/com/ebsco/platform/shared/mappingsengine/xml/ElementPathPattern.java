@@ -0,0 +1,390 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.namespace.NamespaceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The subset of XPath that selects elements by their path, so it can be checked on each start element in one forward
+ * pass (see {@link ElementPathMatcher}) instead of evaluated against a DOM:
+ * <pre>
+ *   /a/b/c   //name   /a//b   /a/*   h:name   (a relative path is taken from the root, like XPath does for a document)
+ *   predicates:  [*] has a child element,  [2] position among same named siblings,  [@x] and [@x='v'] attributes
+ *   a | b    either pattern
+ * </pre>
+ * Names are matched by namespace URI and local name, prefixes are resolved through a namespace context like XPath.
+ * Anything else (other axes, functions, text() ...) is rejected when the pattern is parsed.
+ */
+final class ElementPathPattern {
+    // an alternative is matched with one bit per step in a long
+    static final int MAX_STEPS = 63;
+
+    @Getter
+    private final String expression;
+    @Getter
+    private final List<List<Step>> alternatives;
+
+    private ElementPathPattern(final String expression, final List<List<Step>> alternatives) {
+        this.expression = expression;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * The element being entered
+     */
+    interface Element {
+        @Nullable
+        String getNamespaceUri();
+
+        @NotNull
+        String getLocalName();
+
+        /**
+         * 1 based position among the element siblings with the same namespace and local name
+         */
+        int getSameNamePosition();
+
+        /**
+         * 1 based position among all element siblings
+         */
+        int getElementPosition();
+
+        @Nullable
+        String getAttribute(@Nullable String namespaceUri, @NotNull String localName);
+    }
+
+    /**
+     * Parse an XPath into a pattern, or fail with IllegalArgumentException if it is not one of the supported forms
+     */
+    @NotNull
+    static ElementPathPattern parse(@NotNull final String xpath) {
+        List<List<Step>> alternatives = new ArrayList<>();
+        for (String alternative : splitOutsideBrackets(xpath, '|')) {
+            alternatives.add(parseSteps(xpath, alternative.trim()));
+        }
+        return new ElementPathPattern(xpath, Collections.unmodifiableList(alternatives));
+    }
+
+    /**
+     * Parse an XPath into a pattern, or null if it is not one of the supported forms
+     */
+    @Nullable
+    static ElementPathPattern tryParse(@NotNull final String xpath) {
+        try {
+            return parse(xpath);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Bind the prefixes of the pattern to namespace URIs, fails like XPath does for a prefix that is not declared
+     */
+    @NotNull
+    ElementPathPattern bind(@NotNull final NamespaceContext namespaces) {
+        if (alternatives.stream().flatMap(List::stream).noneMatch(Step::hasPrefix)) {
+            return this;
+        }
+        List<List<Step>> bound = new ArrayList<>();
+        for (List<Step> steps : alternatives) {
+            List<Step> boundSteps = new ArrayList<>();
+            for (Step step : steps) {
+                boundSteps.add(step.bind(namespaces, expression));
+            }
+            bound.add(Collections.unmodifiableList(boundSteps));
+        }
+        return new ElementPathPattern(expression, Collections.unmodifiableList(bound));
+    }
+
+    /**
+     * Bind the prefixes of the pattern to namespace URIs, or null if one of them is not declared
+     */
+    @Nullable
+    ElementPathPattern tryBind(@NotNull final NamespaceContext namespaces) {
+        try {
+            return bind(namespaces);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static List<Step> parseSteps(final String xpath, final String path) {
+        if (path.isEmpty()) {
+            throw unsupported(xpath);
+        }
+        List<Step> steps = new ArrayList<>();
+        int pos = 0;
+        boolean descendant = false;
+        if (path.startsWith("//")) {
+            descendant = true;
+            pos = 2;
+        } else if (path.startsWith("/")) {
+            pos = 1;
+        }
+        while (pos < path.length()) {
+            int end = pos;
+            int depth = 0;
+            char quote = 0;
+            while (end < path.length()) {
+                char c = path.charAt(end);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                } else if (c == '/' && depth == 0) {
+                    break;
+                }
+                end++;
+            }
+            steps.add(Step.parse(xpath, path.substring(pos, end).trim(), descendant));
+            if (end >= path.length()) {
+                break;
+            }
+            if (path.startsWith("//", end)) {
+                descendant = true;
+                pos = end + 2;
+            } else {
+                descendant = false;
+                pos = end + 1;
+            }
+            if (pos >= path.length()) {
+                throw unsupported(xpath);
+            }
+        }
+        if (steps.size() > MAX_STEPS) {
+            throw unsupported(xpath);
+        }
+        return Collections.unmodifiableList(steps);
+    }
+
+    private static List<String> splitOutsideBrackets(final String text, final char separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            } else if (c == separator && depth == 0) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    private static IllegalArgumentException unsupported(final String xpath) {
+        return new IllegalArgumentException("XPath " + xpath + " is not a supported element path (/a/b, //a, *, [*], [n], [@x], [@x='v'])");
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    static final class Step {
+        // may be any number of levels below the previous step, or anywhere for the first step
+        @Getter
+        private final boolean descendant;
+        // null for *
+        private final QName name;
+        private final int position;
+        @Getter
+        private final boolean requiresElementChild;
+        private final List<AttributeTest> attributes;
+
+        private Step(final boolean descendant, final QName name, final int position,
+                     final boolean requiresElementChild, final List<AttributeTest> attributes) {
+            this.descendant = descendant;
+            this.name = name;
+            this.position = position;
+            this.requiresElementChild = requiresElementChild;
+            this.attributes = attributes;
+        }
+
+        private static Step parse(final String xpath, final String step, final boolean descendant) {
+            int bracket = step.indexOf('[');
+            String nameTest = (bracket >= 0 ? step.substring(0, bracket) : step).trim();
+            QName name = nameTest.equals("*") ? null : QName.parse(xpath, nameTest);
+
+            int position = 0;
+            boolean requiresElementChild = false;
+            List<AttributeTest> attributes = new ArrayList<>();
+            int pos = bracket;
+            while (pos >= 0 && pos < step.length()) {
+                if (step.charAt(pos) != '[') {
+                    throw unsupported(xpath);
+                }
+                int close = findClose(step, pos);
+                if (close < 0) {
+                    throw unsupported(xpath);
+                }
+                String predicate = step.substring(pos + 1, close).trim();
+                if (predicate.equals("*")) {
+                    requiresElementChild = true;
+                } else if (!predicate.isEmpty() && predicate.chars().allMatch(Character::isDigit)) {
+                    // position is only meaningful before anything else filters the siblings
+                    if (pos != bracket || Integer.parseInt(predicate) < 1) {
+                        throw unsupported(xpath);
+                    }
+                    position = Integer.parseInt(predicate);
+                } else if (predicate.startsWith("@")) {
+                    attributes.add(AttributeTest.parse(xpath, predicate.substring(1)));
+                } else {
+                    throw unsupported(xpath);
+                }
+                pos = close + 1;
+                while (pos < step.length() && Character.isWhitespace(step.charAt(pos))) {
+                    pos++;
+                }
+            }
+            return new Step(descendant, name, position, requiresElementChild, Collections.unmodifiableList(attributes));
+        }
+
+        private static int findClose(final String step, final int open) {
+            char quote = 0;
+            for (int i = open + 1; i < step.length(); i++) {
+                char c = step.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == ']') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Step bind(final NamespaceContext namespaces, final String xpath) {
+            List<AttributeTest> boundAttributes = new ArrayList<>();
+            for (AttributeTest attribute : attributes) {
+                boundAttributes.add(new AttributeTest(attribute.name.bind(namespaces, xpath), attribute.value));
+            }
+            return new Step(descendant, name != null ? name.bind(namespaces, xpath) : null, position,
+                    requiresElementChild, Collections.unmodifiableList(boundAttributes));
+        }
+
+        private boolean hasPrefix() {
+            return (name != null && name.prefix != null) || attributes.stream().anyMatch(it -> it.name.prefix != null);
+        }
+
+        /**
+         * Whether the element passes the name test and the predicates, except [*] which is left to the caller
+         */
+        boolean matchesNode(final Element element) {
+            if (name != null && !name.matches(element.getNamespaceUri(), element.getLocalName())) {
+                return false;
+            }
+            if (position > 0) {
+                int actual = name != null ? element.getSameNamePosition() : element.getElementPosition();
+                if (actual != position) {
+                    return false;
+                }
+            }
+            for (AttributeTest attribute : attributes) {
+                String value = element.getAttribute(attribute.name.namespaceUri, attribute.name.localName);
+                if (value == null || (attribute.value != null && !attribute.value.equals(value))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class AttributeTest {
+        private final QName name;
+        // null when only checking the attribute exists
+        private final String value;
+
+        private AttributeTest(final QName name, final String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        private static AttributeTest parse(final String xpath, final String test) {
+            int equals = test.indexOf('=');
+            if (equals < 0) {
+                return new AttributeTest(QName.parse(xpath, test.trim()), null);
+            }
+            String literal = test.substring(equals + 1).trim();
+            if (literal.length() < 2 || (literal.charAt(0) != '\'' && literal.charAt(0) != '"') ||
+                    literal.charAt(literal.length() - 1) != literal.charAt(0)) {
+                throw unsupported(xpath);
+            }
+            return new AttributeTest(QName.parse(xpath, test.substring(0, equals).trim()), literal.substring(1, literal.length() - 1));
+        }
+    }
+
+    private static final class QName {
+        private final String prefix;
+        private final String namespaceUri;
+        private final String localName;
+
+        private QName(final String prefix, final String namespaceUri, final String localName) {
+            this.prefix = prefix;
+            this.namespaceUri = namespaceUri;
+            this.localName = localName;
+        }
+
+        private static QName parse(final String xpath, final String name) {
+            int colon = name.indexOf(':');
+            String prefix = colon > 0 ? name.substring(0, colon) : null;
+            String localName = colon > 0 ? name.substring(colon + 1) : name;
+            if (!isName(localName) || (prefix != null && !isName(prefix))) {
+                throw unsupported(xpath);
+            }
+            return new QName(prefix, null, localName);
+        }
+
+        private static boolean isName(final String name) {
+            if (name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+                return false;
+            }
+            return name.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.');
+        }
+
+        private QName bind(final NamespaceContext namespaces, final String xpath) {
+            if (prefix == null) {
+                return this;
+            }
+            String uri = namespaces.getNamespaceURI(prefix);
+            if (uri == null || uri.isEmpty()) {
+                throw new IllegalArgumentException("Prefix must resolve to a namespace: " + prefix + " in XPath " + xpath);
+            }
+            return new QName(prefix, uri, localName);
+        }
+
+        private boolean matches(final String elementNamespaceUri, final String elementLocalName) {
+            if (!localName.equals(elementLocalName)) {
+                return false;
+            }
+            // unprefixed names only match elements in no namespace, as in XPath 1.0
+            String uri = elementNamespaceUri == null || elementNamespaceUri.isEmpty() ? null : elementNamespaceUri;
+            return namespaceUri == null ? uri == null : namespaceUri.equals(uri);
+        }
+    }
+}
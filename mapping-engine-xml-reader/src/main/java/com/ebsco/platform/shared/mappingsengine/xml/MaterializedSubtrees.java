@@ -0,0 +1,62 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix tree of the JSON property names, from the document root, of the subtrees that are built as JsonProvider
+ * objects (see {@link XmlToRecordParserConfig#getMaterializedPaths()}).  A node is either the end of a path, everything
+ * below it is built, or on the way to one, then only the children that are themselves in the tree are built.
+ */
+final class MaterializedSubtrees {
+    static final MaterializedSubtrees ALL = new MaterializedSubtrees(true);
+    static final MaterializedSubtrees NONE = new MaterializedSubtrees(false);
+
+    private final boolean whole;
+    private final Map<String, MaterializedSubtrees> children;
+
+    private MaterializedSubtrees(final boolean whole) {
+        this.whole = whole;
+        this.children = whole ? Collections.emptyMap() : new HashMap<>();
+    }
+
+    /**
+     * The tree of the paths, their first name being the root element.  No paths (null) means every subtree is built.
+     */
+    @NotNull
+    static MaterializedSubtrees of(@Nullable final List<List<String>> paths) {
+        if (paths == null) {
+            return ALL;
+        }
+        MaterializedSubtrees root = new MaterializedSubtrees(false);
+        for (List<String> path : paths) {
+            if (path.isEmpty()) {
+                return ALL;
+            }
+            MaterializedSubtrees node = root;
+            for (int i = 0; i < path.size() && !node.whole; i++) {
+                boolean last = i == path.size() - 1;
+                MaterializedSubtrees child = node.children.get(path.get(i));
+                if (child == null || (last && !child.whole)) {
+                    child = last ? ALL : new MaterializedSubtrees(false);
+                    node.children.put(path.get(i), child);
+                }
+                node = child;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * The tree below the named child, or null if nothing below it is built
+     */
+    @Nullable
+    MaterializedSubtrees child(@NotNull final String name) {
+        return whole ? this : children.get(name);
+    }
+}
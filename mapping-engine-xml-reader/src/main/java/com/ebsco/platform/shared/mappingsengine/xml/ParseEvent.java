@@ -0,0 +1,39 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of one document (or one split record) parsed, its duration is the whole conversion to
+ * JSON.  Only touched through {@link ParseEvents}, so the parsers also run where jdk.jfr does not exist.
+ */
+@Name("com.ebsco.mappingsengine.Parse")
+@Label("XML Parse")
+@Category("Mappings Engine")
+@Description("An XML document or record converted to a JSON tree")
+@StackTrace(false)
+final class ParseEvent extends Event {
+    static final String DOM = "dom";
+    static final String STREAMING = "streaming";
+
+    @Label("Parser")
+    @Description("dom or streaming")
+    String parser;
+
+    @Label("Root Element")
+    String root;
+
+    @Label("Bytes")
+    @Description("Bytes read from the input, for a split record those read while it was parsed")
+    @DataAmount
+    long bytes;
+
+    @Label("Elements")
+    @Description("Elements read, for a split record those read while it was parsed, so the first includes its parents")
+    long elements;
+}
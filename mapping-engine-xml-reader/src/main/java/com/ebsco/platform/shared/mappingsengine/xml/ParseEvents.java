@@ -0,0 +1,57 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import jdk.jfr.FlightRecorder;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Starts and commits {@link ParseEvent}s when a flight recording has them enabled.  jdk.jfr is in Java 8 only from
+ * update 262 on, without it (or with the events disabled) there is no event and the input is not counted.
+ */
+@UtilityClass
+class ParseEvents {
+    private final boolean AVAILABLE = flightRecorderAvailable();
+
+    boolean isEnabled() {
+        return AVAILABLE && new ParseEvent().isEnabled();
+    }
+
+    /**
+     * A started event, or null when no recording wants it
+     */
+    @Nullable
+    ParseEvent begin(@NotNull final String parser) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.parser = parser;
+        event.begin();
+        return event;
+    }
+
+    // the elements are only counted if the event passes the threshold of the recording
+    void commit(@NotNull final ParseEvent event, @NotNull final String root, final long bytes, @NotNull final LongSupplier elements) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.root = root;
+            event.bytes = bytes;
+            event.elements = elements.getAsLong();
+            event.commit();
+        }
+    }
+
+    private boolean flightRecorderAvailable() {
+        try {
+            return FlightRecorder.isAvailable();
+        } catch (LinkageError ex) {
+            return false;
+        }
+    }
+}
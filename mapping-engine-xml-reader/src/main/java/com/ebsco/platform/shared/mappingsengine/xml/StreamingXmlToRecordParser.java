@@ -0,0 +1,735 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Same conversion as {@link XmlToRecordParser} for the same {@link XmlToRecordParserConfig}, but reading the XML as a
+ * stream (StAX) instead of building a DOM first.  Each element becomes JSON when it ends, so peak memory is about the
+ * resulting JSON rather than DOM plus JSON, and no XPath is evaluated over a document.
+ * <p>
+ * Differences to know about:
+ * <ul>
+ * <li>The XPaths in the config must be element paths as supported by {@link ElementPathPattern} (/a/b, //a, *, [*],
+ * [n], [@x], [@x='v'] and |), anything else fails when the parser is created.</li>
+ * <li>Content that may be kept as an XML string (preserveNestedTextElements) is also kept serialized while it is
+ * read, with auto detect that is the whole document.</li>
+ * </ul>
+ * A file holding many records can be split with {@link #parseRecords}, the split path is matched from the document
+ * root and the other XPaths of the config from each record, as if each record was a document of its own.
+ * <p>
+ * A parser can be shared by threads, each parse has its own state.
+ */
+public class StreamingXmlToRecordParser {
+    @Getter
+    final private XmlToRecordParserConfig config;
+    @Getter
+    final private JsonProvider json;
+
+    private final XmlNamespaceCache configuredNamespaces;
+    private final BoundElementPaths preserveNestedTextPatterns;
+    private final BoundElementPaths forceSingleValuePatterns;
+    private final BoundElementPaths forceElevateTextPatterns;
+    private final BoundElementPaths splitRecordsPatterns;
+    private final XMLInputFactory inputFactory;
+
+    public StreamingXmlToRecordParser(XmlToRecordParserConfig config) {
+        this.config = config;
+        this.json = config.getJsonProvider();
+        this.configuredNamespaces = new XmlNamespaceCache(config.getNamespaces());
+        this.preserveNestedTextPatterns = parsePatterns(config.getPreserveNestedTextElements_ByXPath(), configuredNamespaces);
+        this.forceSingleValuePatterns = parsePatterns(config.getForceSingleValueNodes_ByXPath(), configuredNamespaces);
+        this.forceElevateTextPatterns = parsePatterns(config.getForceElevateTextNode_ByXPath(), configuredNamespaces);
+        this.splitRecordsPatterns = parseSplitPattern(config.getSplitRecords_ByXPath(), configuredNamespaces);
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+        // like the DOM parser, external DTDs and entities resolve to nothing
+        factory.setXMLResolver((publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+        this.inputFactory = factory;
+    }
+
+    public StreamingXmlToRecordParser() {
+        this(XmlToRecordParserConfig.DEFAULTS);
+    }
+
+    private static BoundElementPaths parsePatterns(final List<String> xpaths, final NamespaceContext configuredNamespaces) {
+        return BoundElementPaths.of(xpaths.stream().map(ElementPathPattern::parse).collect(toList()), configuredNamespaces);
+    }
+
+    // a record starts at its start element, so the split path can not depend on the children of the element
+    private static BoundElementPaths parseSplitPattern(final String xpath, final NamespaceContext configuredNamespaces) {
+        if (xpath == null) {
+            return BoundElementPaths.NONE;
+        }
+        ElementPathPattern pattern = ElementPathPattern.parse(xpath);
+        for (List<ElementPathPattern.Step> steps : pattern.getAlternatives()) {
+            if (steps.get(steps.size() - 1).isRequiresElementChild()) {
+                throw new IllegalArgumentException("XPath " + xpath + " is not a supported split path ([*] on the record element)");
+            }
+        }
+        return BoundElementPaths.of(Collections.singletonList(pattern), configuredNamespaces);
+    }
+
+    @SneakyThrows
+    public XmlToRecordParser.Result parse(InputStream input) {
+        ParseEvent event = ParseEvents.begin(ParseEvent.STREAMING);
+        CountingInputStream counted = event == null ? null : new CountingInputStream(input);
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(counted == null ? input : counted);
+        try {
+            Parse parse = new Parse(reader, false);
+            XmlToRecordParser.Result result = parse.run();
+            if (event != null && result != null) {
+                ParseEvents.commit(event, result.getName(), counted.getCount(), () -> parse.elements);
+            }
+            return result;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The records of the input, each element matching the split path of the config (splitRecords_ByXPath) converted
+     * as if it was the root of a document of its own, or the whole document as one record if there is no split path.
+     * <p>
+     * Records are read from the input as the stream is consumed, only one record is held in memory at a time, and the
+     * stream can be mapped in parallel.  Elements outside of the records are not converted.  A record that fails to
+     * convert throws its IllegalStateException when it is reached, the records after it can still be read.  Through
+     * {@link Stream#iterator()} that is from hasNext(), as it reads ahead.  An input that cannot be read any further
+     * ends the stream after throwing once.  Records with no content are skipped.  Close the stream when done, the
+     * input stream itself is not closed.
+     */
+    @SneakyThrows
+    public Stream<XmlToRecordParser.Result> parseRecords(InputStream input) {
+        // whether records are recorded is decided once, when the stream is opened
+        CountingInputStream counted = ParseEvents.isEnabled() ? new CountingInputStream(input) : null;
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(counted == null ? input : counted);
+        Iterator<XmlToRecordParser.Result> records = new RecordIterator(new Parse(reader, !splitRecordsPatterns.isEmpty()), counted);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> closeQuietly(reader));
+    }
+
+    private static void closeQuietly(final XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+            // nothing left to read
+        }
+    }
+
+    private static final class RecordIterator implements Iterator<XmlToRecordParser.Result> {
+        private final Parse parse;
+        @Nullable
+        private final CountingInputStream counted;
+        private ChildResult next = null;
+        // the input could not be read any further, so there are no more records
+        private boolean failed = false;
+
+        private RecordIterator(final Parse parse, @Nullable final CountingInputStream counted) {
+            this.parse = parse;
+            this.counted = counted;
+        }
+
+        @Override
+        @SneakyThrows
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            } else if (failed) {
+                return false;
+            }
+            ParseEvent event = counted == null ? null : ParseEvents.begin(ParseEvent.STREAMING);
+            long bytesBefore = counted == null ? 0 : counted.getCount();
+            long elementsBefore = parse.elements;
+            try {
+                while (next == null && parse.nextRecord()) {
+                    next = parse.record;
+                }
+            } catch (XMLStreamException | RuntimeException ex) {
+                failed = true;
+                throw ex;
+            }
+            if (event != null && next != null && next.failure == null) {
+                ParseEvents.commit(event, next.name, counted.getCount() - bytesBefore, () -> parse.elements - elementsBefore);
+            }
+            return next != null;
+        }
+
+        @Override
+        public XmlToRecordParser.Result next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ChildResult record = next;
+            next = null;
+            if (record.failure != null) {
+                throw record.failure;
+            }
+            return XmlToRecordParser.Result.of(record.jsonNode, record.name);
+        }
+    }
+
+    /**
+     * The state of one parse
+     */
+    private final class Parse {
+        private final XMLStreamReader reader;
+        private final XmlContentBuffer content = new XmlContentBuffer();
+
+        private ElementPathMatcher preserveNestedText = ElementPathMatcher.NONE;
+        private ElementPathMatcher forceSingleValue = ElementPathMatcher.NONE;
+        private ElementPathMatcher forceElevateText = ElementPathMatcher.NONE;
+        private ElementPathMatcher splitRecords = ElementPathMatcher.NONE;
+        private final boolean split;
+
+        private Frame current = null;
+        private Frame root = null;
+        private boolean rootIsFirstChild = true;
+        // open elements whose content is being kept serialized
+        private int capturing = 0;
+        // open elements whose content will certainly be rendered as a string, below them no JSON is needed
+        private int rendering = 0;
+        // the last record ended, null if it had no content
+        private ChildResult record = null;
+        // start elements read so far, for the ParseEvents
+        private long elements = 0;
+
+        private Parse(final XMLStreamReader reader, final boolean split) {
+            this.reader = reader;
+            this.split = split;
+        }
+
+        private XmlToRecordParser.Result run() throws Exception {
+            ChildResult rootResult = null;
+            while (nextRecord()) {
+                rootResult = record;
+            }
+            if (rootResult == null) {
+                return null;
+            } else if (rootResult.failure != null) {
+                throw rootResult.failure;
+            }
+            return XmlToRecordParser.Result.of(rootResult.jsonNode, rootResult.name);
+        }
+
+        /**
+         * Read up to the end of the next record, false at the end of the document
+         */
+        private boolean nextRecord() throws XMLStreamException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        elements++;
+                        startElement();
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        Frame ended = current;
+                        ChildResult result = endElement();
+                        if (ended.recordRoot) {
+                            record = result;
+                            return true;
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (current != null && !current.outsideRecords) {
+                            characters();
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (current != null) {
+                            if (capturing > 0) {
+                                content.processingInstruction(reader.getPITarget(), reader.getPIData());
+                            }
+                        } else if (root == null) {
+                            rootIsFirstChild = false;
+                        }
+                        break;
+                    case XMLStreamConstants.DTD:
+                        rootIsFirstChild = false;
+                        break;
+                    default:
+                        // comments are ignored, as by the DOM parser
+                        break;
+                }
+            }
+            if (root == null) {
+                throw new IllegalStateException("No root element in XML document");
+            }
+            return false;
+        }
+
+        private void startElement() {
+            Frame parent = current;
+            Frame frame = new Frame(parent, reader.getNamespaceURI(), reader.getLocalName(), reader.getPrefix(), readAttributes());
+            if (parent == null) {
+                root = frame;
+                bindPatterns(frame);
+            } else {
+                parent.addElementChild(frame);
+            }
+
+            if (parent == null || parent.outsideRecords) {
+                if (split) {
+                    // above the records only the split path is followed, nothing is converted
+                    frame.splitRecordsState = splitRecords.enter(parent == null ? splitRecords.start() : parent.splitRecordsState, frame);
+                    if (splitRecords.matches(frame.splitRecordsState) == ElementPathMatcher.Match.NO) {
+                        frame.outsideRecords = true;
+                        current = frame;
+                        return;
+                    }
+                }
+                frame.recordRoot = true;
+            }
+
+            // each rule advances from the state of the parent, or of the document for the root of a record
+            frame.preserveNestedTextState = preserveNestedText.enter(frame.recordRoot ? preserveNestedText.start() : parent.preserveNestedTextState, frame);
+            frame.preserveNestedText = preserveNestedText.matches(frame.preserveNestedTextState);
+            if (rendering == 0) {
+                frame.forceSingleValueState = forceSingleValue.enter(frame.recordRoot ? forceSingleValue.start() : parent.forceSingleValueState, frame);
+                frame.forceSingleValue = forceSingleValue.matches(frame.forceSingleValueState);
+                frame.forceElevateTextState = forceElevateText.enter(frame.recordRoot ? forceElevateText.start() : parent.forceElevateTextState, frame);
+                frame.forceElevateText = forceElevateText.matches(frame.forceElevateTextState);
+            }
+
+            if (capturing > 0) {
+                writeStartTag(frame);
+            }
+            frame.rendered = rendering > 0;
+            if (config.isPreserveNestedTextElements_AutoDetect() || frame.preserveNestedText != ElementPathMatcher.Match.NO) {
+                frame.capturing = true;
+                frame.contentStart = content.contentOffset();
+                capturing++;
+            }
+            if (frame.preserveNestedText == ElementPathMatcher.Match.YES) {
+                rendering++;
+            }
+            current = frame;
+        }
+
+        private ChildResult endElement() {
+            Frame frame = current;
+            if (frame.outsideRecords) {
+                current = frame.parent;
+                return null;
+            }
+            int contentEnd = content.length();
+            if (frame.preserveNestedText == ElementPathMatcher.Match.YES) {
+                rendering--;
+            }
+            if (frame.capturing) {
+                capturing--;
+            }
+            if (capturing > 0) {
+                content.endElement(frame.qualifiedName);
+            }
+
+            ChildResult result = frame.rendered ? null : buildFieldsOf(frame, contentEnd);
+            if (capturing == 0) {
+                content.clear();
+            }
+            current = frame.parent;
+            if (!frame.recordRoot && result != null) {
+                current.children.add(result);
+            }
+            return result;
+        }
+
+        private void characters() {
+            Frame frame = current;
+            frame.hasText = true;
+            char[] chars = reader.getTextCharacters();
+            int start = reader.getTextStart();
+            int length = reader.getTextLength();
+            if (capturing > 0) {
+                content.characters(CharBuffer.wrap(chars, start, length));
+            }
+            if (frame.rendered) {
+                return;
+            }
+            if (!frame.hasNonBlankText) {
+                for (int i = start; i < start + length; i++) {
+                    if (chars[i] > ' ') {
+                        frame.hasNonBlankText = true;
+                        break;
+                    }
+                }
+            }
+            // once there are elements the text is either ignored or rendered as XML, it is not needed
+            if (!frame.hasElements) {
+                if (frame.text == null) {
+                    frame.text = new StringBuilder(length);
+                }
+                frame.text.append(chars, start, length);
+            }
+        }
+
+        /**
+         * The same decisions as XmlToRecordParser.buildFieldsOf, made on what was collected for the element.  Failures
+         * are returned rather than thrown, the DOM parser never looks below an element it renders as a string so
+         * failures there must not surface.
+         */
+        private ChildResult buildFieldsOf(final Frame frame, final int contentEnd) {
+            Object jsonNode = json.createMap();
+            for (Attribute attribute : frame.attributes) {
+                String prefix = config.getAttributePrefixesToKeep().contains(attribute.domPrefix) ? attribute.domPrefix + ":" : "";
+                json.setProperty(jsonNode, config.getAttributeNodePrefix() + prefix + attribute.domLocalName, attribute.value);
+            }
+
+            boolean preserve = frame.preserveNestedText == ElementPathMatcher.Match.YES ||
+                    (frame.preserveNestedText == ElementPathMatcher.Match.IF_HAS_ELEMENT_CHILDREN && frame.hasElements);
+            if (preserve) {
+                json.setProperty(jsonNode, config.getTextNodeName(), content.render(frame.contentStart, contentEnd).trim());
+                return frame.result(jsonNode);
+            }
+
+            if (frame.hasNonBlankText && frame.hasElements) {
+                if (config.isPreserveNestedTextElements_AutoDetect()) {
+                    json.setProperty(jsonNode, config.getTextNodeName(), content.render(frame.contentStart, contentEnd).trim());
+                    return frame.result(jsonNode);
+                } else {
+                    return frame.failure(new IllegalStateException("Unexpected mixed text/node field at " + frame.parentPath()));
+                }
+            } else if (frame.hasNonBlankText) {
+                json.setProperty(jsonNode, config.getTextNodeName(), frame.text.toString());
+                return frame.result(jsonNode);
+            } else if (frame.hasElements) {
+                // grouped by name in the order they first appear, as XmlToRecordParser does
+                Map<String, FieldGroup> fields = new LinkedHashMap<>(frame.children.size() * 4 / 3 + 1);
+                for (ChildResult child : frame.children) {
+                    if (child.failure != null) {
+                        return frame.failure(child.failure);
+                    }
+                    Object value = child.jsonNode;
+                    if (child.forceElevateText) {
+                        if (json.isMap(value) && config.getTextNodeName().equals(getSingleElementOrNull(json.getPropertyKeys(value)))) {
+                            value = json.getMapValue(value, config.getTextNodeName());
+                        } else {
+                            return frame.failure(new IllegalStateException("Expected only a #text node in " + frame.path()));
+                        }
+                    }
+                    fields.computeIfAbsent(child.name, it -> new FieldGroup(child)).add(value);
+                }
+
+                fields.forEach((key, group) -> json.setProperty(jsonNode, key, fieldValue(group)));
+                return frame.result(jsonNode);
+            } else if (frame.hasText) {
+                // only blank text, which the DOM parser renders as the (null) node value of the element
+                json.setProperty(jsonNode, config.getTextNodeName(), null);
+                return frame.result(jsonNode);
+            } else {
+                return null;
+            }
+        }
+
+        // the first element of a group decides if it is forced to a single value
+        private Object fieldValue(final FieldGroup group) {
+            boolean forceToSingleValue = group.first.forceSingleValue ||
+                    (config.isForceElevateTextNodesAreSingleValued() && group.first.forceElevateText);
+            Object firstElement = group.values[0];
+            boolean isOnlyValueText = group.size == 1 &&
+                    json.isMap(firstElement) &&
+                    config.getTextNodeName().equals(getSingleElementOrNull(json.getPropertyKeys(firstElement)));
+
+            if (forceToSingleValue || isOnlyValueText) {
+                return firstElement;
+            } else {
+                Object array = json.createArray();
+                for (int idx = 0; idx < group.size; idx++) {
+                    json.setArrayIndex(array, idx, group.values[idx]);
+                }
+                return array;
+            }
+        }
+
+        private List<Attribute> readAttributes() {
+            int namespaceCount = reader.getNamespaceCount();
+            int attributeCount = reader.getAttributeCount();
+            if (namespaceCount + attributeCount == 0) {
+                return Collections.emptyList();
+            }
+            List<Attribute> attributes = new ArrayList<>(namespaceCount + attributeCount);
+            for (int i = 0; i < namespaceCount; i++) {
+                String prefix = emptyToNull(reader.getNamespacePrefix(i));
+                String uri = reader.getNamespaceURI(i);
+                attributes.add(prefix == null
+                        ? new Attribute(XMLConstants.XMLNS_ATTRIBUTE, null, XMLConstants.XMLNS_ATTRIBUTE, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, uri == null ? "" : uri, true)
+                        : new Attribute(XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix, XMLConstants.XMLNS_ATTRIBUTE, prefix, XMLConstants.XMLNS_ATTRIBUTE_NS_URI, uri == null ? "" : uri, true));
+            }
+            for (int i = 0; i < attributeCount; i++) {
+                String prefix = emptyToNull(reader.getAttributePrefix(i));
+                String localName = reader.getAttributeLocalName(i);
+                attributes.add(new Attribute(prefix == null ? localName : prefix + ":" + localName, prefix, localName,
+                        emptyToNull(reader.getAttributeNamespace(i)), reader.getAttributeValue(i), false));
+            }
+            // the order of a DOM NamedNodeMap
+            attributes.sort(Comparator.comparing(attribute -> attribute.qualifiedName));
+            return attributes;
+        }
+
+        // namespace declarations, then prefixed attributes with their namespace, then the element namespace, as the
+        // JDK transformer writes them
+        private void writeStartTag(final Frame frame) {
+            content.startElement(frame.qualifiedName);
+            for (Attribute attribute : frame.attributes) {
+                if (attribute.namespaceDeclaration) {
+                    content.namespace(attribute.domPrefix == null ? "" : attribute.domLocalName, attribute.value);
+                }
+            }
+            for (Attribute attribute : frame.attributes) {
+                if (!attribute.namespaceDeclaration) {
+                    if (attribute.namespaceUri != null && attribute.domPrefix != null) {
+                        content.namespace(attribute.domPrefix, attribute.namespaceUri);
+                    }
+                    content.attribute(attribute.qualifiedName, attribute.value);
+                }
+            }
+            content.namespace(frame.prefix == null ? "" : frame.prefix, frame.namespaceUri == null ? "" : frame.namespaceUri);
+        }
+
+        // the XPath namespace context of the DOM parser: the configured namespaces, then the namespaces declared on the
+        // root element if the root element is the first node of the document, only looked up for prefixes that are not
+        // configured
+        private void bindPatterns(final Frame rootFrame) {
+            NamespaceContext context = new NamespaceContext() {
+                @Override
+                public String getNamespaceURI(final String prefix) {
+                    String uri = configuredNamespaces.getNamespaceURI(prefix);
+                    if (uri == null && rootIsFirstChild) {
+                        for (Attribute attribute : rootFrame.attributes) {
+                            if (attribute.namespaceDeclaration && attribute.domPrefix != null && attribute.domLocalName.equals(prefix)) {
+                                return attribute.value;
+                            }
+                        }
+                    }
+                    return uri;
+                }
+
+                @Override
+                public String getPrefix(final String namespaceURI) {
+                    return null;
+                }
+
+                @Override
+                public Iterator getPrefixes(final String namespaceURI) {
+                    return null;
+                }
+            };
+            preserveNestedText = preserveNestedTextPatterns.matcher(context);
+            forceSingleValue = forceSingleValuePatterns.matcher(context);
+            forceElevateText = forceElevateTextPatterns.matcher(context);
+            splitRecords = splitRecordsPatterns.matcher(context);
+        }
+    }
+
+    private static final class Frame implements ElementPathPattern.Element {
+        private final Frame parent;
+        private final String namespaceUri;
+        private final String localName;
+        private final String prefix;
+        private final String qualifiedName;
+        private final List<Attribute> attributes;
+        private int sameNamePosition = 1;
+        private int elementPosition = 1;
+
+        private Map<String, int[]> childNameCounts = null;
+        private int elementChildCount = 0;
+        private boolean hasText = false;
+        private boolean hasNonBlankText = false;
+        private boolean hasElements = false;
+        private StringBuilder text = null;
+        private final List<ChildResult> children = new ArrayList<>();
+
+        private ElementPathMatcher.Match preserveNestedText = ElementPathMatcher.Match.NO;
+        private ElementPathMatcher.Match forceSingleValue = ElementPathMatcher.Match.NO;
+        private ElementPathMatcher.Match forceElevateText = ElementPathMatcher.Match.NO;
+        private long[] preserveNestedTextState = ElementPathMatcher.NONE.start();
+        private long[] forceSingleValueState = ElementPathMatcher.NONE.start();
+        private long[] forceElevateTextState = ElementPathMatcher.NONE.start();
+        private long[] splitRecordsState = ElementPathMatcher.NONE.start();
+        // above the records of a split document, such elements are not converted
+        private boolean outsideRecords = false;
+        // the root of the document, or of a record of a split document
+        private boolean recordRoot = false;
+        private boolean rendered = false;
+        private boolean capturing = false;
+        private int contentStart = 0;
+
+        private Frame(final Frame parent, final String namespaceUri, final String localName, final String prefix, final List<Attribute> attributes) {
+            this.parent = parent;
+            this.namespaceUri = emptyToNull(namespaceUri);
+            this.localName = localName;
+            this.prefix = emptyToNull(prefix);
+            this.qualifiedName = this.prefix == null ? localName : this.prefix + ":" + localName;
+            this.attributes = attributes;
+        }
+
+        private void addElementChild(final Frame child) {
+            hasElements = true;
+            text = null;
+            if (childNameCounts == null) {
+                childNameCounts = new HashMap<>();
+            }
+            int[] count = childNameCounts.computeIfAbsent(child.namespaceUri + "}" + child.localName, it -> new int[1]);
+            child.sameNamePosition = ++count[0];
+            child.elementPosition = ++elementChildCount;
+        }
+
+        private ChildResult result(final Object jsonNode) {
+            return new ChildResult(localName, jsonNode, isForced(forceSingleValue), isForced(forceElevateText), null);
+        }
+
+        private ChildResult failure(final RuntimeException failure) {
+            return new ChildResult(localName, null, false, false, failure);
+        }
+
+        private boolean isForced(final ElementPathMatcher.Match match) {
+            return match == ElementPathMatcher.Match.YES || (match == ElementPathMatcher.Match.IF_HAS_ELEMENT_CHILDREN && hasElements);
+        }
+
+        // XmlUtils.getSimpleNodePath of this element, the document counts as "null"
+        private String parentPath() {
+            return parent == null ? "null" : parent.path();
+        }
+
+        private String path() {
+            return parentPath() + "/" + localName;
+        }
+
+        @Nullable
+        @Override
+        public String getNamespaceUri() {
+            return namespaceUri;
+        }
+
+        @NotNull
+        @Override
+        public String getLocalName() {
+            return localName;
+        }
+
+        @Override
+        public int getSameNamePosition() {
+            return sameNamePosition;
+        }
+
+        @Override
+        public int getElementPosition() {
+            return elementPosition;
+        }
+
+        @Nullable
+        @Override
+        public String getAttribute(@Nullable final String attributeNamespaceUri, @NotNull final String attributeLocalName) {
+            for (Attribute attribute : attributes) {
+                if (!attribute.namespaceDeclaration && attribute.domLocalName.equals(attributeLocalName) &&
+                        (attributeNamespaceUri == null ? attribute.namespaceUri == null : attributeNamespaceUri.equals(attribute.namespaceUri))) {
+                    return attribute.value;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An attribute as the DOM parser presents it, namespace declarations included
+     */
+    private static final class Attribute {
+        private final String qualifiedName;
+        private final String domPrefix;
+        private final String domLocalName;
+        private final String namespaceUri;
+        private final String value;
+        private final boolean namespaceDeclaration;
+
+        private Attribute(final String qualifiedName, final String domPrefix, final String domLocalName,
+                          final String namespaceUri, final String value, final boolean namespaceDeclaration) {
+            this.qualifiedName = qualifiedName;
+            this.domPrefix = domPrefix;
+            this.domLocalName = domLocalName;
+            this.namespaceUri = namespaceUri;
+            this.value = value;
+            this.namespaceDeclaration = namespaceDeclaration;
+        }
+    }
+
+    private static final class ChildResult {
+        private final String name;
+        private final Object jsonNode;
+        private final boolean forceSingleValue;
+        private final boolean forceElevateText;
+        private final RuntimeException failure;
+
+        private ChildResult(final String name, final Object jsonNode, final boolean forceSingleValue,
+                            final boolean forceElevateText, final RuntimeException failure) {
+            this.name = name;
+            this.jsonNode = jsonNode;
+            this.forceSingleValue = forceSingleValue;
+            this.forceElevateText = forceElevateText;
+            this.failure = failure;
+        }
+    }
+
+    private static final class FieldGroup {
+        private final ChildResult first;
+        private Object[] values = new Object[2];
+        private int size = 0;
+
+        private FieldGroup(final ChildResult first) {
+            this.first = first;
+        }
+
+        private void add(final Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static String emptyToNull(final String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static <T> T getSingleElementOrNull(Collection<T> col) {
+        if (col.size() != 1) {
+            return null;
+        } else {
+            return col.stream().findFirst().orElse(null);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Shape of the documents written by {@link SyntheticDocuments}, the same config and seed always give the same bytes.
+ */
+@Builder
+@Getter
+public class SyntheticDocumentConfig {
+
+    public static final SyntheticDocumentConfig DEFAULTS = SyntheticDocumentConfig.builder().build();
+
+    @Builder.Default
+    long seed = 1L;
+    // levels of sec nested in the body, and the sec in each of them (so fanOut + fanOut^2 ... + fanOut^depth in all)
+    @Builder.Default
+    int depth = 2;
+    @Builder.Default
+    int fanOut = 3;
+    // p in each sec, and contrib, kwd and ref of each article
+    @Builder.Default
+    int repeats = 4;
+    // italic, bold, xref (and with namespaces inline MathML) between the words of the p, otherwise only text
+    @Builder.Default
+    boolean mixedContent = true;
+    // xlink and mml namespaces declared on the root and used by xref, ext-link and inline formulas
+    @Builder.Default
+    boolean namespaces = true;
+    // articles in the file, more than one are written inside an article-set root element, split with //article
+    @Builder.Default
+    int records = 1;
+}
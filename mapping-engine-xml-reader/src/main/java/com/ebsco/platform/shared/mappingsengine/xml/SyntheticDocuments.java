@@ -0,0 +1,337 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import lombok.SneakyThrows;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes JATS-like articles (front matter, nested body sections, references) of any size for load and scale tests,
+ * the sample documents are too small to show how parsing and mapping grow with the document.  The words, names and
+ * numbers come from a Random of the configured seed, so a config always gives the same document.
+ * <p>
+ * The document is written as it is generated, a file of any size takes constant memory.  With mixed content the p
+ * elements need preserveNestedTextElements_AutoDetect (or an XPath for //p) to be parsed.
+ */
+@UtilityClass
+public class SyntheticDocuments {
+    public static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+    public static final String MATHML_NS = "http://www.w3.org/1998/Math/MathML";
+
+    private static final String[] WORDS = {
+            "analysis", "binding", "cell", "cohort", "data", "effect", "expression", "factor", "growth", "human",
+            "increase", "level", "model", "network", "outcome", "pathway", "patient", "protein", "rate", "response",
+            "risk", "sample", "signal", "structure", "study", "system", "therapy", "treatment", "value", "variant"
+    };
+    private static final String[] SURNAMES = {
+            "Chen", "Garcia", "Ivanova", "Kowalski", "Martin", "Nakamura", "Okafor", "Singh", "Smith", "Weber"
+    };
+    private static final String[] GIVEN_NAMES = {
+            "Ana", "David", "Hana", "Ivan", "Jun", "Maria", "Nia", "Omar", "Priya", "Tom"
+    };
+    private static final String[] SEC_TYPES = {"intro", "methods", "results", "discussion", "conclusions"};
+
+    /**
+     * Write the document as UTF-8 to the stream, which is left open
+     */
+    @SneakyThrows(XMLStreamException.class)
+    public void writeXml(@NotNull final SyntheticDocumentConfig config, @NotNull final OutputStream out) {
+        if (config.getDepth() < 1 || config.getFanOut() < 1 || config.getRepeats() < 1 || config.getRecords() < 1) {
+            throw new IllegalArgumentException("Synthetic document depth, fanOut, repeats and records must be at least 1");
+        }
+        XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        new Writer(config, xml).document();
+        xml.flush();
+        xml.close();
+    }
+
+    @NotNull
+    public byte[] xml(@NotNull final SyntheticDocumentConfig config) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeXml(config, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * The document parsed to JSON under its root element name, as the CLI hands it to the engine
+     */
+    @NotNull
+    public Map<String, Object> json(@NotNull final SyntheticDocumentConfig config, @NotNull final XmlToRecordParserConfig parserConfig) {
+        XmlToRecordParser.Result parsed = new XmlToRecordParser(parserConfig).parse(new ByteArrayInputStream(xml(config)));
+        Map<String, Object> document = new HashMap<>();
+        document.put(parsed.getName(), parsed.getJsonNode());
+        return document;
+    }
+
+    private static final class Writer {
+        private final SyntheticDocumentConfig config;
+        private final XMLStreamWriter xml;
+        private final Random random;
+        private int level = 0;
+
+        private Writer(final SyntheticDocumentConfig config, final XMLStreamWriter xml) {
+            this.config = config;
+            this.xml = xml;
+            this.random = new Random(config.getSeed());
+        }
+
+        private void document() throws XMLStreamException {
+            xml.writeStartDocument("UTF-8", "1.0");
+            if (config.getRecords() == 1) {
+                article(0, true);
+            } else {
+                open("article-set");
+                declareNamespaces();
+                for (int record = 0; record < config.getRecords(); record++) {
+                    article(record, false);
+                }
+                close();
+            }
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+        }
+
+        private void declareNamespaces() throws XMLStreamException {
+            if (config.isNamespaces()) {
+                xml.writeNamespace("xlink", XLINK_NS);
+                xml.writeNamespace("mml", MATHML_NS);
+            }
+        }
+
+        private void article(final int record, final boolean root) throws XMLStreamException {
+            open("article");
+            if (root) {
+                declareNamespaces();
+            }
+            xml.writeAttribute("article-type", "research-article");
+            xml.writeAttribute("dtd-version", "1.1");
+            xml.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "lang", "en");
+            front(record);
+            body();
+            back();
+            close();
+        }
+
+        private void front(final int record) throws XMLStreamException {
+            open("front");
+            open("journal-meta");
+            leaf("journal-id", "journal-id-type", "publisher", "SYN" + random.nextInt(100));
+            open("journal-title-group");
+            leaf("journal-title", words(3));
+            close();
+            leaf("issn", "pub-type", "ppub", String.format("%04d-%04d", random.nextInt(10000), random.nextInt(10000)));
+            close();
+
+            open("article-meta");
+            leaf("article-id", "pub-id-type", "doi", "10.5555/synthetic." + config.getSeed() + "." + record);
+            open("title-group");
+            leaf("article-title", words(8));
+            close();
+            open("contrib-group");
+            for (int i = 0; i < config.getRepeats(); i++) {
+                open("contrib");
+                xml.writeAttribute("contrib-type", "author");
+                name();
+                emptyLeaf("xref", "ref-type", "aff", "rid", "aff1");
+                close();
+            }
+            close();
+            open("pub-date");
+            xml.writeAttribute("pub-type", "epub");
+            leaf("year", String.valueOf(1990 + random.nextInt(30)));
+            close();
+            open("abstract");
+            paragraph();
+            close();
+            open("kwd-group");
+            for (int i = 0; i < config.getRepeats(); i++) {
+                leaf("kwd", words(2));
+            }
+            close();
+            close();
+            close();
+        }
+
+        private void body() throws XMLStreamException {
+            open("body");
+            sections("s", 1);
+            close();
+        }
+
+        private void sections(final String parentId, final int depth) throws XMLStreamException {
+            for (int i = 1; i <= config.getFanOut(); i++) {
+                String id = parentId + (depth == 1 ? "" : ".") + i;
+                open("sec");
+                xml.writeAttribute("id", id);
+                xml.writeAttribute("sec-type", SEC_TYPES[random.nextInt(SEC_TYPES.length)]);
+                leaf("title", words(4));
+                for (int p = 0; p < config.getRepeats(); p++) {
+                    paragraph();
+                }
+                if (depth < config.getDepth()) {
+                    sections(id, depth + 1);
+                }
+                close();
+            }
+        }
+
+        private void back() throws XMLStreamException {
+            open("back");
+            open("ref-list");
+            for (int i = 1; i <= config.getRepeats(); i++) {
+                open("ref");
+                xml.writeAttribute("id", "r" + i);
+                open("element-citation");
+                xml.writeAttribute("publication-type", "journal");
+                open("person-group");
+                xml.writeAttribute("person-group-type", "author");
+                name();
+                close();
+                leaf("article-title", words(6));
+                leaf("source", words(2));
+                leaf("year", String.valueOf(1950 + random.nextInt(70)));
+                indent();
+                xml.writeStartElement("ext-link");
+                xml.writeAttribute("ext-link-type", "uri");
+                String uri = "https://example.org/" + random.nextInt(1000000);
+                if (config.isNamespaces()) {
+                    xml.writeAttribute("xlink", XLINK_NS, "href", uri);
+                }
+                xml.writeCharacters(uri);
+                xml.writeEndElement();
+                close();
+                close();
+            }
+            close();
+            close();
+        }
+
+        private void name() throws XMLStreamException {
+            open("name");
+            leaf("surname", SURNAMES[random.nextInt(SURNAMES.length)]);
+            leaf("given-names", GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)]);
+            close();
+        }
+
+        // a sentence or a few, with inline elements between the words when mixed
+        private void paragraph() throws XMLStreamException {
+            indent();
+            xml.writeStartElement("p");
+            int sentences = 1 + random.nextInt(3);
+            for (int s = 0; s < sentences; s++) {
+                xml.writeCharacters((s == 0 ? "" : " ") + capitalized(words(4 + random.nextInt(8))));
+                if (config.isMixedContent()) {
+                    inline();
+                }
+                xml.writeCharacters(" " + words(3 + random.nextInt(5)) + ".");
+            }
+            xml.writeEndElement();
+        }
+
+        private void inline() throws XMLStreamException {
+            xml.writeCharacters(" ");
+            switch (random.nextInt(config.isNamespaces() ? 4 : 3)) {
+                case 0:
+                    xml.writeStartElement("italic");
+                    xml.writeCharacters(words(2));
+                    xml.writeEndElement();
+                    break;
+                case 1:
+                    xml.writeStartElement("bold");
+                    xml.writeCharacters(words(1));
+                    xml.writeEndElement();
+                    break;
+                case 2:
+                    int ref = 1 + random.nextInt(config.getRepeats());
+                    xml.writeStartElement("xref");
+                    xml.writeAttribute("ref-type", "bibr");
+                    xml.writeAttribute("rid", "r" + ref);
+                    xml.writeCharacters(String.valueOf(ref));
+                    xml.writeEndElement();
+                    break;
+                default:
+                    xml.writeStartElement("inline-formula");
+                    xml.writeStartElement("mml", "math", MATHML_NS);
+                    xml.writeStartElement("mml", "mi", MATHML_NS);
+                    xml.writeCharacters(String.valueOf((char) ('a' + random.nextInt(26))));
+                    xml.writeEndElement();
+                    xml.writeStartElement("mml", "mo", MATHML_NS);
+                    xml.writeCharacters("=");
+                    xml.writeEndElement();
+                    xml.writeStartElement("mml", "mn", MATHML_NS);
+                    xml.writeCharacters(String.valueOf(random.nextInt(100)));
+                    xml.writeEndElement();
+                    xml.writeEndElement();
+                    xml.writeEndElement();
+                    break;
+            }
+        }
+
+        private String words(final int count) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    text.append(' ');
+                }
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            return text.toString();
+        }
+
+        private String capitalized(final String text) {
+            return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+        }
+
+        private void open(final String name) throws XMLStreamException {
+            indent();
+            xml.writeStartElement(name);
+            level++;
+        }
+
+        private void close() throws XMLStreamException {
+            level--;
+            indent();
+            xml.writeEndElement();
+        }
+
+        private void leaf(final String name, final String text) throws XMLStreamException {
+            indent();
+            xml.writeStartElement(name);
+            xml.writeCharacters(text);
+            xml.writeEndElement();
+        }
+
+        private void leaf(final String name, final String attribute, final String value, final String text) throws XMLStreamException {
+            indent();
+            xml.writeStartElement(name);
+            xml.writeAttribute(attribute, value);
+            xml.writeCharacters(text);
+            xml.writeEndElement();
+        }
+
+        private void emptyLeaf(final String name, final String... attributes) throws XMLStreamException {
+            indent();
+            xml.writeEmptyElement(name);
+            for (int i = 0; i < attributes.length; i += 2) {
+                xml.writeAttribute(attributes[i], attributes[i + 1]);
+            }
+        }
+
+        private void indent() throws XMLStreamException {
+            StringBuilder whitespace = new StringBuilder("\n");
+            for (int i = 0; i < level; i++) {
+                whitespace.append("  ");
+            }
+            xml.writeCharacters(whitespace.toString());
+        }
+    }
+}
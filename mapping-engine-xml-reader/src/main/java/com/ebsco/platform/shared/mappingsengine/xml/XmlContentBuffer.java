@@ -0,0 +1,232 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import javax.xml.XMLConstants;
+import java.util.Arrays;
+
+/**
+ * Serialized XML content written as it streams by, that any range of can later be rendered the way
+ * {@link XmlUtils#childrenAsXmlString} renders DOM children: every top level node of the range on its own, so with the
+ * namespace declarations it needs repeated rather than inherited from outside the range.
+ * <p>
+ * To allow that, namespace declarations are not written into the text, only where they could go.  Rendering a range
+ * inserts the ones not already in scope within that range, in the order the JDK transformer writes them: declared
+ * namespaces, then each prefixed attribute's namespace before it, then the element's own namespace.
+ */
+final class XmlContentBuffer {
+    private final StringBuilder text = new StringBuilder();
+
+    // possible namespace declarations, the offset in text to insert at and what to declare
+    private int[] declarationOffsets = new int[16];
+    private String[] declarationPrefixes = new String[16];
+    private String[] declarationUris = new String[16];
+    private int declarationCount = 0;
+
+    // elements with possible namespace declarations, in document order
+    private int[] elementStarts = new int[16];
+    private int[] elementEnds = new int[16];
+    private int[] elementFirstDeclarations = new int[16];
+    private int elementCount = 0;
+
+    // open elements, the index of their element record or -1
+    private int[] openElements = new int[16];
+    private int openDepth = 0;
+    private boolean startTagOpen = false;
+    private int startTagOffset = 0;
+    private boolean defaultNamespaceUsed = false;
+
+    int length() {
+        return text.length();
+    }
+
+    /**
+     * Where the content of the element just started begins, after its start tag is closed
+     */
+    int contentOffset() {
+        return startTagOpen ? text.length() + 1 : text.length();
+    }
+
+    void clear() {
+        text.setLength(0);
+        Arrays.fill(declarationPrefixes, 0, declarationCount, null);
+        Arrays.fill(declarationUris, 0, declarationCount, null);
+        declarationCount = 0;
+        elementCount = 0;
+        openDepth = 0;
+        startTagOpen = false;
+        defaultNamespaceUsed = false;
+    }
+
+    /**
+     * Start an element, follow with its {@link #namespace} and {@link #attribute} calls in the order they are written
+     */
+    void startElement(final String qualifiedName) {
+        closeStartTag();
+        if (openDepth == openElements.length) {
+            openElements = Arrays.copyOf(openElements, openDepth * 2);
+        }
+        openElements[openDepth++] = -1;
+        startTagOffset = text.length();
+        text.append('<').append(qualifiedName);
+        startTagOpen = true;
+    }
+
+    /**
+     * A namespace the current start tag needs in scope, declared only when rendering finds it is not
+     */
+    void namespace(final String prefix, final String namespaceUri) {
+        if (prefix.isEmpty()) {
+            if (!namespaceUri.isEmpty()) {
+                defaultNamespaceUsed = true;
+            } else if (!defaultNamespaceUsed) {
+                // no default namespace anywhere in the content, so undeclaring it is never needed
+                return;
+            }
+        }
+        int element = openElements[openDepth - 1];
+        if (element < 0) {
+            element = addElement();
+            openElements[openDepth - 1] = element;
+        }
+        if (declarationCount == declarationOffsets.length) {
+            int size = declarationCount * 2;
+            declarationOffsets = Arrays.copyOf(declarationOffsets, size);
+            declarationPrefixes = Arrays.copyOf(declarationPrefixes, size);
+            declarationUris = Arrays.copyOf(declarationUris, size);
+        }
+        declarationOffsets[declarationCount] = text.length();
+        declarationPrefixes[declarationCount] = prefix;
+        declarationUris[declarationCount] = namespaceUri;
+        declarationCount++;
+    }
+
+    void attribute(final String qualifiedName, final String value) {
+        text.append(' ').append(qualifiedName).append("=\"");
+        XmlUtils.escapeAttribute(text, value);
+        text.append('"');
+    }
+
+    void characters(final CharSequence chars) {
+        closeStartTag();
+        XmlUtils.escapeText(text, chars);
+    }
+
+    void processingInstruction(final String target, final String data) {
+        closeStartTag();
+        text.append("<?").append(target);
+        if (data != null && !data.isEmpty()) {
+            text.append(' ').append(data);
+        }
+        text.append("?>");
+    }
+
+    void endElement(final String qualifiedName) {
+        if (startTagOpen) {
+            text.append("/>");
+            startTagOpen = false;
+        } else {
+            text.append("</").append(qualifiedName).append('>');
+        }
+        int element = openElements[--openDepth];
+        if (element >= 0) {
+            elementEnds[element] = text.length();
+        }
+    }
+
+    /**
+     * The content between two offsets, each top level node of it rendered as a standalone fragment
+     */
+    String render(final int from, final int to) {
+        if (to <= from) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(to - from + 64);
+        int copied = from;
+
+        String[] scopePrefixes = new String[8];
+        String[] scopeUris = new String[8];
+        int[] scopeEnds = new int[8];
+        int scopeSize = 0;
+
+        int element = firstElementAtOrAfter(from);
+        for (; element < elementCount && elementStarts[element] < to; element++) {
+            int start = elementStarts[element];
+            while (scopeSize > 0 && scopeEnds[scopeSize - 1] <= start) {
+                scopeSize--;
+            }
+            int last = element + 1 < elementCount ? elementFirstDeclarations[element + 1] : declarationCount;
+            for (int declaration = elementFirstDeclarations[element]; declaration < last; declaration++) {
+                String prefix = declarationPrefixes[declaration];
+                String uri = declarationUris[declaration];
+                if (uri.equals(lookup(prefix, scopePrefixes, scopeUris, scopeSize))) {
+                    continue;
+                }
+                int offset = declarationOffsets[declaration];
+                out.append(text, copied, offset);
+                copied = offset;
+                out.append(prefix.isEmpty() ? " xmlns" : " xmlns:").append(prefix).append("=\"");
+                XmlUtils.escapeAttribute(out, uri);
+                out.append('"');
+
+                if (scopeSize == scopePrefixes.length) {
+                    scopePrefixes = Arrays.copyOf(scopePrefixes, scopeSize * 2);
+                    scopeUris = Arrays.copyOf(scopeUris, scopeSize * 2);
+                    scopeEnds = Arrays.copyOf(scopeEnds, scopeSize * 2);
+                }
+                scopePrefixes[scopeSize] = prefix;
+                scopeUris[scopeSize] = uri;
+                scopeEnds[scopeSize] = elementEnds[element];
+                scopeSize++;
+            }
+        }
+        out.append(text, copied, to);
+        return out.toString();
+    }
+
+    private static String lookup(final String prefix, final String[] prefixes, final String[] uris, final int size) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (prefixes[i].equals(prefix)) {
+                return uris[i];
+            }
+        }
+        if (prefix.isEmpty()) {
+            return XMLConstants.NULL_NS_URI;
+        } else if (prefix.equals(XMLConstants.XML_NS_PREFIX)) {
+            return XMLConstants.XML_NS_URI;
+        }
+        return null;
+    }
+
+    private int firstElementAtOrAfter(final int offset) {
+        int low = 0;
+        int high = elementCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (elementStarts[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int addElement() {
+        if (elementCount == elementStarts.length) {
+            int size = elementCount * 2;
+            elementStarts = Arrays.copyOf(elementStarts, size);
+            elementEnds = Arrays.copyOf(elementEnds, size);
+            elementFirstDeclarations = Arrays.copyOf(elementFirstDeclarations, size);
+        }
+        elementStarts[elementCount] = startTagOffset;
+        elementEnds[elementCount] = Integer.MAX_VALUE;
+        elementFirstDeclarations[elementCount] = declarationCount;
+        return elementCount++;
+    }
+
+    private void closeStartTag() {
+        if (startTagOpen) {
+            text.append('>');
+            startTagOpen = false;
+        }
+    }
+}
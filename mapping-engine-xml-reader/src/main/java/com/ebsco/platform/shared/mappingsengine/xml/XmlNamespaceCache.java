@@ -8,8 +8,13 @@ import java.util.*;
 
 public class XmlNamespaceCache implements NamespaceContext {
     private static final String DEFAULT_NS = "DEFAULT";
-    private Map<String, String> prefix2Uri = new HashMap<String, String>();
-    private Map<String, String> uri2Prefix = new HashMap<String, String>();
+    private final Map<String, String> prefix2Uri = new HashMap<String, String>();
+    private final Map<String, String> uri2Prefix = new HashMap<String, String>();
+
+    // for a document context on top of configured namespaces, the configured ones, and the root element that is only
+    // looked at for prefixes they do not have
+    private final XmlNamespaceCache configured;
+    private final Element lazyRoot;
 
     /**
      * This constructor parses the document and stores all namespaces it can
@@ -21,9 +26,41 @@ public class XmlNamespaceCache implements NamespaceContext {
      *            restriction of the search to enhance performance
      */
     public XmlNamespaceCache(Document document, boolean toplevelOnly) {
+        this.configured = null;
+        this.lazyRoot = null;
         examineNode(document.getFirstChild(), toplevelOnly);
     }
 
+    /**
+     * A fixed set of namespaces, not read from any document, that never changes once created so it can be shared
+     * by threads.
+     *
+     * @param namespaces
+     *            namespace uri by prefix, the empty prefix for the default namespace
+     */
+    public XmlNamespaceCache(Map<String, String> namespaces) {
+        this.configured = null;
+        this.lazyRoot = null;
+        namespaces.forEach((prefix, uri) -> putInCache(prefix.isEmpty() ? DEFAULT_NS : prefix, uri));
+    }
+
+    private XmlNamespaceCache(XmlNamespaceCache configured, Node root) {
+        this.configured = configured;
+        this.lazyRoot = root instanceof Element ? (Element) root : null;
+    }
+
+    /**
+     * The namespace context of a document: these namespaces, and for any other prefix the namespace declared on the
+     * root element (when the root is the first node, as for the toplevelOnly constructor).  The root is only looked at
+     * when a prefix is not one of these, so a document needs no work when all its prefixes are configured.
+     *
+     * @param document
+     *            source document
+     */
+    public XmlNamespaceCache forDocument(Document document) {
+        return new XmlNamespaceCache(this, document.getFirstChild());
+    }
+
     /**
      * A single node is read, the namespace attributes are extracted and stored.
      *
@@ -88,11 +125,20 @@ public class XmlNamespaceCache implements NamespaceContext {
      * @return uri
      */
     public String getNamespaceURI(String prefix) {
-        if (prefix == null || prefix.equals(XMLConstants.DEFAULT_NS_PREFIX)) {
-            return prefix2Uri.get(DEFAULT_NS);
-        } else {
-            return prefix2Uri.get(prefix);
+        String key = prefix == null || prefix.equals(XMLConstants.DEFAULT_NS_PREFIX) ? DEFAULT_NS : prefix;
+        if (configured != null) {
+            String uri = configured.prefix2Uri.get(key);
+            if (uri != null) {
+                return uri;
+            }
+            if (lazyRoot != null && !prefix2Uri.containsKey(key)) {
+                // looked up once, remembering undeclared prefixes too
+                Attr declaration = lazyRoot.getAttributeNodeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        key.equals(DEFAULT_NS) ? XMLConstants.XMLNS_ATTRIBUTE : key);
+                prefix2Uri.put(key, declaration != null ? declaration.getNodeValue() : null);
+            }
         }
+        return prefix2Uri.get(key);
     }
 
     /**
@@ -100,6 +146,19 @@ public class XmlNamespaceCache implements NamespaceContext {
      * similar way.
      */
     public String getPrefix(String namespaceURI) {
+        if (configured != null) {
+            String prefix = configured.uri2Prefix.get(namespaceURI);
+            if (prefix == null && lazyRoot != null) {
+                NamedNodeMap attributes = lazyRoot.getAttributes();
+                for (int i = 0; i < attributes.getLength() && prefix == null; i++) {
+                    Attr attribute = (Attr) attributes.item(i);
+                    if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI()) && attribute.getNodeValue().equals(namespaceURI)) {
+                        prefix = attribute.getNodeName().equals(XMLConstants.XMLNS_ATTRIBUTE) ? DEFAULT_NS : attribute.getLocalName();
+                    }
+                }
+            }
+            return prefix;
+        }
         return uri2Prefix.get(namespaceURI);
     }
 
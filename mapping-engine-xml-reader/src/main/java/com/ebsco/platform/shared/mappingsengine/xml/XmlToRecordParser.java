@@ -1,97 +1,153 @@
 package com.ebsco.platform.shared.mappingsengine.xml;
 
+import com.ebsco.platform.shared.mappingsengine.xml.CompiledXPaths.Selection;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.jayway.jsonpath.spi.json.JsonProvider;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.Value;
 import org.w3c.dom.*;
+import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import static com.ebsco.platform.shared.mappingsengine.xml.XmlUtils.*;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toList;
 
+/**
+ * Converts an XML document into a JsonProvider tree.  With {@link XmlToRecordParserConfig#getMaterializedPaths()} set,
+ * only the subtrees on those paths are built as JsonProvider objects, each other field is written straight to a Jackson
+ * {@link JsonGenerator} and kept as a {@link RawValue}, which Jackson serializes as is.
+ */
 public class XmlToRecordParser {
+    // factories do service loader lookups when created, so they are created once, and builders are reused per thread
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = newDocumentBuilderFactory();
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final EntityResolver EMPTY_ENTITY_RESOLVER = (publicId, systemId) -> new InputSource(new StringReader(""));
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(XmlToRecordParser::newDocumentBuilder);
+    private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(() -> {
+        synchronized (XPATH_FACTORY) {
+            return XPATH_FACTORY.newXPath();
+        }
+    });
+
     @Getter
     final private XmlToRecordParserConfig config;
     @Getter
     final private JsonProvider json;
 
+    // compiled once here, so an invalid XPath fails when the parser is created
+    final private XmlNamespaceCache configuredNamespaces;
+    final private CompiledXPaths preserveNestedTextXPaths;
+    final private CompiledXPaths forceSingleValueXPaths;
+    final private CompiledXPaths forceElevateTextXPaths;
+    final private MaterializedSubtrees materializedSubtrees;
+
     public XmlToRecordParser(XmlToRecordParserConfig config) {
         this.config = config;
         this.json = config.getJsonProvider();
+        this.configuredNamespaces = new XmlNamespaceCache(config.getNamespaces());
+        this.preserveNestedTextXPaths = CompiledXPaths.compile(config.getPreserveNestedTextElements_ByXPath(), configuredNamespaces);
+        this.forceSingleValueXPaths = CompiledXPaths.compile(config.getForceSingleValueNodes_ByXPath(), configuredNamespaces);
+        this.forceElevateTextXPaths = CompiledXPaths.compile(config.getForceElevateTextNode_ByXPath(), configuredNamespaces);
+        this.materializedSubtrees = MaterializedSubtrees.of(config.getMaterializedPaths());
     }
 
     public XmlToRecordParser() {
-        this.config = XmlToRecordParserConfig.DEFAULTS;
-        this.json = config.getJsonProvider();
+        this(XmlToRecordParserConfig.DEFAULTS);
     }
 
     @SneakyThrows
     public Result parse(InputStream input) {
+        ParseEvent event = ParseEvents.begin(ParseEvent.DOM);
+        CountingInputStream counted = event == null ? null : new CountingInputStream(input);
+        DocumentBuilder builder = DOCUMENT_BUILDER.get();
+        Document xmlDocument;
+        try {
+            xmlDocument = builder.parse(counted == null ? input : counted);
+        } finally {
+            builder.reset();
+            builder.setEntityResolver(EMPTY_ENTITY_RESOLVER);
+        }
+        int elements = cleanEmptyTextNodesCounting(xmlDocument);
+
+        XPath xPath = XPATH.get();
+        Rules rules;
+        try {
+            // the root element is only looked at for prefixes that are not configured
+            XmlNamespaceCache namespaces = configuredNamespaces.forDocument(xmlDocument);
+            xPath.setNamespaceContext(namespaces);
+            rules = Rules.of(preserveNestedTextXPaths.select(xmlDocument, xPath, namespaces),
+                    forceSingleValueXPaths.select(xmlDocument, xPath, namespaces),
+                    forceElevateTextXPaths.select(xmlDocument, xPath, namespaces));
+        } finally {
+            xPath.reset();
+        }
+
+        Result result = buildRootField(xmlDocument, rules);
+        if (event != null) {
+            ParseEvents.commit(event, result.getName(), counted.getCount(), () -> elements);
+        }
+        return result;
+    }
+
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         factory.setCoalescing(true);
         factory.setIgnoringComments(true);
         factory.setNamespaceAware(true);
         factory.setValidating(false);
+        return factory;
+    }
 
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        builder.setEntityResolver((publicId, systemId) -> new InputSource(new StringReader("")));
-
-        Document xmlDocument = builder.parse(input);
-        cleanEmptyTextNodes(xmlDocument);
-
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setNamespaceContext(new XmlNamespaceCache(xmlDocument, true));
-
-        Set<Node> preserveNestedTextInNodes = xpathToNodes(config.getPreserveNestedTextElements_ByXPath(), xPath, xmlDocument);
-        Set<Node> forceSingleValueNodes = xpathToNodes(config.getForceSingleValueNodes_ByXPath(), xPath, xmlDocument);
-        Set<Node> forceElevateTextNodes = xpathToNodes(config.getForceElevateTextNode_ByXPath(), xPath, xmlDocument);
-
-        return buildRootField(xmlDocument, preserveNestedTextInNodes, forceSingleValueNodes, forceElevateTextNodes);
+    @SneakyThrows
+    private static DocumentBuilder newDocumentBuilder() {
+        DocumentBuilder builder;
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        }
+        builder.setEntityResolver(EMPTY_ENTITY_RESOLVER);
+        return builder;
     }
 
-    private Result buildRootField(Document xmlDocument,
-                                Set<Node> preserveNestedTextInNodes,
-                                Set<Node> forceSingleValueNodes,
-                                Set<Node> forceElevateTextNodes) {
+    private Result buildRootField(Document xmlDocument, Rules rules) {
 
         Node firstChild = XmlUtils.asList(xmlDocument.getChildNodes()).stream()
                 .filter(node -> node instanceof Element)
                 .findFirst()
                 .orElseThrow(NoSuchElementException::new);
-        return buildFieldsOf(firstChild, preserveNestedTextInNodes, forceSingleValueNodes, forceElevateTextNodes);
+        // the root is always built, even if nothing below it is
+        MaterializedSubtrees materialize = materializedSubtrees.child(firstChild.getLocalName());
+        return buildFieldsOf(firstChild, rules, rules.enter(rules.start(), firstChild),
+                materialize != null ? materialize : MaterializedSubtrees.NONE);
     }
 
-    private Result buildFieldsOf(Node xmlNode,
-                                 Set<Node> preserveNestedTextInNodes,
-                                 Set<Node> forceSingleValueNodes,
-                                 Set<Node> forceElevateTextNodes) {
+    // with materialize null, the child elements are not built but kept in their groups to be written as JSON later
+    private Result buildFieldsOf(Node xmlNode, Rules rules, RuleStates states, MaterializedSubtrees materialize) {
 
         if (isElementNode(xmlNode)) {
             Object jsonNode = json.createMap();
             String nodeName = xmlNode.getLocalName();
             NamedNodeMap attributes = xmlNode.getAttributes();
             // apply prefixes to attributes
-            IntStream.range(0, attributes.getLength())
-                    .mapToObj(attributes::item)
-                    .forEach(it -> {
-                        String prefix = config.getAttributePrefixesToKeep().contains(it.getPrefix()) ? it.getPrefix() + ":" : "";
-                        json.setProperty(jsonNode, config.getAttributeNodePrefix() + prefix + it.getLocalName(), it.getNodeValue());
-                    });
-
-            if (preserveNestedTextInNodes.contains(xmlNode)) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node it = attributes.item(i);
+                String prefix = config.getAttributePrefixesToKeep().contains(it.getPrefix()) ? it.getPrefix() + ":" : "";
+                json.setProperty(jsonNode, config.getAttributeNodePrefix() + prefix + it.getLocalName(), it.getNodeValue());
+            }
+
+            if (rules.getPreserveNestedText().contains(xmlNode, states.getPreserveNestedText())) {
                 // this specific text node is configured to always contain nested elements, so render them into a string
                 json.setProperty(jsonNode, config.getTextNodeName(), childrenAsXmlString(xmlNode));
                 return Result.of(jsonNode, nodeName);
@@ -100,15 +156,31 @@ public class XmlToRecordParser {
                 //    - text only
                 //    - xml tags only
                 //    - mixed text with xml tags in it
-                boolean nodeHasAnyText = getChildStream(xmlNode)
-                        .anyMatch(node -> node instanceof Text);
-                boolean nodeHasNonBlankText = getChildStream(xmlNode)
-                        .filter(node -> node instanceof Text)
-                        .map(node -> (Text) node)
-                        .anyMatch(node -> !node.getData().trim().isEmpty());
-                boolean nodeHasElements = getChildStream(xmlNode)
-                        .filter(node -> node instanceof Element)
-                        .anyMatch(XmlUtils::isElementNode);
+                // classified in one pass over the children
+                boolean nodeHasAnyText = false;
+                boolean nodeHasNonBlankText = false;
+                int elementCount = 0;
+                String combinedText = null;
+                StringBuilder moreText = null;
+                for (Node child = xmlNode.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child instanceof Text) {
+                        String data = ((Text) child).getData();
+                        nodeHasAnyText = true;
+                        nodeHasNonBlankText = nodeHasNonBlankText || !isBlank(data);
+                        // the text is only used if there are no elements
+                        if (elementCount == 0) {
+                            if (combinedText == null) {
+                                combinedText = data;
+                            } else {
+                                moreText = moreText == null ? new StringBuilder(combinedText) : moreText;
+                                moreText.append(data);
+                            }
+                        }
+                    } else if (isElementNode(child)) {
+                        elementCount++;
+                    }
+                }
+                boolean nodeHasElements = elementCount > 0;
 
                 if (nodeHasNonBlankText && nodeHasElements) {
                     // This element has: mixed text with xml tags in it
@@ -121,73 +193,46 @@ public class XmlToRecordParser {
                     }
                 } else if (nodeHasNonBlankText) {
                     // text only
-                    String combinedText = getChildStream(xmlNode)
-                            .filter(node -> node instanceof Text)
-                            .map(node -> (Text) node)
-                            .map(Text::getData)
-                            .collect(Collectors.joining());
-                    json.setProperty(jsonNode, config.getTextNodeName(), combinedText);
+                    json.setProperty(jsonNode, config.getTextNodeName(), moreText != null ? moreText.toString() : combinedText);
                     return Result.of(jsonNode, nodeName);
                 } else if (nodeHasElements) {
                     // This element has:  xml tags only  (and maybe some blank text that is ignored)
 
-                    // for elements only, first group the elements by name and make each
-                    // group an array even if only with 1 item in it
-                    Stream<Node> elementsOnly = getChildStream(xmlNode).filter(node -> node instanceof Element);
-                    Stream<Triple<String, Object, Node>> subElementsAsFields = elementsOnly.map(subXmlNode -> {
-                        Result subField = buildFieldsOf(subXmlNode, preserveNestedTextInNodes, forceSingleValueNodes, forceElevateTextNodes);
-                        if (subField != null) {
-                            String subNodeName = subField.getName();
-                            Object subJsonNode = subField.getJsonNode();
-
-                            if (forceElevateTextNodes.contains(subXmlNode)) {
-                                // elevate the text node into the parent object, if possible.  If conflicting structure, fail the process
-                                if (json.isMap(jsonNode)) {
-                                    Collection<String> propertyKeys = json.getPropertyKeys(subJsonNode);
-                                    if (json.isMap(subJsonNode) &&
-                                            config.getTextNodeName().equals(getSingleElementOrNull(propertyKeys))) {
-                                        return Triple.of(subNodeName, json.getMapValue(subJsonNode, config.getTextNodeName()), subXmlNode);
-                                    } else {
-                                        throw new IllegalStateException("Expected only a #text node in " + getSimpleNodePath(subXmlNode));
-                                    }
-                                } else {
-                                    throw new IllegalStateException("Expected parent to be map object to elevate text node into from " + getSimpleNodePath(subXmlNode));
-                                }
-                            } else {
-                                return Triple.of(subNodeName, subJsonNode, subXmlNode);
+                    // for elements only, group the elements by name in the order they first appear, each group
+                    // becomes an array even if only with 1 item in it
+                    Map<String, FieldGroup> fields = new LinkedHashMap<>(elementCount * 4 / 3 + 1);
+                    for (Node subXmlNode = xmlNode.getFirstChild(); subXmlNode != null; subXmlNode = subXmlNode.getNextSibling()) {
+                        if (!isElementNode(subXmlNode)) {
+                            continue;
+                        }
+                        RuleStates subStates = rules.enter(states, subXmlNode);
+                        MaterializedSubtrees subMaterialize = materialize != null ? materialize.child(subXmlNode.getLocalName()) : null;
+                        if (subMaterialize == null) {
+                            // not read or written by any transform, so it is only written as JSON once its group is
+                            // complete.  An element that would not be a field is left out now, so the group still
+                            // takes its place and forced rules from the first element that is one
+                            if (!isEmptyField(subXmlNode, rules, subStates)) {
+                                Forced forced = forcedOf(subXmlNode, rules, subStates);
+                                fields.computeIfAbsent(subXmlNode.getLocalName(), it -> new FieldGroup(forced, true)).add(subXmlNode, subStates);
                             }
-                        } else {
-                            return null;
+                            continue;
+                        }
+                        Result subField = buildFieldsOf(subXmlNode, rules, subStates, subMaterialize);
+                        if (subField == null) {
+                            continue;
                         }
-                    }).filter(Objects::nonNull);
-
-                    // subElements become arrays, we group all of the same elements together by the XML node name
-                    Map<String, List<Triple<String, Object, Node>>> grouped = subElementsAsFields.collect(groupingBy(Triple::getFirst));
-                    Map<String, Object> subElements = grouped.entrySet().stream()
-                            .collect(Collectors.toMap(Map.Entry::getKey, e -> {
-                                Node relatedXmlNode = e.getValue().get(0).getThird(); // we just need one xml node to check if forced to single value
-                                boolean forceToSingleValue = forceSingleValueNodes.contains(relatedXmlNode) ||
-                                        (config.isForceElevateTextNodesAreSingleValued() && forceElevateTextNodes.contains(relatedXmlNode));
-                                List<Object> innerList = e.getValue().stream().map(Triple::getSecond).collect(toList());
-                                Object firstElement = innerList.get(0);
-                                boolean isOnlyValueText = innerList.size() == 1 &&
-                                        json.isMap(firstElement) &&
-                                        config.getTextNodeName().equals(getSingleElementOrNull(json.getPropertyKeys(firstElement)));
-
-                                Object subField;
-
-                                if (forceToSingleValue || isOnlyValueText) {
-                                    subField = innerList.get(0);
-                                } else {
-                                    Object array = json.createArray();
-                                    IntStream.range(0, innerList.size())
-                                            .forEach(idx -> json.setArrayIndex(array, idx, innerList.get(idx)));
-                                    subField = array;
-                                }
-                                return subField;
-                            }));
-
-                    subElements.forEach((key, value) -> json.setProperty(jsonNode, key, value));
+                        Forced forced = forcedOf(subXmlNode, rules, subStates);
+                        Object subJsonNode = forced.isElevateText() ? elevateText(subField.getJsonNode(), subXmlNode) : subField.getJsonNode();
+                        // the first element of a group decides if it is forced to a single value
+                        fields.computeIfAbsent(subField.getName(), it -> new FieldGroup(forced, false)).add(subJsonNode, null);
+                    }
+
+                    if (materialize == null) {
+                        // the groups themselves are the values, they are written by writeValue
+                        fields.forEach((key, group) -> json.setProperty(jsonNode, key, group));
+                    } else {
+                        fields.forEach((key, group) -> json.setProperty(jsonNode, key, fieldValue(group, rules)));
+                    }
                     return Result.of(jsonNode, nodeName);
                 } else if (nodeHasAnyText) {
                     // This element has: text only (probably all blank, but we have to render it)
@@ -206,6 +251,116 @@ public class XmlToRecordParser {
         }
     }
 
+    private Forced forcedOf(Node xmlNode, Rules rules, RuleStates states) {
+        return Forced.of(rules.getForceSingleValue().contains(xmlNode, states.getForceSingleValue()),
+                rules.getForceElevateText().contains(xmlNode, states.getForceElevateText()));
+    }
+
+    // elevate the text node into the parent object, if possible.  If conflicting structure, fail the process
+    private Object elevateText(Object jsonNode, Node xmlNode) {
+        if (json.isMap(jsonNode) && config.getTextNodeName().equals(getSingleElementOrNull(json.getPropertyKeys(jsonNode)))) {
+            return json.getMapValue(jsonNode, config.getTextNodeName());
+        } else {
+            throw new IllegalStateException("Expected only a #text node in " + getSimpleNodePath(xmlNode));
+        }
+    }
+
+    // the same test as buildFieldsOf returning null, without looking at more than the direct children.  Attributes do
+    // not count, an element with only attributes is left out like any other element without children
+    private static boolean isEmptyField(Node xmlNode, Rules rules, RuleStates states) {
+        if (rules.getPreserveNestedText().contains(xmlNode, states.getPreserveNestedText())) {
+            return false;
+        }
+        for (Node child = xmlNode.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Text || isElementNode(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a group of same named elements becomes an array, unless forced to a single value or a lone text node
+    private boolean isSingleValue(FieldGroup group, Object firstElement) {
+        boolean forceToSingleValue = group.forced.isSingleValue() ||
+                (config.isForceElevateTextNodesAreSingleValued() && group.forced.isElevateText());
+        boolean isOnlyValueText = group.size == 1 &&
+                json.isMap(firstElement) &&
+                config.getTextNodeName().equals(getSingleElementOrNull(json.getPropertyKeys(firstElement)));
+        return forceToSingleValue || isOnlyValueText;
+    }
+
+    private Object fieldValue(FieldGroup group, Rules rules) {
+        if (group.deferred) {
+            return rawValue(group, rules);
+        }
+        Object firstElement = group.values[0];
+        if (isSingleValue(group, firstElement)) {
+            return firstElement;
+        } else {
+            Object array = json.createArray();
+            for (int idx = 0; idx < group.size; idx++) {
+                json.setArrayIndex(array, idx, group.values[idx]);
+            }
+            return array;
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    private RawValue rawValue(FieldGroup group, Rules rules) {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            writeGroup(generator, group, rules);
+        }
+        return new RawValue(out.toString());
+    }
+
+    // each element of a deferred group is built only one level deep, with its own child groups deferred again, so no
+    // more than the elements being written are held at once
+    private void writeGroup(JsonGenerator generator, FieldGroup group, Rules rules) throws IOException {
+        Object[] values = new Object[group.size];
+        for (int idx = 0; idx < group.size; idx++) {
+            Node xmlNode = (Node) group.values[idx];
+            RuleStates states = group.states[idx];
+            Object jsonNode = buildFieldsOf(xmlNode, rules, states, null).getJsonNode();
+            values[idx] = forcedOf(xmlNode, rules, states).isElevateText() ? elevateText(jsonNode, xmlNode) : jsonNode;
+        }
+        if (isSingleValue(group, values[0])) {
+            writeValue(generator, values[0], rules);
+        } else {
+            generator.writeStartArray();
+            for (Object value : values) {
+                writeValue(generator, value, rules);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeValue(JsonGenerator generator, Object value, Rules rules) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof FieldGroup) {
+            writeGroup(generator, (FieldGroup) value, rules);
+        } else if (json.isMap(value)) {
+            generator.writeStartObject();
+            for (String key : json.getPropertyKeys(value)) {
+                generator.writeFieldName(key);
+                writeValue(generator, json.getMapValue(value, key), rules);
+            }
+            generator.writeEndObject();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+    private static boolean isBlank(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static <T> T getSingleElementOrNull(Collection<T> col) {
         if (col.size() != 1) {
             return null;
@@ -220,10 +375,65 @@ public class XmlToRecordParser {
         String name;
     }
 
+    /**
+     * The force/preserve rules of one document, each element is entered with the state of its parent as the tree is
+     * walked down
+     */
+    @Value(staticConstructor = "of")
+    private static class Rules {
+        Selection preserveNestedText;
+        Selection forceSingleValue;
+        Selection forceElevateText;
+
+        RuleStates start() {
+            return RuleStates.of(preserveNestedText.start(), forceSingleValue.start(), forceElevateText.start());
+        }
+
+        RuleStates enter(RuleStates parent, Node element) {
+            return RuleStates.of(preserveNestedText.enter(parent.getPreserveNestedText(), element),
+                    forceSingleValue.enter(parent.getForceSingleValue(), element),
+                    forceElevateText.enter(parent.getForceElevateText(), element));
+        }
+    }
+
+    @Value(staticConstructor = "of")
+    private static class RuleStates {
+        long[] preserveNestedText;
+        long[] forceSingleValue;
+        long[] forceElevateText;
+    }
+
     @Value(staticConstructor = "of")
-    private static class Triple<A, B, C> {
-        A first;
-        B second;
-        C third;
+    private static class Forced {
+        boolean singleValue;
+        boolean elevateText;
+    }
+
+    // the built values of a group, or when deferred its elements and their rule states
+    private static final class FieldGroup {
+        private final Forced forced;
+        private final boolean deferred;
+        private Object[] values = new Object[2];
+        private RuleStates[] states;
+        private int size = 0;
+
+        private FieldGroup(Forced forced, boolean deferred) {
+            this.forced = forced;
+            this.deferred = deferred;
+            this.states = deferred ? new RuleStates[2] : null;
+        }
+
+        private void add(Object value, RuleStates valueStates) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                if (deferred) {
+                    states = Arrays.copyOf(states, size * 2);
+                }
+            }
+            if (deferred) {
+                states[size] = valueStates;
+            }
+            values[size++] = value;
+        }
     }
 }
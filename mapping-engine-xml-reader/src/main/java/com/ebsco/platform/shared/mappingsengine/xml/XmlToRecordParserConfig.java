@@ -6,10 +6,12 @@ import lombok.Builder;
 import lombok.Getter;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.toSet;
 
 @Builder
@@ -38,4 +40,13 @@ public class XmlToRecordParserConfig {
     String attributeNodePrefix = "@";
     @Builder.Default
     Set<String> attributePrefixesToKeep = Stream.of("xmlns", "xml").collect(toSet());
+    // namespace uri by prefix for the prefixes used in the XPaths above, so they are not looked up in each document
+    @Builder.Default
+    Map<String, String> namespaces = emptyMap();
+    // element path of the records of a file holding many, each converted on its own by StreamingXmlToRecordParser.parseRecords
+    String splitRecords_ByXPath;
+    // JSON property names, starting with the root element, of the subtrees transforms read or write (see
+    // MaterializedPaths in the engine), only those are built as JsonProvider objects by XmlToRecordParser, every other
+    // subtree is written as a raw JSON value while parsing.  Null builds everything
+    List<List<String>> materializedPaths;
 }
@@ -3,21 +3,17 @@ package com.ebsco.platform.shared.mappingsengine.xml;
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.XMLConstants;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import java.io.StringWriter;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
 import java.util.Set;
@@ -30,6 +26,8 @@ import static java.util.stream.Collectors.toSet;
 
 @UtilityClass
 public class XmlUtils {
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+    private static final ThreadLocal<StringBuilder> XML_STRING_BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
 
     public String getSimpleNodePath(Node node) {
         StringJoiner joiner = new StringJoiner("/");
@@ -72,32 +70,218 @@ public class XmlUtils {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * The children of the node as an XML string, each child written as a standalone fragment with the namespace
+     * declarations it needs (as a Transformer writes a DOM node), trimmed.  Written directly into a per thread buffer,
+     * no Transformer is involved.
+     */
     public String childrenAsXmlString(Node node) {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        try {
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            transformer.setOutputProperty(OutputKeys.INDENT, "no");
-            StringWriter stringWriter = new StringWriter();
-            List<Node> children = asList(node.getChildNodes());
-            children.forEach(child -> {
-                try {
-                    transformer.transform(new DOMSource(child), new StreamResult(stringWriter));
-                } catch (TransformerException e) {
-                    throw new RuntimeException(e);
+        StringBuilder out = XML_STRING_BUFFER.get();
+        out.setLength(0);
+        NamespaceScope scope = new NamespaceScope();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            writeNode(child, out, scope);
+        }
+        String xml = out.toString().trim();
+        if (out.capacity() > MAX_RETAINED_BUFFER) {
+            XML_STRING_BUFFER.remove();
+        }
+        return xml;
+    }
+
+    private void writeNode(Node node, StringBuilder out, NamespaceScope scope) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                writeElement(node, out, scope);
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                escapeText(out, node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                out.append("<?").append(node.getNodeName());
+                String data = node.getNodeValue();
+                if (data != null && !data.isEmpty()) {
+                    out.append(' ').append(data);
                 }
-            });
-            return stringWriter.toString().trim();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+                out.append("?>");
+                break;
+            case Node.COMMENT_NODE:
+                out.append("<!--").append(node.getNodeValue()).append("-->");
+                break;
+            case Node.ENTITY_REFERENCE_NODE:
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    writeNode(child, out, scope);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // namespace declarations first, then each prefixed attribute's namespace before it, then the element's own
+    // namespace, each only if not already in scope, as the JDK transformer writes them
+    private void writeElement(Node element, StringBuilder out, NamespaceScope scope) {
+        int mark = scope.size;
+        String qualifiedName = element.getNodeName();
+        out.append('<').append(qualifiedName);
+
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                String prefix = XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getNodeName()) ? "" : attribute.getLocalName();
+                scope.declare(prefix, attribute.getNodeValue(), out);
+            }
+        }
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            String namespaceUri = attribute.getNamespaceURI();
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceUri)) {
+                continue;
+            }
+            if (namespaceUri != null && attribute.getPrefix() != null) {
+                scope.declare(attribute.getPrefix(), namespaceUri, out);
+            }
+            out.append(' ').append(attribute.getNodeName()).append("=\"");
+            escapeAttribute(out, attribute.getNodeValue());
+            out.append('"');
+        }
+        String prefix = element.getPrefix();
+        String namespaceUri = element.getNamespaceURI();
+        scope.declare(prefix == null ? "" : prefix, namespaceUri == null ? "" : namespaceUri, out);
+
+        if (element.getFirstChild() == null) {
+            out.append("/>");
+        } else {
+            out.append('>');
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                writeNode(child, out, scope);
+            }
+            out.append("</").append(qualifiedName).append('>');
+        }
+        scope.size = mark;
+    }
+
+    void escapeText(StringBuilder out, CharSequence chars) {
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                default:
+                    i = appendChar(out, chars, i, c);
+            }
+        }
+    }
+
+    void escapeAttribute(StringBuilder out, CharSequence chars) {
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\t':
+                    out.append("&#9;");
+                    break;
+                case '\n':
+                    out.append("&#10;");
+                    break;
+                case '\r':
+                    out.append("&#13;");
+                    break;
+                default:
+                    i = appendChar(out, chars, i, c);
+            }
+        }
+    }
+
+    // control characters 0x7F-0x9F and characters outside the BMP are written as character references
+    private int appendChar(StringBuilder out, CharSequence chars, int index, char c) {
+        if (c >= 0x7F && c <= 0x9F) {
+            out.append("&#").append((int) c).append(';');
+        } else if (Character.isHighSurrogate(c) && index + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(index + 1))) {
+            out.append("&#").append(Character.toCodePoint(c, chars.charAt(index + 1))).append(';');
+            return index + 1;
+        } else {
+            out.append(c);
+        }
+        return index;
+    }
+
+    /**
+     * The namespaces declared so far in the fragment being written, a stack popped back when an element ends
+     */
+    private static final class NamespaceScope {
+        private String[] prefixes = new String[8];
+        private String[] uris = new String[8];
+        private int size = 0;
+
+        private void declare(String prefix, String uri, StringBuilder out) {
+            if (uri.equals(lookup(prefix))) {
+                return;
+            }
+            out.append(prefix.isEmpty() ? " xmlns" : " xmlns:").append(prefix).append("=\"");
+            escapeAttribute(out, uri);
+            out.append('"');
+            if (size == prefixes.length) {
+                prefixes = Arrays.copyOf(prefixes, size * 2);
+                uris = Arrays.copyOf(uris, size * 2);
+            }
+            prefixes[size] = prefix;
+            uris[size] = uri;
+            size++;
+        }
+
+        private String lookup(String prefix) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (prefixes[i].equals(prefix)) {
+                    return uris[i];
+                }
+            }
+            if (prefix.isEmpty()) {
+                return XMLConstants.NULL_NS_URI;
+            } else if (prefix.equals(XMLConstants.XML_NS_PREFIX)) {
+                return XMLConstants.XML_NS_URI;
+            }
+            return null;
         }
     }
 
     public void cleanEmptyTextNodes(Node node) {
+        cleanEmptyTextNodesCounting(node);
+    }
+
+    // the same walk, returning the number of elements walked (the node itself included), so the parser does not walk
+    // the document again to count them
+    int cleanEmptyTextNodesCounting(Node node) {
+        int elements = node.getNodeType() == Node.ELEMENT_NODE ? 1 : 0;
         NodeList children = node.getChildNodes();
         if (children.getLength() != 1 || children.item(0).getNodeType() != Node.TEXT_NODE) {
-            asList(children).forEach(XmlUtils::cleanEmptyTextNodes);
+            for (Node child : asList(children)) {
+                elements += cleanEmptyTextNodesCounting(child);
+            }
         }
+        return elements;
     }
 
     public Stream<Node> getChildStream(Node xmlNode) {
@@ -0,0 +1,88 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CompiledXPathsTest {
+    private static final String xml = "<root xmlns:m=\"urn:m\">\n" +
+            "  <a id=\"1\"><b>one</b><b kind=\"x\">two</b><c/></a>\n" +
+            "  <a id=\"2\"><b kind=\"y\">three</b><m:b>four</m:b></a>\n" +
+            "  <m:a><b>five</b><m:b kind=\"x\"><d>six</d></m:b></m:a>\n" +
+            "</root>";
+
+    @Test
+    // element paths checked during the walk select exactly the nodes the XPath engine selects
+    public void testElementPathsSelectTheSameNodesAsXPath() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        XmlNamespaceCache namespaces = new XmlNamespaceCache(document, true);
+        XPath xPath = XPathFactory.newInstance().newXPath();
+        xPath.setNamespaceContext(namespaces);
+        NodeList elements = document.getElementsByTagNameNS("*", "*");
+
+        for (String expression : asList("/root/a", "root/a/b", "//b", "//a[2]/b", "//a/b[2]", "//*[@kind]", "//b[@kind='x']",
+                "//m:b", "/root/m:a/m:b[*]", "//a[@id='1']//b", "/root//*[1]", "//a | //m:a", "//*[*]", "/root/*/b[1]",
+                "/root//b", "//a//d", "//m:a/*/d", "//m:a//*[@kind='x']", "/root/a[*]/b")) {
+            assertNotNull(expression, ElementPathPattern.tryParse(expression));
+            Set<Node> expected = XmlUtils.xpathToNodes(singletonList(expression), xPath, document);
+            CompiledXPaths.Selection selection = CompiledXPaths.compile(singletonList(expression)).select(document, xPath, namespaces);
+            Set<Node> selected = new HashSet<>();
+            walk(selection, document.getDocumentElement(), selection.start(), selected);
+            for (int i = 0; i < elements.getLength(); i++) {
+                Node element = elements.item(i);
+                assertEquals(expression + " on " + element.getNodeName() + " " + element.getTextContent(),
+                        expected.contains(element), selected.contains(element));
+            }
+        }
+    }
+
+    // the state machine is advanced top down, each element from the state of its parent
+    private void walk(CompiledXPaths.Selection selection, Node element, long[] parentState, Set<Node> selected) {
+        long[] state = selection.enter(parentState, element);
+        if (selection.contains(element, state)) {
+            selected.add(element);
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                walk(selection, child, state, selected);
+            }
+        }
+    }
+
+    @Test
+    // anything else still works through the XPath engine
+    public void testOtherExpressionsUseXPath() throws Exception {
+        assertNull(ElementPathPattern.tryParse("//b[text()='two']"));
+        XmlToRecordParser parser = new XmlToRecordParser(XmlToRecordParserConfig.builder()
+                .forceSingleValueNodes_ByXPath(asList("//b[text()='two']/..", "//m:b[contains(@kind, 'x')]/.."))
+                .build());
+        Object root = parser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getJsonNode();
+        assertEquals("{\"@id\":\"1\",\"b\":[{\"#text\":\"one\"},{\"@kind\":\"x\",\"#text\":\"two\"}]}",
+                parser.getJson().toJson(parser.getJson().getMapValue(root, "a")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    // an invalid expression fails when the parser is created, not on the first document
+    public void testInvalidXPathFailsFast() {
+        new XmlToRecordParser(XmlToRecordParserConfig.builder()
+                .preserveNestedTextElements_ByXPath(singletonList("//a[@id='1'"))
+                .build());
+    }
+}
@@ -0,0 +1,262 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingXmlToRecordParserTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String thingXML = "<thing xmlns:h=\"http://www.w3.org/TR/html4/\">\n" +
+            "  <identifier type=\"doi\">someIdent</identifier>\n" +
+            "  <container wassup=\"true\">\n" +
+            "    <insideObject>textInside</insideObject>\n" +
+            "    <otherObject>otherText</otherObject>\n" +
+            "  </container>\n" +
+            "  <listy type=\"multi\">\n" +
+            "    <item type=\"animal\">monkey</item>\n" +
+            "    <item type=\"animal\">dog</item>\n" +
+            "    <item type=\"plant\">cat</item>\n" +
+            "  </listy>\n" +
+            "  <mixed1>Something<p>with</p>other</mixed1>\n" +
+            "  <mixed2><p>Something <bold>is</bold> nested</p></mixed2>\n" +
+            "  <mixed3>\n" +
+            "    <p>\n" +
+            "       this was what we had<br/>\n" +
+            "       and then they <emphasis>said</emphasis> no!\n" +
+            "    </p>\n" +
+            "  </mixed3>\n" +
+            "</thing>";
+
+    private static final String namespacedXML = "<?xml version=\"1.0\"?>\n" +
+            "<article xmlns:xlink=\"http://www.w3.org/1999/xlink\" xmlns:mml=\"http://www.w3.org/1998/Math/MathML\" zeta=\"z\" alpha=\"a\" xml:lang=\"en\">\n" +
+            "  <!-- comments are dropped -->\n" +
+            "  <title>A &amp; B <![CDATA[<raw> & ]]> done</title>\n" +
+            "  <blank>   </blank>\n" +
+            "  <empty attr=\"1\"/>\n" +
+            "  <onlyPi><?keep this?></onlyPi>\n" +
+            "  <p>See <ext-link xlink:href=\"http://x.org/?a=1&amp;b=&quot;2&quot;\" xlink:type=\"simple\">xé😀</ext-link> and" +
+            " <mml:math><mml:mi>x</mml:mi><inner xmlns=\"urn:default\"><deeper/><undeclared xmlns=\"\"/></inner></mml:math>\u0085.</p>\n" +
+            "  <list><li n=\"1\">one</li><li n=\"2\"><b>two</b></li><li n=\"3\">three</li></list>\n" +
+            "  <mml:formula><mml:mi>y</mml:mi></mml:formula>\n" +
+            "</article>";
+
+    private void assertSameResult(final XmlToRecordParserConfig config, final String xml) throws Exception {
+        String expected;
+        try {
+            XmlToRecordParser.Result result = new XmlToRecordParser(config).parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            expected = OBJECT_MAPPER.writeValueAsString(result);
+        } catch (IllegalStateException ex) {
+            expected = ex.getMessage();
+        }
+
+        String actual;
+        try {
+            XmlToRecordParser.Result result = new StreamingXmlToRecordParser(config).parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            actual = OBJECT_MAPPER.writeValueAsString(result);
+        } catch (IllegalStateException ex) {
+            actual = ex.getMessage();
+        }
+        assertEquals(expected, actual);
+    }
+
+    private XmlToRecordParserConfig.XmlToRecordParserConfigBuilder config(final List<String> preserve) {
+        return XmlToRecordParserConfig.builder().preserveNestedTextElements_ByXPath(preserve);
+    }
+
+    @Test
+    // every option gives the same JSON, with the fields in the same order, as the DOM parser
+    public void testSameResultAsDomParser() throws Exception {
+        List<XmlToRecordParserConfig> configs = asList(
+                config(asList("//thing/mixed1", "//thing/mixed2", "//thing/mixed3", "//p", "/article/list/li[2]")).build(),
+                config(emptyList()).preserveNestedTextElements_AutoDetect(true).build(),
+                config(emptyList()).preserveNestedTextElements_AutoDetect(true).textNodeName("value").attributeNodePrefix("")
+                        .attributePrefixesToKeep(singleton("xlink")).build(),
+                config(emptyList()).preserveNestedTextElements_AutoDetect(true)
+                        .forceElevateTextNode_ByXPath(asList("//thing/container[*]/insideObject", "//thing/container[*]/otherObject", "//li"))
+                        .forceSingleValueNodes_ByXPath(asList("//thing/container[*]/otherObject", "/article/title", "//*[@type='plant']"))
+                        .build(),
+                config(emptyList()).preserveNestedTextElements_AutoDetect(true)
+                        .forceElevateTextNode_ByXPath(singletonList("//thing/container[*]/insideObject | //item[2]"))
+                        .forceElevateTextNodesAreSingleValued(true)
+                        .build(),
+                config(asList("/article/*[2]", "//listy[*]")).preserveNestedTextElements_AutoDetect(true).build(),
+                // mixed content that is not configured fails, in both
+                config(singletonList("//thing/mixed1")).build(),
+                // elevating an element that is not only text fails, in both
+                config(singletonList("//p")).preserveNestedTextElements_AutoDetect(true).forceElevateTextNode_ByXPath(singletonList("//listy")).build()
+        );
+        for (XmlToRecordParserConfig config : configs) {
+            assertSameResult(config, thingXML);
+            assertSameResult(config, namespacedXML);
+        }
+        // prefixes in XPaths are the ones declared on the root element
+        assertSameResult(config(asList("//mml:math", "/article/mml:formula")).build(), namespacedXML);
+    }
+
+    @Test
+    // configured namespaces are used for prefixes first, the root element declarations only for the others
+    public void testConfiguredNamespaces() throws Exception {
+        String innerNamespaceXML = "<thing xmlns:h=\"http://www.w3.org/TR/html4/\"><h:b>bold</h:b><formula>" +
+                "<m:math xmlns:m=\"http://www.w3.org/1998/Math/MathML\"><m:mi>x</m:mi> + 1</m:math></formula></thing>";
+        XmlToRecordParserConfig config = config(asList("//mml:math", "//h:b")).preserveNestedTextElements_AutoDetect(true)
+                .forceSingleValueNodes_ByXPath(singletonList("/thing/formula/mml:math"))
+                .namespaces(singletonMap("mml", "http://www.w3.org/1998/Math/MathML"))
+                .build();
+        assertSameResult(config, innerNamespaceXML);
+    }
+
+    @Test
+    // each record of a split file is converted as the DOM parser converts it as a document of its own
+    public void testSplitRecords() throws Exception {
+        List<String> records = asList(
+                "<record id=\"1\"><title>One</title><p>plain</p></record>",
+                "<record id=\"2\" xmlns:m=\"urn:m\"><title>Two</title><p>mixed <b>bold</b> <m:x>x</m:x></p></record>",
+                "<record id=\"3\"><title>Three</title><title>again</title></record>");
+        String xml = "<collection><header><title>not a record</title></header>\n<records>\n" +
+                String.join("\n", records) + "\n<record/></records><record><title>not matched</title></record></collection>";
+        XmlToRecordParserConfig config = config(singletonList("//p")).forceSingleValueNodes_ByXPath(singletonList("/record/title"))
+                .splitRecords_ByXPath("/collection/records/record")
+                .build();
+
+        List<String> expected = new ArrayList<>();
+        for (String record : records) {
+            XmlToRecordParser.Result result = new XmlToRecordParser(config).parse(new ByteArrayInputStream(record.getBytes(StandardCharsets.UTF_8)));
+            expected.add(OBJECT_MAPPER.writeValueAsString(result));
+        }
+        List<String> actual = new ArrayList<>();
+        try (Stream<XmlToRecordParser.Result> parsed = new StreamingXmlToRecordParser(config).parseRecords(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            for (XmlToRecordParser.Result result : (Iterable<XmlToRecordParser.Result>) parsed::iterator) {
+                actual.add(OBJECT_MAPPER.writeValueAsString(result));
+            }
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    // a record that fails does not stop the records after it
+    public void testSplitRecordFailureIsPerRecord() throws Exception {
+        String xml = "<records><record>one</record><record>mixed <b>content</b></record><record>three</record></records>";
+        XmlToRecordParserConfig config = config(emptyList()).splitRecords_ByXPath("//record").build();
+        try (Stream<XmlToRecordParser.Result> parsed = new StreamingXmlToRecordParser(config).parseRecords(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            Iterator<XmlToRecordParser.Result> records = parsed.iterator();
+            assertEquals("one", OBJECT_MAPPER.valueToTree(records.next().getJsonNode()).path("#text").asText());
+            try {
+                records.next();
+                fail("mixed content that is not configured should fail");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            assertEquals("three", OBJECT_MAPPER.valueToTree(records.next().getJsonNode()).path("#text").asText());
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    // an input that cannot be read any further throws once, then has no more records
+    public void testUnreadableInputEndsRecords() throws Exception {
+        String xml = "<records><record>one</record><record>two</rec";
+        XmlToRecordParserConfig config = config(emptyList()).splitRecords_ByXPath("//record").build();
+        try (Stream<XmlToRecordParser.Result> parsed = new StreamingXmlToRecordParser(config).parseRecords(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            Iterator<XmlToRecordParser.Result> records = parsed.iterator();
+            assertEquals("one", OBJECT_MAPPER.valueToTree(records.next().getJsonNode()).path("#text").asText());
+            try {
+                records.hasNext();
+                fail("a truncated input should fail");
+            } catch (Exception expected) {
+                assertTrue(expected instanceof XMLStreamException);
+            }
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    // a flight recording gets an event per document, or per record of a split file
+    public void testParseEvents() throws Exception {
+        Assume.assumeTrue(FlightRecorder.isAvailable());
+        byte[] xml = "<records><record><a>1</a></record><record><a>2</a><b>3</b></record></records>".getBytes(StandardCharsets.UTF_8);
+        XmlToRecordParserConfig split = XmlToRecordParserConfig.builder().splitRecords_ByXPath("//record").build();
+
+        List<RecordedEvent> events = recordParseEvents(() -> {
+            new XmlToRecordParser().parse(new ByteArrayInputStream(xml));
+            new StreamingXmlToRecordParser().parse(new ByteArrayInputStream(xml));
+            try (Stream<XmlToRecordParser.Result> parsed = new StreamingXmlToRecordParser(split).parseRecords(new ByteArrayInputStream(xml))) {
+                assertEquals(2, parsed.count());
+            }
+        });
+
+        assertEquals(4, events.size());
+        assertParseEvent(events.get(0), "dom", "records", xml.length, 6);
+        assertParseEvent(events.get(1), "streaming", "records", xml.length, 6);
+        // the first record also read the element around the records
+        assertParseEvent(events.get(2), "streaming", "record", -1, 3);
+        assertParseEvent(events.get(3), "streaming", "record", -1, 3);
+    }
+
+    private List<RecordedEvent> recordParseEvents(final Runnable parsing) throws Exception {
+        try (Recording recording = new Recording()) {
+            recording.enable("com.ebsco.mappingsengine.Parse").withoutThreshold();
+            recording.start();
+            parsing.run();
+            recording.stop();
+            Path file = Files.createTempFile("parse", ".jfr");
+            try {
+                recording.dump(file);
+                return RecordingFile.readAllEvents(file).stream()
+                        .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                        .collect(Collectors.toList());
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // the bytes of a split record depend on how far the reader buffers ahead, -1 to not check them
+    private void assertParseEvent(final RecordedEvent event, final String parser, final String root, final long bytes, final long elements) {
+        assertEquals(parser, event.getString("parser"));
+        assertEquals(root, event.getString("root"));
+        if (bytes >= 0) {
+            assertEquals(bytes, event.getLong("bytes"));
+        }
+        assertEquals(elements, event.getLong("elements"));
+    }
+
+    @Test
+    // an element with nothing but blank text or processing instructions is not a field
+    public void testEmptyRoot() throws Exception {
+        assertSameResult(XmlToRecordParserConfig.DEFAULTS, "<root><?pi?></root>");
+        assertSameResult(XmlToRecordParserConfig.DEFAULTS, "<root attr=\"1\"> \n </root>");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    // XPaths that are not element paths are rejected up front
+    public void testUnsupportedXPathFailsFast() {
+        new StreamingXmlToRecordParser(config(singletonList("//p[contains(text(), 'x')]")).build());
+    }
+}
@@ -0,0 +1,106 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyntheticDocumentsTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final XmlToRecordParserConfig AUTO_DETECT = XmlToRecordParserConfig.builder()
+            .preserveNestedTextElements_AutoDetect(true)
+            .build();
+
+    @Test
+    // the same config is the same document, another seed another one of the same shape
+    public void testSeedIsReproducible() {
+        SyntheticDocumentConfig config = SyntheticDocumentConfig.builder().seed(42).build();
+        assertArrayEquals(SyntheticDocuments.xml(config), SyntheticDocuments.xml(SyntheticDocumentConfig.builder().seed(42).build()));
+
+        byte[] other = SyntheticDocuments.xml(SyntheticDocumentConfig.builder().seed(43).build());
+        assertNotEquals(new String(SyntheticDocuments.xml(config), StandardCharsets.UTF_8), new String(other, StandardCharsets.UTF_8));
+        assertEquals(sections(SyntheticDocuments.json(config, AUTO_DETECT)), sections(SyntheticDocuments.json(
+                SyntheticDocumentConfig.builder().seed(43).build(), AUTO_DETECT)));
+    }
+
+    @Test
+    public void testShapeFollowsConfig() {
+        SyntheticDocumentConfig config = SyntheticDocumentConfig.builder().depth(3).fanOut(2).repeats(5).build();
+        JsonNode article = OBJECT_MAPPER.valueToTree(SyntheticDocuments.json(config, AUTO_DETECT)).path("article");
+
+        assertEquals(2 + 4 + 8, sections(SyntheticDocuments.json(config, AUTO_DETECT)));
+        JsonNode firstSection = article.path("body").get(0).path("sec").get(0);
+        assertEquals("s1", firstSection.path("@id").asText());
+        assertEquals(5, firstSection.path("p").size());
+        assertEquals("s1.2.1", firstSection.path("sec").get(1).path("sec").get(0).path("@id").asText());
+        assertEquals(5, article.path("front").get(0).path("article-meta").get(0).path("contrib-group").get(0).path("contrib").size());
+        assertEquals(5, article.path("back").get(0).path("ref-list").get(0).path("ref").size());
+    }
+
+    @Test
+    public void testMixedContentAndNamespaces() {
+        String mixed = new String(SyntheticDocuments.xml(SyntheticDocumentConfig.DEFAULTS), StandardCharsets.UTF_8);
+        assertTrue(mixed.contains("xmlns:xlink=\"" + SyntheticDocuments.XLINK_NS + "\""));
+        assertTrue(mixed.contains("xlink:href="));
+        assertTrue(mixed.contains("<mml:math>"));
+        assertTrue(mixed.contains("<italic>"));
+
+        String plain = new String(SyntheticDocuments.xml(SyntheticDocumentConfig.builder().mixedContent(false).namespaces(false).build()),
+                StandardCharsets.UTF_8);
+        assertFalse(plain.contains("xmlns"));
+        assertFalse(plain.contains("<italic>"));
+        // without mixed content it parses with the default config
+        SyntheticDocuments.json(SyntheticDocumentConfig.builder().mixedContent(false).build(), XmlToRecordParserConfig.DEFAULTS);
+    }
+
+    @Test
+    // both parsers read it the same way, and the records of a file of many split as documents of their own
+    public void testParsersAndSplitRecords() throws Exception {
+        SyntheticDocumentConfig config = SyntheticDocumentConfig.builder().seed(7).build();
+        byte[] xml = SyntheticDocuments.xml(config);
+        assertEquals(OBJECT_MAPPER.writeValueAsString(new XmlToRecordParser(AUTO_DETECT).parse(new ByteArrayInputStream(xml))),
+                OBJECT_MAPPER.writeValueAsString(new StreamingXmlToRecordParser(AUTO_DETECT).parse(new ByteArrayInputStream(xml))));
+
+        XmlToRecordParserConfig split = XmlToRecordParserConfig.builder()
+                .preserveNestedTextElements_AutoDetect(true)
+                .splitRecords_ByXPath("/article-set/article")
+                .build();
+        byte[] records = SyntheticDocuments.xml(SyntheticDocumentConfig.builder().seed(7).records(3).build());
+        List<String> dois = new ArrayList<>();
+        try (Stream<XmlToRecordParser.Result> parsed = new StreamingXmlToRecordParser(split).parseRecords(new ByteArrayInputStream(records))) {
+            parsed.forEach(record -> dois.add(OBJECT_MAPPER.valueToTree(record.getJsonNode())
+                    .path("front").get(0).path("article-meta").get(0).path("article-id").get(0).path("#text").asText()));
+        }
+        assertEquals(3, dois.size());
+        assertEquals("10.5555/synthetic.7.2", dois.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSectionsIsAnError() {
+        SyntheticDocuments.xml(SyntheticDocumentConfig.builder().depth(0).build());
+    }
+
+    private int sections(final Object document) {
+        return countSections(OBJECT_MAPPER.valueToTree(document).path("article").path("body").get(0).path("sec"));
+    }
+
+    private int countSections(final JsonNode sections) {
+        int count = 0;
+        for (JsonNode section : sections) {
+            count += 1 + countSections(section.path("sec"));
+        }
+        return count;
+    }
+}
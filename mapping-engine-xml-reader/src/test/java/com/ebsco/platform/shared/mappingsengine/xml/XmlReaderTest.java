@@ -2,12 +2,14 @@ package com.ebsco.platform.shared.mappingsengine.xml;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
 import lombok.val;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -15,8 +17,11 @@ import java.util.stream.StreamSupport;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class XmlReaderTest {
     private static final String textXML = "<thing xmlns:h=\"http://www.w3.org/TR/html4/\">\n" +
@@ -284,4 +289,95 @@ public class XmlReaderTest {
         assertEquals("textInside", container.path("insideObject").get(0).asText());
         assertEquals("otherText", container.path("otherObject").asText()); // this one is popped up a level
     }
+
+    @Test
+    // the per thread document builder is reset after a failed parse, the next document parses normally
+    public void parserIsReusableAfterMalformedDocument() throws Exception {
+        XmlToRecordParser parser = new XmlToRecordParser(XmlToRecordParserConfig.builder()
+                .preserveNestedTextElements_AutoDetect(true)
+                .build());
+        try {
+            parser.parse(new ByteArrayInputStream("<thing><unclosed></thing>".getBytes()));
+            fail("malformed XML should not parse");
+        } catch (Exception expected) {
+            // expected
+        }
+        JsonNode first = parseXmlToTree(parser);
+        JsonNode second = parseXmlToTree(parser);
+        assertEquals(first, second);
+        assertEquals("someIdent", second.path("thing").path("identifier").get(0).path("#text").asText());
+    }
+
+    @Test
+    // configured namespaces resolve XPath prefixes that the document does not declare on its root element
+    public void configuredNamespacesResolvePrefixesNotDeclaredOnRoot() throws Exception {
+        String xml = "<thing><formula><m:math xmlns:m=\"http://www.w3.org/1998/Math/MathML\"><m:mi>x</m:mi> + 1</m:math></formula></thing>";
+        XmlToRecordParser parser = new XmlToRecordParser(XmlToRecordParserConfig.builder()
+                .preserveNestedTextElements_ByXPath(singletonList("//mml:math[mml:mi]"))
+                .namespaces(singletonMap("mml", "http://www.w3.org/1998/Math/MathML"))
+                .build());
+        XmlToRecordParser.Result result = parser.parse(new ByteArrayInputStream(xml.getBytes()));
+        JsonNode tree = OBJECT_MAPPER.valueToTree(singletonMap(result.getName(), result.getJsonNode()));
+
+        JsonNode math = tree.path("thing").path("formula").get(0).path("math").get(0);
+        assertEquals("<m:mi xmlns:m=\"http://www.w3.org/1998/Math/MathML\">x</m:mi> + 1", math.path("#text").asText());
+    }
+
+    @Test
+    // subtrees no transform touches are written as raw JSON, which serializes the same as the built tree, while the
+    // materialized paths are still built as JsonProvider objects
+    public void rawJsonSubtreesSerializeAsBuiltTree() throws Exception {
+        String xml = "<thing a=\"1\"><empty/><x>1</x><empty/><y><z b=\"2\">deep</z><z/><z>again</z></y><x a=\"3\">2</x>" +
+                "<blank> </blank><e><v>one</v></e><e><v>two</v></e><m>mixed <b>text</b></m><a>collides</a></thing>";
+        List<XmlToRecordParserConfig.XmlToRecordParserConfigBuilder> configs = asList(
+                XmlToRecordParserConfig.builder().preserveNestedTextElements_AutoDetect(true),
+                XmlToRecordParserConfig.builder().preserveNestedTextElements_AutoDetect(true).attributeNodePrefix("")
+                        .forceElevateTextNode_ByXPath(singletonList("//v | //z[3]"))
+                        .forceSingleValueNodes_ByXPath(asList("/thing/y", "//x[2]")),
+                XmlToRecordParserConfig.builder().preserveNestedTextElements_ByXPath(asList("//m", "//empty[2]"))
+                        .forceElevateTextNode_ByXPath(singletonList("//v")).forceElevateTextNodesAreSingleValued(true));
+        List<List<List<String>>> materializedPaths = asList(
+                singletonList(singletonList("other")),
+                singletonList(asList("thing", "y")),
+                asList(asList("thing", "e", "v"), asList("thing", "x")));
+
+        for (XmlToRecordParserConfig.XmlToRecordParserConfigBuilder config : configs) {
+            XmlToRecordParser.Result built = new XmlToRecordParser(config.build()).parse(new ByteArrayInputStream(xml.getBytes()));
+            String expected = OBJECT_MAPPER.writeValueAsString(built);
+            for (List<List<String>> paths : materializedPaths) {
+                XmlToRecordParser.Result raw = new XmlToRecordParser(config.materializedPaths(paths).build())
+                        .parse(new ByteArrayInputStream(xml.getBytes()));
+                assertEquals(OBJECT_MAPPER.readTree(expected), OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsString(raw)));
+                assertEquals(expected, OBJECT_MAPPER.writeValueAsString(raw));
+            }
+            config.materializedPaths(null);
+        }
+
+        XmlToRecordParser.Result partial = new XmlToRecordParser(XmlToRecordParserConfig.builder().preserveNestedTextElements_AutoDetect(true)
+                .materializedPaths(singletonList(asList("thing", "y"))).build()).parse(new ByteArrayInputStream(xml.getBytes()));
+        Map<String, Object> root = (Map<String, Object>) partial.getJsonNode();
+        assertTrue(root.get("y") instanceof List);
+        assertTrue(((List<Object>) root.get("y")).get(0) instanceof Map);
+        assertTrue(root.get("x") instanceof RawValue);
+        assertEquals("1", root.get("@a"));
+    }
+
+    @Test
+    // an element with only attributes is left out of the built tree, so it must be left out of raw JSON too, also
+    // when it is the first of its group or sits in mixed content
+    public void rawJsonSubtreesSkipAttributeOnlyElements() throws Exception {
+        String xml = "<thing><meta><uri href=\"x.pdf\"/><uri href=\"y.pdf\">y</uri><ref rid=\"r1\"/></meta>" +
+                "<p>see <xref rid=\"r1\"/> here</p><q><xref rid=\"r2\"/></q></thing>";
+        List<XmlToRecordParserConfig.XmlToRecordParserConfigBuilder> configs = asList(
+                XmlToRecordParserConfig.builder().preserveNestedTextElements_AutoDetect(true),
+                XmlToRecordParserConfig.builder().preserveNestedTextElements_ByXPath(singletonList("//p"))
+                        .forceSingleValueNodes_ByXPath(singletonList("//uri")));
+
+        for (XmlToRecordParserConfig.XmlToRecordParserConfigBuilder config : configs) {
+            String expected = OBJECT_MAPPER.writeValueAsString(new XmlToRecordParser(config.build()).parse(new ByteArrayInputStream(xml.getBytes())));
+            XmlToRecordParser.Result raw = new XmlToRecordParser(config.materializedPaths(singletonList(singletonList("other"))).build())
+                    .parse(new ByteArrayInputStream(xml.getBytes()));
+            assertEquals(expected, OBJECT_MAPPER.writeValueAsString(raw));
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package com.ebsco.platform.shared.mappingsengine.xml;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class XmlUtilsTest {
+
+    private static final String xml = "<?xml version=\"1.0\"?>\n" +
+            "<article xmlns:xlink=\"http://www.w3.org/1999/xlink\" xmlns:mml=\"http://www.w3.org/1998/Math/MathML\" xml:lang=\"en\">\n" +
+            "  <title>A &amp; B <![CDATA[<raw> & ]]> &gt; done</title>\n" +
+            "  <p>See <ext-link xlink:href=\"http://x.org/?a=1&amp;b=&quot;2&quot;\" xlink:type=\"simple\" tab=\"a&#9;b&#10;c&#13;d&lt;\">xé😀</ext-link> and" +
+            " <mml:math display=\"block\"><mml:mi>x</mml:mi><inner xmlns=\"urn:default\" zeta=\"z\" alpha=\"a\"><deeper/><undeclared xmlns=\"\"/>" +
+            "<mml:mo xmlns:mml=\"urn:other\">+</mml:mo></inner></mml:math>\u0085.<?keep this?><?bare?></p>\n" +
+            "  <q><b xml:lang=\"de\" xmlns:h=\"urn:h\" h:x=\"1\"><h:i>i</h:i></b> <b/></q>\n" +
+            "  <d xmlns=\"urn:d\"><e>e</e><f xmlns=\"urn:f\"><g/></f></d>\n" +
+            "</article>";
+
+    private static String transformerChildrenAsXmlString(final Node node) throws Exception {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "no");
+        StringWriter stringWriter = new StringWriter();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            transformer.transform(new DOMSource(child), new StreamResult(stringWriter));
+        }
+        return stringWriter.toString().trim();
+    }
+
+    private static void assertSameAsTransformer(final Node node) throws Exception {
+        assertEquals(transformerChildrenAsXmlString(node), XmlUtils.childrenAsXmlString(node));
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                assertSameAsTransformer(child);
+            }
+        }
+    }
+
+    @Test
+    // escaping, namespace declarations and empty elements are written as a Transformer writes them
+    public void testChildrenAsXmlStringSameAsTransformer() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setCoalescing(true);
+        factory.setIgnoringComments(true);
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        assertSameAsTransformer(document.getDocumentElement());
+    }
+}
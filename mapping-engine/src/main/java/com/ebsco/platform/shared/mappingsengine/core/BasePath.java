@@ -0,0 +1,96 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.jayway.jsonpath.JsonPath;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.ebsco.platform.shared.mappingsengine.core.StringUtils.*;
+
+/**
+ * The existing (left of the '+') part of a {@link TargetPath}.  Everything that can be known without a document is
+ * worked out here once:  the upward steps of a relative path, and the compiled JsonPath that is evaluated either from
+ * the root (absolute) or from the node reached by the relative navigation.
+ */
+@Getter
+final class BasePath {
+    private final String pathString;
+    private final boolean absolute;
+    private final boolean relative;
+    private final boolean currentNodeOnly;
+    private final List<String> upwardParts;
+    private final String downwardPart;
+
+    // absolute paths are evaluated from the document root, relative ones from the node found by navigation
+    private final JsonPath compiledPath;
+
+    private BasePath(final String pathString) {
+        this.pathString = pathString;
+        this.absolute = pathString.startsWith("$");
+        this.relative = pathString.startsWith("@");
+        this.currentNodeOnly = pathString.equals("@");
+
+        if (pathString.contains("^")) {
+            // after popping up, we can only go downwards.  So start with all the upward movement...
+            String startingPath = pathString.substring(2);
+
+            // and now . or [] starts downwards again...
+            int earliestDownSymbol = indexOfAny(startingPath, '.', '[');
+            String upwards = earliestDownSymbol >= 0 ? startingPath.substring(0, earliestDownSymbol) : startingPath;
+            this.upwardParts = Collections.unmodifiableList(Arrays.asList(upwards.split(Pattern.quote("^"))));
+            this.downwardPart = earliestDownSymbol >= 0 ?
+                    removePrefix(startingPath.substring(earliestDownSymbol), ".") : "";
+        } else {
+            this.upwardParts = Collections.emptyList();
+            this.downwardPart = relative ? pathString.substring(1) : "";
+        }
+
+        if (absolute) {
+            this.compiledPath = JsonPath.compile(pathString);
+        } else if (currentNodeOnly || downwardPart.trim().isEmpty()) {
+            this.compiledPath = null;
+        } else if (downwardPart.startsWith(".") || downwardPart.startsWith("[")) {
+            this.compiledPath = JsonPath.compile("$" + downwardPart);
+        } else {
+            this.compiledPath = JsonPath.compile("$." + downwardPart);
+        }
+    }
+
+    static BasePath fromString(String basePath) {
+        String cleanPath = basePath.trim();
+        if (cleanPath.isEmpty()) {
+            throw new IllegalStateException("A base path cannot be blank");
+        }
+        if (!cleanPath.startsWith("$") && !cleanPath.startsWith("@")) {
+            throw new IllegalArgumentException("Base path must start with $ absolute, or @ relative path marker " + basePath);
+        }
+        if (cleanPath.contains("^")) {
+            int firstDotPosition = cleanPath.indexOf('.');
+            if (cleanPath.charAt(1) != '^' ||
+                    (firstDotPosition != -1 && cleanPath.indexOf('^', firstDotPosition) != -1)) {
+                throw new IllegalStateException("Relative path " + basePath + " must have ^ as second character and all ^ before the first .");
+            }
+        } else {
+            if (basePath.length() > 1 && (basePath.charAt(1) != '.' && basePath.charAt(1) != '[')) {
+                throw new IllegalStateException("Expected '.' or '[' as second char in @ relative path, " + basePath);
+            }
+        }
+        return new BasePath(cleanPath);
+    }
+
+    boolean hasUpwardParts() {
+        return !upwardParts.isEmpty();
+    }
+
+    boolean hasDownwardPart() {
+        return compiledPath != null;
+    }
+
+    @Override
+    public String toString() {
+        return pathString;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine.ConfiguredTransform;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable result of {@link MappingsEngine#compile()}:  every transform is instantiated and all of its source,
+ * target and test paths are parsed and compiled.  Executing the plan against a document does no further parsing.
+ * <p>
+ * Closing the plan closes every transformer that holds resources (i.e. shared lookup tables).
+ */
+public final class CompiledPlan implements AutoCloseable {
+    @Getter
+    private final List<ConfiguredTransform> steps;
+    private final TransformMetrics metrics;
+
+    CompiledPlan(@NotNull final List<ConfiguredTransform> steps, @NotNull final TransformMetrics metrics) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.metrics = metrics;
+    }
+
+    public void execute(@NotNull final JsonTransformerContext context) {
+        boolean events = FlightRecorderEvents.transformEventsEnabled();
+        if (metrics != TransformMetrics.NO_OP || events) {
+            executeMeasured(context, events);
+            return;
+        }
+        for (ConfiguredTransform step : steps) {
+            if (step.compiledTestPath == null || !context.queryForPaths(step.compiledTestPath).isEmpty()) {
+                step.instance.apply(context);
+            }
+        }
+    }
+
+    // a step that throws is not recorded, the document fails as a whole
+    private void executeMeasured(final JsonTransformerContext context, final boolean events) {
+        for (int i = 0; i < steps.size(); i++) {
+            ConfiguredTransform step = steps.get(i);
+            TransformEvent event = events ? FlightRecorderEvents.beginTransform() : null;
+            long start = System.nanoTime();
+            if (step.compiledTestPath != null && context.queryForPaths(step.compiledTestPath).isEmpty()) {
+                metrics.record(i, step.config, true, System.nanoTime() - start, 0, 0);
+                if (event != null) {
+                    FlightRecorderEvents.commitTransform(event, i, step.config, true, 0, 0);
+                }
+                continue;
+            }
+            long matchesBefore = context.getMatchCount();
+            long updatesBefore = context.getUpdateCount();
+            step.instance.apply(context);
+            long matches = context.getMatchCount() - matchesBefore;
+            long updates = context.getUpdateCount() - updatesBefore;
+            metrics.record(i, step.config, false, System.nanoTime() - start, matches, updates);
+            if (event != null) {
+                FlightRecorderEvents.commitTransform(event, i, step.config, false, matches, updates);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        RuntimeException failure = null;
+        for (ConfiguredTransform step : steps) {
+            if (step.instance instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) step.instance).close();
+                } catch (Exception ex) {
+                    RuntimeException cause = ex instanceof RuntimeException ? (RuntimeException) ex :
+                            new IllegalStateException("Error closing transform " + step.config.getType() + ": " + ex.getMessage(), ex);
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.internal.Path;
+import com.jayway.jsonpath.internal.path.PathCompiler;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A source path that {@link JsonTransformerContext#queryForPathsAndValues(EvaluablePath)} evaluates in a single walk,
+ * collecting both the matched paths and their values.  JsonPath does not expose the Path it compiled (and its string
+ * form has filters replaced by placeholders), so both are compiled from the string and kept together here.
+ * <p>
+ * Immutable, transformers compile it once and keep it in place of the JsonPath.
+ */
+@Getter
+public final class EvaluablePath {
+    private final JsonPath jsonPath;
+    @Getter(AccessLevel.PACKAGE)
+    private final Path path;
+
+    private EvaluablePath(final JsonPath jsonPath, final Path path) {
+        this.jsonPath = jsonPath;
+        this.path = path;
+    }
+
+    @NotNull
+    public static EvaluablePath compile(@NotNull final String jsonPath) {
+        return new EvaluablePath(JsonPath.compile(jsonPath), PathCompiler.compile(jsonPath));
+    }
+
+    @Override
+    public String toString() {
+        return jsonPath.getPath();
+    }
+}
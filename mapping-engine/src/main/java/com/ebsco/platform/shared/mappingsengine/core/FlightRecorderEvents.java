@@ -0,0 +1,85 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import jdk.jfr.FlightRecorder;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Java Flight Recorder events of the engine, in the "Mappings Engine" category:  com.ebsco.mappingsengine.Transform for
+ * every transform step of every document and com.ebsco.mappingsengine.Serialize for output written through
+ * {@link #serialize}.  Enable them in a recording (i.e. -XX:StartFlightRecording with a settings file) to see the time
+ * of each mapping rule on a running node.
+ * <p>
+ * jdk.jfr is in Java 8 only from update 262 on, without it (or with the events disabled) nothing is recorded and the
+ * engine does not measure the steps.
+ */
+@UtilityClass
+public class FlightRecorderEvents {
+    private final boolean AVAILABLE = flightRecorderAvailable();
+
+    @FunctionalInterface
+    public interface Serialization {
+        @NotNull
+        String serialize() throws IOException;
+    }
+
+    /**
+     * Serialize the output, in a Serialize event of the given format (i.e. "json" or "json-pretty") when one is recorded
+     */
+    @NotNull
+    public String serialize(@NotNull final String format, @NotNull final Serialization serialization) throws IOException {
+        if (!AVAILABLE) {
+            return serialization.serialize();
+        }
+        SerializeEvent event = new SerializeEvent();
+        if (!event.isEnabled()) {
+            return serialization.serialize();
+        }
+        event.begin();
+        String output = serialization.serialize();
+        event.end();
+        if (event.shouldCommit()) {
+            event.format = format;
+            event.characters = output.length();
+            event.commit();
+        }
+        return output;
+    }
+
+    // checked once per document, a step event is then started for each step
+    boolean transformEventsEnabled() {
+        return AVAILABLE && new TransformEvent().isEnabled();
+    }
+
+    @NotNull
+    TransformEvent beginTransform() {
+        TransformEvent event = new TransformEvent();
+        event.begin();
+        return event;
+    }
+
+    void commitTransform(@NotNull final TransformEvent event, final int step, @NotNull final TransformsConfig transform,
+                         final boolean skipped, final long matches, final long updates) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.step = step;
+            event.id = transform.getId();
+            event.type = transform.getType();
+            event.skipped = skipped;
+            event.matches = matches;
+            event.updates = updates;
+            event.commit();
+        }
+    }
+
+    private boolean flightRecorderAvailable() {
+        try {
+            return FlightRecorder.isAvailable();
+        } catch (LinkageError ex) {
+            return false;
+        }
+    }
+}
@@ -2,6 +2,11 @@ package com.ebsco.platform.shared.mappingsengine.core;
 
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * One configured transform.  A single instance is shared by every document an engine processes, possibly from several
+ * threads at once, so implementations must keep nothing per document in their fields: compile in the constructor,
+ * and work only on the {@link JsonTransformerContext} in apply.
+ */
 @FunctionalInterface
 public interface JsonTransformer {
     void apply(@NotNull final JsonTransformerContext context);
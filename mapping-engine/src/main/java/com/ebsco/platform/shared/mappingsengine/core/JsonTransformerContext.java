@@ -3,58 +3,97 @@ package com.ebsco.platform.shared.mappingsengine.core;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.internal.EvaluationContext;
+import com.jayway.jsonpath.internal.Path;
+import com.jayway.jsonpath.spi.cache.Cache;
+import com.jayway.jsonpath.spi.cache.CacheProvider;
+import com.jayway.jsonpath.spi.json.JsonProvider;
 import lombok.Getter;
 import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class JsonTransformerContext {
 
     @NonNull
     @Getter
     private final Object jsonObject;
+
+    // the only document context, configured for path lists.  Values are read with the value configuration directly
+    // against the same json object, there is no need for a context per configuration
     @NonNull
     @Getter
     private final DocumentContext jpathCtx;
     @NonNull
+    private final Configuration jvalueListCfg;
+
+    // nodes already found by normalized path in this document, dropped below anything that is updated or deleted
+    private final ResolvedNodeCache nodes;
+
+    // paths found by queries and values set or deleted so far, for TransformMetrics
     @Getter
-    private final DocumentContext jvalueCtx;
-    @NonNull
+    private long matchCount = 0;
     @Getter
-    private final DocumentContext jvalueListCtx;
+    private long updateCount = 0;
 
-    public JsonTransformerContext(Object jsonObject, Configuration jpathCfg, Configuration jvalueCfg, Configuration jvalueListCfg) {
+    public JsonTransformerContext(Object jsonObject, Configuration jpathCfg, Configuration jvalueListCfg) {
         this.jsonObject = jsonObject;
         this.jpathCtx = JsonPath.using(jpathCfg).parse(jsonObject);
-        this.jvalueCtx = JsonPath.using(jvalueCfg).parse(jsonObject);
-        this.jvalueListCtx = JsonPath.using(jvalueListCfg).parse(jsonObject);
+        this.jvalueListCfg = jvalueListCfg;
+        this.nodes = new ResolvedNodeCache(jsonObject, jpathCfg.jsonProvider());
+    }
+
+    // single values are read as a list and the first one taken, jvalueCfg is no longer needed
+    public JsonTransformerContext(Object jsonObject, Configuration jpathCfg, Configuration jvalueCfg, Configuration jvalueListCfg) {
+        this(jsonObject, jpathCfg, jvalueListCfg);
     }
 
     // TODO: temporary while testing missing changes from Kotlin code.
     public DocumentContext exposePathCtx() { return jpathCtx; }
 
-    // we might be able to call CompiledPath.eval to get both values and paths at same time, but we lose path caching and have to do that ourselves
+    @NotNull
+    public JsonProvider getJsonProvider() {
+        return jpathCtx.configuration().jsonProvider();
+    }
+
     @NotNull
     @SuppressWarnings("WeakerAccess")
     public List<String> queryForPaths(@NotNull final String jsonPath) {
-        return jpathCtx.read(jsonPath);
+        List<String> paths = jpathCtx.read(jsonPath);
+        matchCount += paths.size();
+        return paths;
     }
 
     @NotNull
     @SuppressWarnings("WeakerAccess")
     public List<String> queryForPaths(@NotNull final JsonPath jsonPath) {
-        return jpathCtx.read(jsonPath);
+        List<String> paths = jpathCtx.read(jsonPath);
+        matchCount += paths.size();
+        return paths;
     }
 
     @NotNull
     public List<Object> queryForValues(@NotNull final String jsonPath) {
-        return jvalueListCtx.read(jsonPath);
+        if (isNormalizedPath(jsonPath)) {
+            // typically a path just returned by queryForPaths, so a memoized walk instead of evaluating it again
+            Object node = readMemoized(jsonPath);
+            if (node != null) {
+                List<Object> values = new ArrayList<>(1);
+                values.add(node);
+                return values;
+            }
+        }
+        return queryForValues(fromCache(jsonPath));
     }
 
     @NotNull
     public List<Object> queryForValues(@NotNull final JsonPath jsonPath) {
-        return jvalueListCtx.read(jsonPath);
+        return jsonPath.read(jsonObject, jvalueListCfg);
     }
 
     @NotNull
@@ -67,16 +106,75 @@ public class JsonTransformerContext {
         return queryForValues(jsonPath).get(0);
     }
 
+    /**
+     * Compile a path that {@link #queryForPathsAndValues(EvaluablePath)} can evaluate in a single walk, use it in place
+     * of JsonPath.compile for source paths of transformers.
+     */
+    @NotNull
+    public static EvaluablePath compileEvaluable(@NotNull final String jsonPath) {
+        return EvaluablePath.compile(jsonPath);
+    }
+
+    /**
+     * Returns each matched normalized path with its value, in match order, the values picked up along the found paths
+     * instead of re-querying each path.
+     */
+    @NotNull
+    public Map<String, Object> queryForPathsAndValues(@NotNull final JsonPath jsonPath) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String foundPath : queryForPaths(jsonPath)) {
+            result.put(foundPath, nodes.read(foundPath));
+        }
+        return result;
+    }
+
+    /**
+     * Returns each matched normalized path with its value, in match order, both from the one evaluation.
+     */
+    @NotNull
+    public Map<String, Object> queryForPathsAndValues(@NotNull final EvaluablePath evaluablePath) {
+        Path path = evaluablePath.getPath();
+        JsonProvider provider = getJsonProvider();
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<String> paths;
+        Object values;
+        try {
+            EvaluationContext evaluation = path.evaluate(jsonObject, jsonObject, jpathCtx.configuration());
+            paths = evaluation.getPathList();
+            values = paths.isEmpty() ? null : evaluation.getValue(false);
+        } catch (PathNotFoundException ex) {
+            return result;
+        }
+        if (path.isDefinite()) {
+            // a definite path gives back its single value rather than a list of them
+            if (!paths.isEmpty()) {
+                result.put(paths.get(0), values);
+            }
+        } else {
+            for (int i = 0; i < paths.size(); i++) {
+                result.put(paths.get(i), provider.getArrayIndex(values, i));
+            }
+        }
+        matchCount += result.size();
+        return result;
+    }
+
     @NotNull
     @SuppressWarnings({"unchecked", "WeakerAccess"})
     public List<ResolvedPaths> resolveTargetPaths(@NotNull final String targetJsonPath, @NotNull final List<String> relativeToPath, boolean allowNonMatching) {
-        return PathUtils.resolveTargetPaths(jpathCtx, targetJsonPath, relativeToPath, allowNonMatching);
+        return PathUtils.resolveTargetPaths(jpathCtx, nodes, TargetPath.fromString(targetJsonPath), relativeToPath, allowNonMatching);
     }
 
     @NotNull
     @SuppressWarnings("unchecked")
     public List<ResolvedPaths> resolveTargetPaths(@NotNull final String targetJsonPath, @NotNull final List<String> relativeToPath) {
-        return PathUtils.resolveTargetPaths(jpathCtx, targetJsonPath, relativeToPath, false);
+        return PathUtils.resolveTargetPaths(jpathCtx, nodes, TargetPath.fromString(targetJsonPath), relativeToPath, false);
+    }
+
+    @NotNull
+    @SuppressWarnings("WeakerAccess")
+    public List<ResolvedPaths> resolveTargetPaths(@NotNull final TargetPath targetPath, @NotNull final List<String> relativeToPath, boolean allowNonMatching) {
+        return PathUtils.resolveTargetPaths(jpathCtx, nodes, targetPath, relativeToPath, allowNonMatching);
     }
 
     @NotNull
@@ -101,19 +199,68 @@ public class JsonTransformerContext {
         return resolveTargetPaths(targetJsonPath, queryForPaths(jsonPath), false);
     }
 
+    @NotNull
+    public List<ResolvedPaths> queryAndResolveTargetPaths(@NotNull final JsonPath jsonPath, @NotNull final TargetPath targetPath, boolean allowNonMatching) {
+        return resolveTargetPaths(targetPath, queryForPaths(jsonPath), allowNonMatching);
+    }
+
+    @NotNull
+    public List<ResolvedPaths> queryAndResolveTargetPaths(@NotNull final JsonPath jsonPath, @NotNull final TargetPath targetPath) {
+        return resolveTargetPaths(targetPath, queryForPaths(jsonPath), false);
+    }
+
     public void applyUpdate(@NotNull final ResolvedPaths target, @NotNull final Object jsonFragment) {
-        PathUtils.applyUpdatePath(jpathCtx, target.getTargetBasePath(), target.getTargetUpdatePath(), jsonFragment);
+        List<PathSegment> updateSegments = target.getTargetUpdateSegments() != null ?
+                target.getTargetUpdateSegments() : PathSegment.parseUpdate(target.getTargetUpdatePath());
+        PathUtils.applyUpdatePath(jpathCtx, nodes, target.getTargetBasePath(), updateSegments, jsonFragment);
+        updateCount++;
     }
 
     public void applyUpdate(@NotNull final String targetBasePath, @NotNull final String targetUpdatePath, Object jsonFragment) {
-        PathUtils.applyUpdatePath(jpathCtx, targetBasePath, targetUpdatePath, jsonFragment);
+        PathUtils.applyUpdatePath(jpathCtx, nodes, targetBasePath, PathSegment.parseUpdate(targetUpdatePath), jsonFragment);
+        updateCount++;
     }
 
     public void deleteValue(@NotNull final JsonPath jsonPath) {
-        jvalueCtx.delete(jsonPath);
+        jsonPath.delete(jsonObject, jvalueListCfg);
+        // could have matched anywhere
+        nodes.invalidateAll();
+        updateCount++;
     }
 
     public void deleteValue(@NotNull final String jsonPath) {
-        jvalueCtx.delete(jsonPath);
+        fromCache(jsonPath).delete(jsonObject, jvalueListCfg);
+        updateCount++;
+        try {
+            nodes.invalidateRemoved(jsonPath);
+        } catch (IllegalArgumentException ex) {
+            // not a normalized path, could have matched anywhere
+            nodes.invalidateAll();
+        }
+    }
+
+    // only the $['a']['b'][0] form returned by queryForPaths, not a general path that happens to use brackets
+    private static boolean isNormalizedPath(final String jsonPath) {
+        return jsonPath.startsWith("$[") && jsonPath.indexOf('*') < 0 && jsonPath.indexOf('?') < 0 &&
+                !jsonPath.contains("','") && !jsonPath.contains("..") && !jsonPath.contains(":");
+    }
+
+    private Object readMemoized(final String normalizedPath) {
+        try {
+            return nodes.read(normalizedPath);
+        } catch (IllegalArgumentException ex) {
+            return null; // i.e. a negative index, let JsonPath evaluate it
+        }
+    }
+
+    // the same path cache the DocumentContext uses for string paths
+    private static JsonPath fromCache(final String jsonPath) {
+        Cache cache = CacheProvider.getCache();
+        JsonPath compiled = cache.get(jsonPath);
+        if (compiled == null) {
+            compiled = JsonPath.compile(jsonPath);
+            cache.put(jsonPath, compiled);
+        }
+        return compiled;
     }
 }
@@ -9,15 +9,30 @@ import com.jayway.jsonpath.Option;
 import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
 import com.jayway.jsonpath.spi.json.JsonProvider;
 import lombok.*;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.stream.Collectors.toList;
 
+/**
+ * Applies the configured transforms to JSON documents.  An engine is immutable once built and safe to share between
+ * threads:  the compiled plan and its transformer instances are shared, while everything that belongs to one document
+ * lives in the {@link JsonTransformerContext} created for it.  Build one engine and use it from every thread rather than
+ * one per thread.
+ * <p>
+ * Close the engine when done with it, which lets go of what its transforms share with other engines (i.e. lookup
+ * tables).  A plan from {@link #compile()} is owned by the caller, and closed by them.
+ */
 @Builder
-public class MappingsEngine {
+public class MappingsEngine implements AutoCloseable {
 
     private static final Map<String, Class<? extends JsonTransformer>> REGISTERED_TRANSFORMERS = registerTransformers();
     @NonNull
@@ -29,63 +44,153 @@ public class MappingsEngine {
     @Getter
     @Builder.Default
     private Map<String, Class<? extends JsonTransformer>> transformerClasses = REGISTERED_TRANSFORMERS;
+    // wall time, matches and updates of each transform of each document, nothing is measured with the default
+    @Getter
+    @Builder.Default
+    private TransformMetrics metrics = TransformMetrics.NO_OP;
 
+    // built on first use rather than in a field initializer, which would run before the builder sets jsonProvider
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
     private final Configuration jsonValueList = Configuration.builder()
             .options(Option.ALWAYS_RETURN_LIST, Option.SUPPRESS_EXCEPTIONS)
             .jsonProvider(jsonProvider)
             .build();
 
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
     private final Configuration jsonPaths = Configuration.builder()
             .options(Option.AS_PATH_LIST, Option.SUPPRESS_EXCEPTIONS)
             .jsonProvider(jsonProvider)
             .build();
 
-    private final Configuration jsonValue = Configuration.builder()
-            .options(Option.ALWAYS_RETURN_LIST, Option.SUPPRESS_EXCEPTIONS)
-            .jsonProvider(jsonProvider)
-            .build();
-
     private final ObjectMapper mapper = new ObjectMapper();
 
-    @Getter(lazy = true)
-    private final List<ConfiguredTransform> transformSteps = createTransformSteps();
+    // not a lazy getter, close() must be able to tell whether the plan was ever compiled
+    private final AtomicReference<CompiledPlan> plan = new AtomicReference<>();
 
     public static class ConfiguredTransform {
-        public TransformsConfig config;
-        public JsonTransformer instance;
-        public JsonPath compiledTestPath = null;
+        public final TransformsConfig config;
+        public final JsonTransformer instance;
+        public final JsonPath compiledTestPath;
 
         public ConfiguredTransform(final TransformsConfig config, final JsonTransformer transformer) {
             this.config = config;
             this.instance = transformer;
+            this.compiledTestPath = config.getTestPath() != null ? JsonPath.compile(config.getTestPath()) : null;
+        }
+    }
 
-            if (config.getTestPath() != null) {
-                this.compiledTestPath = JsonPath.compile(config.getTestPath());
+    /**
+     * Instantiates every configured transform and compiles all of its paths, the engine does this once lazily for
+     * {@link #processDocument(Object)}, call it directly to fail fast on an invalid configuration.
+     */
+    public CompiledPlan compile() {
+        return new CompiledPlan(createTransformSteps(), metrics);
+    }
+
+    public CompiledPlan getPlan() {
+        CompiledPlan compiled = plan.get();
+        if (compiled == null) {
+            synchronized (plan) {
+                compiled = plan.get();
+                if (compiled == null) {
+                    compiled = compile();
+                    plan.set(compiled);
+                }
             }
         }
+        return compiled;
+    }
+
+    /**
+     * The parts of a document the transforms may read or write, anything else can be left as raw JSON by the parser,
+     * see {@link MaterializedPaths}.  Worked out from the configuration, without compiling the plan.
+     */
+    public List<List<String>> getMaterializedPaths() {
+        return MaterializedPaths.of(transforms, transformerClasses);
+    }
+
+    public List<ConfiguredTransform> getTransformSteps() {
+        return getPlan().getSteps();
     }
 
     private List<ConfiguredTransform> createTransformSteps() {
-        return transforms.stream().map(cfg -> {
+        List<ConfiguredTransform> steps = new ArrayList<>(transforms.size());
+        for (TransformsConfig cfg : transforms) {
+            JsonTransformer transformer = null;
+            try {
                 Class<? extends JsonTransformer> transformClass = transformerClasses.get(cfg.getType());
                 if (transformClass == null) {
                     throw new IllegalStateException("Transformer type " + cfg.getType() + " is not registered!");
                 }
-                return new ConfiguredTransform(cfg, mapper.convertValue(cfg.getConfig(), transformClass));
-            }).collect(toList());
+                transformer = mapper.convertValue(cfg.getConfig(), transformClass);
+                steps.add(new ConfiguredTransform(cfg, transformer));
+            } catch (RuntimeException ex) {
+                closeBuilt(steps, transformer, ex);
+                throw ex;
+            }
+        }
+        return steps;
     }
 
-    public void processDocument(Object jsonDocument) {
-        JsonTransformerContext context = new JsonTransformerContext(jsonDocument, jsonPaths, jsonValue, jsonValueList);
-        getTransformSteps().stream().filter(step -> {
-            if (step.compiledTestPath != null) {
-                List<String> checkPaths = context.queryForPaths(step.compiledTestPath);
-                return !checkPaths.isEmpty();
+    // no plan owns the transforms built before one failed, so let go of what they hold (i.e. lookup tables) here
+    private void closeBuilt(List<ConfiguredTransform> steps, @Nullable JsonTransformer unfinished, RuntimeException failure) {
+        if (unfinished instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) unfinished).close();
+            } catch (Exception ex) {
+                failure.addSuppressed(ex);
             }
-            else {
-                return true;
+        }
+        try {
+            new CompiledPlan(steps, metrics).close();
+        } catch (RuntimeException ex) {
+            failure.addSuppressed(ex);
+        }
+    }
+
+    public void processDocument(Object jsonDocument) {
+        getPlan().execute(new JsonTransformerContext(jsonDocument, getJsonPaths(), getJsonValueList()));
+    }
+
+    /**
+     * Processes each document (in place) as its own task on the executor, and returns once all of them are done.  If
+     * any document failed the first failure is thrown, with the others added to it as suppressed, after every other
+     * document has still been processed.
+     */
+    public void processDocuments(@NonNull List<Object> jsonDocuments, @NonNull Executor executor) {
+        CompiledPlan plan = getPlan(); // compile once up front, not racing in the tasks
+        List<CompletableFuture<Void>> tasks = jsonDocuments.stream()
+                .map(document -> CompletableFuture.runAsync(
+                        () -> plan.execute(new JsonTransformerContext(document, getJsonPaths(), getJsonValueList())), executor))
+                .collect(toList());
+
+        RuntimeException failure = null;
+        for (CompletableFuture<Void> task : tasks) {
+            try {
+                task.join();
+            } catch (CompletionException ex) {
+                RuntimeException cause = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
             }
-        }).forEach(step -> step.instance.apply(context));
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close() {
+        CompiledPlan compiled;
+        synchronized (plan) {
+            compiled = plan.getAndSet(null);
+        }
+        if (compiled != null) {
+            compiled.close();
+        }
     }
 
     private static Map<String, Class<? extends JsonTransformer>> registerTransformers() {
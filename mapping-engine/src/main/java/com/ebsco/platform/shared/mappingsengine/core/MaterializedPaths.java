@@ -0,0 +1,203 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Works out, from the configuration alone, which parts of a document the transforms can read or write, as chains of
+ * property names from the document root.  Everything below the last name of a chain may be touched, the names before
+ * it only have to be there as objects to walk through.  Any other subtree is never looked at by the transforms, so it
+ * can stay as it was parsed, i.e. raw JSON (see materializedPaths of the XML reader config).
+ * <p>
+ * The analysis errs on the side of touching more:  a path is followed through names and array indexes, and ends at
+ * anything it cannot follow (filters, deep scans, wildcard properties, functions), touching all of what is below it.
+ * A transform that is not one of the {@link DefaultTransformers} may do anything, and touches the whole document, as
+ * does a path ending at the root.  The whole document is returned as a single empty chain.
+ */
+@UtilityClass
+public class MaterializedPaths {
+
+    @NotNull
+    public List<List<String>> of(@NotNull final List<TransformsConfig> transforms,
+                                 @NotNull final Map<String, Class<? extends JsonTransformer>> transformerClasses) {
+        Set<List<String>> chains = new LinkedHashSet<>();
+        for (TransformsConfig transform : transforms) {
+            Class<? extends JsonTransformer> transformClass = transformerClasses.get(transform.getType());
+            if (transformClass == null || !DefaultTransformers.TRANFORMERS.containsValue(transformClass)) {
+                return everything();
+            }
+
+            List<String> paths = new ArrayList<>();
+            if (transform.getTestPath() != null) {
+                paths.add(transform.getTestPath());
+            }
+            collectPaths(transform.getConfig(), paths);
+
+            // relative paths start from the nodes the absolute ones of the same transform found
+            List<Chain> sources = new ArrayList<>();
+            for (String path : paths) {
+                if (path.startsWith("$")) {
+                    sources.add(Chain.parse(Collections.emptyList(), path, 1));
+                }
+            }
+            for (String path : paths) {
+                if (path.startsWith("$")) {
+                    chains.add(Chain.parse(Collections.emptyList(), path, 1).names);
+                } else {
+                    for (Chain source : sources) {
+                        chains.add(relative(source, path));
+                    }
+                }
+            }
+        }
+        for (List<String> chain : chains) {
+            if (chain.isEmpty()) {
+                return everything();
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(chains));
+    }
+
+    private List<List<String>> everything() {
+        return Collections.singletonList(Collections.emptyList());
+    }
+
+    // every string in the configuration that looks like a path, a string that only starts like one is more touched
+    private void collectPaths(@Nullable final Object config, final List<String> paths) {
+        if (config instanceof String) {
+            String value = ((String) config).trim();
+            if (value.startsWith("$") || value.startsWith("@")) {
+                paths.add(value);
+            }
+        } else if (config instanceof Map) {
+            for (Object value : ((Map<?, ?>) config).values()) {
+                collectPaths(value, paths);
+            }
+        } else if (config instanceof Collection) {
+            for (Object value : (Collection<?>) config) {
+                collectPaths(value, paths);
+            }
+        }
+    }
+
+    // @^a^b.c+d pops a name from the source for each ^, then goes down like an absolute path
+    private List<String> relative(final Chain source, final String path) {
+        int pos = 1;
+        int upwards = 0;
+        while (pos < path.length() && path.charAt(pos) == '^') {
+            upwards++;
+            pos++;
+            while (pos < path.length() && "^.[+".indexOf(path.charAt(pos)) < 0) {
+                pos++;
+            }
+        }
+        if (upwards >= source.names.size()) {
+            return Collections.emptyList();
+        }
+        List<String> popped = source.names.subList(0, source.names.size() - upwards);
+        if (!source.complete) {
+            // the source went deeper than its names, so where the relative path lands is somewhere below them
+            return popped;
+        }
+        return Chain.parse(popped, path, pos).names;
+    }
+
+    private static final class Chain {
+        private final List<String> names;
+        // false if the path was not followed to its end
+        private final boolean complete;
+
+        private Chain(final List<String> names, final boolean complete) {
+            this.names = Collections.unmodifiableList(names);
+            this.complete = complete;
+        }
+
+        /**
+         * Follow the path from pos, after the names it starts below.  Past a '+' only the first name may exist
+         * already, the rest is created by the transform
+         */
+        private static Chain parse(final List<String> start, final String path, final int from) {
+            List<String> names = new ArrayList<>(start);
+            boolean update = false;
+            int pos = from;
+            while (pos < path.length()) {
+                char c = path.charAt(pos);
+                if (c == '+' && !update) {
+                    update = true;
+                    pos++;
+                    if (pos < path.length() && path.charAt(pos) != '[' && path.charAt(pos) != '.') {
+                        int end = nameEnd(path, pos);
+                        names.add(path.substring(pos, end));
+                        return new Chain(names, true);
+                    }
+                } else if (c == '.' && pos + 1 < path.length() && path.charAt(pos + 1) != '.') {
+                    int end = nameEnd(path, pos + 1);
+                    String name = path.substring(pos + 1, end);
+                    if (name.equals("*") || name.endsWith(")")) {
+                        return new Chain(names, false);
+                    }
+                    names.add(name);
+                    if (update) {
+                        return new Chain(names, true);
+                    }
+                    pos = end;
+                } else if (c == '[') {
+                    int close = path.indexOf(']', pos);
+                    if (close < 0) {
+                        return new Chain(names, false);
+                    }
+                    String inside = path.substring(pos + 1, close).trim();
+                    String quoted = quotedName(inside);
+                    if (quoted != null) {
+                        names.add(quoted);
+                        if (update) {
+                            return new Chain(names, true);
+                        }
+                    } else if (!isIndex(inside)) {
+                        return new Chain(names, false);
+                    }
+                    pos = close + 1;
+                } else {
+                    return new Chain(names, false);
+                }
+            }
+            return new Chain(names, true);
+        }
+
+        private static int nameEnd(final String path, final int from) {
+            int end = from;
+            while (end < path.length() && "+.[".indexOf(path.charAt(end)) < 0) {
+                end++;
+            }
+            return end;
+        }
+
+        // ['name'] but not ['a','b']
+        @Nullable
+        private static String quotedName(final String inside) {
+            if (inside.length() >= 2 && (inside.charAt(0) == '\'' || inside.charAt(0) == '"') &&
+                    inside.indexOf(inside.charAt(0), 1) == inside.length() - 1) {
+                return inside.substring(1, inside.length() - 1);
+            }
+            return null;
+        }
+
+        // 0  *  +  0+  *+  and slices, any item of the array
+        private static boolean isIndex(final String inside) {
+            if (inside.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < inside.length(); i++) {
+                char c = inside.charAt(i);
+                if (!Character.isDigit(c) && "*+:-, ".indexOf(c) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
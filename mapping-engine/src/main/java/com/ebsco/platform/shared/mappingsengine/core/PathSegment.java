@@ -0,0 +1,191 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.ebsco.platform.shared.mappingsengine.core.StringUtils.*;
+
+/**
+ * One step of a parsed path.  Normalized paths as returned by JsonPath for AS_PATH_LIST (i.e. $['a']['b'][0]) are made
+ * of PROPERTY and INDEX segments only.  The update part of a target path (right of the '+') additionally uses the
+ * array modifiers:
+ * <p>
+ * [*]   EACH    every item of an existing array,  [*+] also adds one item if the array is empty
+ * [0]   FIRST   the first item of an existing array,  [0+] also adds one item if the array is empty, as does a
+ *               [0] that is the last step (setting the first item of an empty array adds it)
+ * [+]   APPEND  a new item added to the end of the array, the array is created if missing
+ * <p>
+ * Paths are parsed once and stay parsed, they are only rendered back to strings at the API boundary
+ * (i.e. {@link ResolvedPaths}).
+ */
+@Getter
+@EqualsAndHashCode
+final class PathSegment {
+    enum Kind {PROPERTY, INDEX, EACH, FIRST, APPEND}
+
+    private final Kind kind;
+    private final String name;
+    private final int index;
+    private final boolean orAppend;
+
+    private PathSegment(final Kind kind, final String name, final int index, final boolean orAppend) {
+        this.kind = kind;
+        this.name = name;
+        this.index = index;
+        this.orAppend = orAppend;
+    }
+
+    static PathSegment property(@NotNull final String name) {
+        return new PathSegment(Kind.PROPERTY, name, -1, false);
+    }
+
+    static PathSegment index(final int index) {
+        return new PathSegment(Kind.INDEX, null, index, false);
+    }
+
+    boolean isProperty() {
+        return kind == Kind.PROPERTY;
+    }
+
+    boolean isIndex() {
+        return kind == Kind.INDEX;
+    }
+
+    /**
+     * true for the segments that select into an array, the node before them must be (or become) an array
+     */
+    boolean isArrayModifier() {
+        return kind == Kind.EACH || kind == Kind.FIRST || kind == Kind.APPEND;
+    }
+
+    /**
+     * Parse a normalized path, $['a']['b'][0] becomes [PROPERTY a, PROPERTY b, INDEX 0] and $ alone is empty
+     */
+    @NotNull
+    static List<PathSegment> parseNormalized(@NotNull final String normalizedPath) {
+        if (!normalizedPath.startsWith("$")) {
+            throw new IllegalArgumentException("Expected normalized path, found " + normalizedPath);
+        }
+        List<PathSegment> segments = new ArrayList<>();
+        int pos = 1; // skip the $
+        int length = normalizedPath.length();
+        while (pos < length) {
+            if (normalizedPath.charAt(pos) != '[' || pos + 1 >= length) {
+                throw new IllegalArgumentException("Expected normalized path, found " + normalizedPath);
+            }
+            if (normalizedPath.charAt(pos + 1) == '\'') {
+                int end = normalizedPath.indexOf("']", pos + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Expected normalized path, found " + normalizedPath);
+                }
+                segments.add(property(normalizedPath.substring(pos + 2, end)));
+                pos = end + 2;
+            } else {
+                int end = normalizedPath.indexOf(']', pos + 1);
+                String idx = end < 0 ? "" : normalizedPath.substring(pos + 1, end);
+                if (idx.isEmpty() || !isNumber(idx)) {
+                    throw new IllegalArgumentException("Expected normalized path, found " + normalizedPath);
+                }
+                segments.add(index(Integer.parseInt(idx)));
+                pos = end + 1;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Parse the update part of a target path, a.b[+].c becomes [PROPERTY a, PROPERTY b, APPEND, PROPERTY c] and
+     * [*].x becomes [EACH, PROPERTY x].  A blank update path is empty.
+     */
+    @NotNull
+    static List<PathSegment> parseUpdate(@NotNull final String updatePath) {
+        String cleanPath = updatePath.trim();
+        if (cleanPath.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<PathSegment> segments = new ArrayList<>();
+        for (String step : cleanPath.split(Pattern.quote("."))) {
+            String id = substringBefore(step, "[", step);
+            String idx = removeSuffix(substringAfter(step, "[", ""), "]");
+            boolean silentArrayIndex = id.trim().isEmpty() && !idx.trim().isEmpty();
+
+            if (!silentArrayIndex) {
+                if (id.trim().isEmpty()) {
+                    throw new IllegalArgumentException("Update path " + updatePath + " contains an empty step");
+                }
+                segments.add(property(id));
+            }
+            if (!idx.trim().isEmpty()) {
+                segments.add(arrayModifier(idx, updatePath));
+            }
+        }
+        return Collections.unmodifiableList(segments);
+    }
+
+    private static PathSegment arrayModifier(final String idx, final String updatePath) {
+        switch (idx) {
+            case "*":
+                return new PathSegment(Kind.EACH, null, -1, false);
+            case "*+":
+                return new PathSegment(Kind.EACH, null, -1, true);
+            case "0":
+                return new PathSegment(Kind.FIRST, null, 0, false);
+            case "0+":
+                return new PathSegment(Kind.FIRST, null, 0, true);
+            case "+":
+                return new PathSegment(Kind.APPEND, null, -1, true);
+            default:
+                throw new IllegalArgumentException("Update pathing contains invalid array modifier [" + idx + "] in " + updatePath);
+        }
+    }
+
+    /**
+     * Render the first {@code count} segments of a parsed normalized path back to $['a']['b'][0] form
+     */
+    @NotNull
+    static String render(@NotNull final List<PathSegment> segments, final int count) {
+        StringBuilder sb = new StringBuilder("$");
+        for (int i = 0; i < count; i++) {
+            segments.get(i).appendTo(sb);
+        }
+        return sb.toString();
+    }
+
+    @NotNull
+    static String render(@NotNull final List<PathSegment> segments) {
+        return render(segments, segments.size());
+    }
+
+    private void appendTo(final StringBuilder sb) {
+        switch (kind) {
+            case PROPERTY:
+                sb.append("['").append(name).append("']");
+                break;
+            case INDEX:
+                sb.append('[').append(index).append(']');
+                break;
+            case EACH:
+                sb.append(orAppend ? "[*+]" : "[*]");
+                break;
+            case FIRST:
+                sb.append(orAppend ? "[0+]" : "[0]");
+                break;
+            case APPEND:
+                sb.append("[+]");
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+}
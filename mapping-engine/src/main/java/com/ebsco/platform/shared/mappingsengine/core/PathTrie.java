@@ -0,0 +1,76 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix trie over a list of normalized paths (i.e. $['a']['b'][0]), keyed by {@link PathSegment}.  Finding the paths
+ * that are an ancestor of, equal to, or a descendant of another path costs the depth of that path plus the number of
+ * paths found, instead of comparing it against every indexed path.
+ */
+final class PathTrie {
+    private final List<String> paths;
+    private final Node root = new Node();
+
+    PathTrie(@NotNull final List<String> paths) {
+        this.paths = paths;
+        for (int i = 0; i < paths.size(); i++) {
+            Node node = root;
+            for (PathSegment segment : PathSegment.parseNormalized(paths.get(i))) {
+                node = node.children.computeIfAbsent(segment, it -> new Node());
+            }
+            node.pathIndexes.add(i);
+        }
+    }
+
+    /**
+     * All indexed paths that are a prefix of the given path, or that the given path is a prefix of, in the order they
+     * were indexed.
+     */
+    @NotNull
+    List<String> findRelated(@NotNull final String path) {
+        List<Integer> found = new ArrayList<>();
+        Node node = root;
+        found.addAll(node.pathIndexes);
+        for (PathSegment segment : PathSegment.parseNormalized(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            found.addAll(node.pathIndexes);
+        }
+        if (node != null) {
+            // the ones at the node itself were already added as it was reached
+            for (Node child : node.children.values()) {
+                child.collect(found);
+            }
+        }
+
+        if (found.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(found);
+        List<String> related = new ArrayList<>(found.size());
+        for (Integer idx : found) {
+            related.add(paths.get(idx));
+        }
+        return related;
+    }
+
+    private static final class Node {
+        private final Map<PathSegment, Node> children = new HashMap<>();
+        private final List<Integer> pathIndexes = new ArrayList<>(1);
+
+        private void collect(final List<Integer> found) {
+            found.addAll(pathIndexes);
+            for (Node child : children.values()) {
+                child.collect(found);
+            }
+        }
+    }
+}
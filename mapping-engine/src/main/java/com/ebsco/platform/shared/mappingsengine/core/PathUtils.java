@@ -9,9 +9,8 @@ import lombok.Value;
 import lombok.experimental.UtilityClass;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static com.ebsco.platform.shared.mappingsengine.core.StringUtils.*;
@@ -23,30 +22,43 @@ import static java.util.stream.Collectors.toList;
 @UtilityClass
 public class PathUtils {
 
-    // TODO: clean up path parsing with more formal parser than string splits
-    //  then stay with parsed paths until the very end, and render
-    // This will prevent going to from string paths a few times in some cases
+    // paths are parsed into PathSegment lists once and stay parsed, they are only rendered back to strings for the
+    // ResolvedPaths handed back to transformers
 
     public List<ResolvedPaths> resolveTargetPaths(DocumentContext documentContext,
                                                   String targetPathString,
                                                   List<String> matchingPaths,
                                                   boolean allowNoMatchingTarget) {
+        return resolveTargetPaths(documentContext, TargetPath.fromString(targetPathString), matchingPaths, allowNoMatchingTarget);
+    }
+
+    public List<ResolvedPaths> resolveTargetPaths(DocumentContext documentContext,
+                                                  TargetPath targetPath,
+                                                  List<String> matchingPaths,
+                                                  boolean allowNoMatchingTarget) {
+        ResolvedNodeCache nodes = new ResolvedNodeCache(documentContext.json(), documentContext.configuration().jsonProvider());
+        return resolveTargetPaths(documentContext, nodes, targetPath, matchingPaths, allowNoMatchingTarget);
+    }
 
-        Configuration config = buildConfig(documentContext, Option.AS_PATH_LIST);
+    List<ResolvedPaths> resolveTargetPaths(DocumentContext documentContext,
+                                           ResolvedNodeCache nodes,
+                                           TargetPath targetPath,
+                                           List<String> matchingPaths,
+                                           boolean allowNoMatchingTarget) {
+
+        Configuration config = pathListConfig(documentContext);
         Object json = documentContext.json();
 
-        TargetPath targetPath = TargetPath.fromString(targetPathString);
         BasePath basePath = targetPath.getBasePath();
 
         List<Match> matches = new ArrayList<>();
         if (basePath.isAbsolute()) {
-            JsonPath compiledBasePath = basePath.compile();
-            List<String> foundPaths = compiledBasePath.read(json, config);
+            List<String> foundPaths = basePath.getCompiledPath().read(json, config);
 
             // compare found nodes against matching source nodes, we need a match for each of them
             matches = matchPaths(matchingPaths, foundPaths);
         } else if (basePath.isRelative()) {
-            if (basePath.getPathString().equals("@")) {
+            if (basePath.isCurrentNodeOnly()) {
                 // special case of @+foo would result in only @ as existing path
                 matches = matchingPaths.stream()
                         .map(path -> Match.of(path, path))
@@ -54,98 +66,24 @@ public class PathUtils {
             } else if (basePath.hasUpwardParts()) {
 
                 List<String> upwardsParts = basePath.getUpwardParts();
-                String downwardsPart = basePath.getDownWardPart();
 
                 // go up for each path for each upward part
-                List<Match> uppedPaths = matchingPaths.stream().map(matchingPath -> {
-
-                    String temp = matchingPath.substring(1); // skip the $
-                    List<String> tempParts = Arrays.stream(temp.split("]"))
-                            .map(it -> removePrefix(it, "["))
-                            .filter(it -> !it.trim().isEmpty())
-                            .collect(toList());
-
-                    String lastPath = null;
-                    for (String upper : upwardsParts) {
-                        // going up from a.b[1].c goes to b[1],
-                        //         is ['a']['b'][1]['c'] to ['a']['b'][1]
-                        // going up from a.b[1] goes to a,
-                        //         is ['a']['b'][1] to ['a']
-                        // going up from a.b[1].c[1] goes to b[1]
-                        //         is ['a']['b'][1]['c'][1] to ['a']['b'][1]
-                        if (tempParts.size() < 2) {
-                            throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", attempted to pop up past the first element");
-                        }
-                        String inspectPossibleArrayIndex = tempParts.get(tempParts.size() - 1);
-                        // we are on an array index, so from perspective of popping up, start at the array
-                        if (isNumber(inspectPossibleArrayIndex)) {
-                            tempParts.remove(tempParts.size() - 1);
-                        }
-                        // pop up to the possible landing point
-                        tempParts.remove(tempParts.size() - 1);
-                        lastPath = tempParts.stream()
-                                .map(it -> "[" + it + "]")
-                                .collect(joining("", "$", ""));
-
-                        // the ID of the landing point is this node if it is not an array index, otherwise is the node above
-                        if (tempParts.isEmpty()) {
-                            throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", attempted to pop up past the first element");
-                        }
-                        String inspectLastPartAgain = tempParts.get(tempParts.size() - 1);
-                        String checkPoint;
-                        if (isNumber(inspectLastPartAgain)) {
-                            if (tempParts.size() < 2) {
-                                throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", unexpected array index as first element");
-                            }
-                            checkPoint = tempParts.get(tempParts.size() - 2);
-                        } else {
-                            checkPoint = inspectLastPartAgain;
-                        }
-
-                        if (checkPoint.startsWith("'")) {
-                            String id = strip(checkPoint, "'");
-                            if (!id.equals(upper)) {
-                                throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting "+matchingPath+", error popping up to "+upper+", found "+id+" instead");
-                            }
-                        } else {
-                            throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", the next part has no valid name");
-                        }
-                    }
-                    return Match.of(matchingPath, lastPath);
-                }).collect(toList());
+                List<Match> uppedPaths = matchingPaths.stream()
+                        .map(matchingPath -> Match.of(matchingPath, popUpwards(targetPath, matchingPath, upwardsParts)))
+                        .collect(toList());
 
-                if (downwardsPart.trim().isEmpty()) {
+                if (!basePath.hasDownwardPart()) {
                     matches = uppedPaths;
                 } else {
                     matches = uppedPaths.stream()
-                            .map(upped -> Match.of(upped.getPath(), upped.getPrefix() + "." + downwardsPart))
-                            .flatMap(updated -> {
-                                String matchingPath = updated.getPath();
-                                String testPath = updated.getPrefix();
-                                List<String> foundPaths = JsonPath.compile(testPath).read(json, config);
-
-                                if (foundPaths.isEmpty()) {
-                                    return Stream.of(Match.of(matchingPath, null));
-                                } else {
-                                    return foundPaths.stream().map(foundPath -> Match.of(matchingPath, foundPath));
-                                }
-                            }).collect(toList());
+                            .flatMap(upped -> matchRelative(nodes, config, upped.getPath(), upped.getPrefix(), basePath.getCompiledPath()))
+                            .collect(toList());
                 }
             } else {
                 // current node and down
                 matches = matchingPaths.stream()
-                        .map(matchingPath -> Match.of(matchingPath, matchingPath + basePath.getPathString().substring(1)))
-                        .flatMap(updated -> {
-                            String matchingPath = updated.getPath();
-                            String testPath = updated.getPrefix();
-                            List<String> foundPaths = JsonPath.compile(testPath).read(json, config);
-
-                            if (foundPaths.isEmpty()) {
-                                return Stream.of(Match.of(matchingPath, null));
-                            } else {
-                                return foundPaths.stream().map(foundPath -> Match.of(matchingPath, foundPath));
-                            }
-                        }).collect(toList());
+                        .flatMap(matchingPath -> matchRelative(nodes, config, matchingPath, matchingPath, basePath.getCompiledPath()))
+                        .collect(toList());
             }
         }
 
@@ -159,31 +97,66 @@ public class PathUtils {
         List<ResolvedPaths> normalizedPaths = matches.stream().map(match -> {
             String originalTarget = match.getPrefix() != null ? match.getPrefix() : "";
             String normalizedTarget;
-            if (targetPath.getUpdatePath().startsWith("[") && !originalTarget.trim().isEmpty()) {
-                // we are possibly changing an array index in place
-                List<String> tempParts = Arrays.stream(originalTarget.substring(1).split(Pattern.quote("]")))
-                        .map(it -> removePrefix(it, "["))
-                        .filter(it -> !it.trim().isEmpty())
-                        .collect(toList());
-                String checkLastPart = tempParts.get(tempParts.size() - 1);
-                List<String> finalParts;
-                if (isNumber(checkLastPart)) {
-                    tempParts.remove(tempParts.size() - 1);
+            if (targetPath.updatesArrayInPlace() && !originalTarget.trim().isEmpty()) {
+                // we are possibly changing an array index in place, so the base is the array and not the item
+                List<PathSegment> segments = PathSegment.parseNormalized(originalTarget);
+                int length = segments.size();
+                if (length > 0 && segments.get(length - 1).isIndex()) {
+                    length--;
                 }
-                finalParts = tempParts;
-                normalizedTarget = finalParts.stream()
-                        .map(it -> "[" + it + "]")
-                        .collect(joining("", "$", ""));
-
+                normalizedTarget = PathSegment.render(segments, length);
             } else {
                 normalizedTarget = originalTarget;
             }
-            return ResolvedPaths.of(match.getPath(), normalizedTarget, targetPath.getUpdatePath());
+            return new ResolvedPaths(match.getPath(), normalizedTarget, targetPath.getUpdatePath(), targetPath.getUpdateSegments());
         }).collect(toList());
 
         return normalizedPaths;
     }
 
+    // going up from a.b[1].c goes to b[1],
+    //         is ['a']['b'][1]['c'] to ['a']['b'][1]
+    // going up from a.b[1] goes to a,
+    //         is ['a']['b'][1] to ['a']
+    // going up from a.b[1].c[1] goes to b[1]
+    //         is ['a']['b'][1]['c'][1] to ['a']['b'][1]
+    private String popUpwards(TargetPath targetPath, String matchingPath, List<String> upwardsParts) {
+        List<PathSegment> segments = PathSegment.parseNormalized(matchingPath);
+        int length = segments.size();
+
+        for (String upper : upwardsParts) {
+            if (length < 2) {
+                throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", attempted to pop up past the first element");
+            }
+            // we are on an array index, so from perspective of popping up, start at the array
+            if (segments.get(length - 1).isIndex()) {
+                length--;
+            }
+            // pop up to the possible landing point
+            length--;
+
+            // the ID of the landing point is this node if it is not an array index, otherwise is the node above
+            if (length == 0) {
+                throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", attempted to pop up past the first element");
+            }
+            PathSegment checkPoint = segments.get(length - 1);
+            if (checkPoint.isIndex()) {
+                if (length < 2) {
+                    throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", unexpected array index as first element");
+                }
+                checkPoint = segments.get(length - 2);
+            }
+
+            if (!checkPoint.isProperty()) {
+                throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting " + matchingPath + ", the next part has no valid name");
+            }
+            if (!checkPoint.getName().equals(upper)) {
+                throw new IllegalStateException("Cannot path upwards using "+targetPath+" from starting "+matchingPath+", error popping up to "+upper+", found "+checkPoint.getName()+" instead");
+            }
+        }
+        return PathSegment.render(segments, length);
+    }
+
     public List<ResolvedPaths> resolveTargetPaths(DocumentContext documentContext,
                                                   String targetPathString,
                                                   List<String> matchingPaths
@@ -192,244 +165,248 @@ public class PathUtils {
     }
 
     public void applyUpdatePath(DocumentContext documentContext, String basePath, String updatePath, Object jsonFragment) {
-        Configuration config = buildConfig(documentContext, Option.ALWAYS_RETURN_LIST);
+        ResolvedNodeCache nodes = new ResolvedNodeCache(documentContext.json(), documentContext.configuration().jsonProvider());
+        applyUpdatePath(documentContext, nodes, basePath, PathSegment.parseUpdate(updatePath), jsonFragment);
+    }
+
+    /**
+     * Apply an update at a base path, walking the already parsed update segments.  With no update segments the existing
+     * node at the base path is replaced.  A normalized base path (as resolved by resolveTargetPaths) is walked directly,
+     * any other JsonPath is compiled and evaluated, the first match being the base of the update.
+     */
+    void applyUpdatePath(DocumentContext documentContext, ResolvedNodeCache nodes, String basePath, List<PathSegment> updateSegments, Object jsonFragment) {
+        String cleanBasePath = basePath.trim();
+        if (cleanBasePath.isEmpty()) {
+            throw new IllegalStateException("Base path for update cannot be blank");
+        }
+        JsonProvider jsonProvider = documentContext.configuration().jsonProvider();
+
+        if (updateSegments.isEmpty()) {
+            List<PathSegment> baseSegments;
+            try {
+                baseSegments = PathSegment.parseNormalized(cleanBasePath);
+            } catch (IllegalArgumentException ex) {
+                applyUpdateJsonPath(documentContext, nodes, cleanBasePath, updateSegments, jsonFragment);
+                return;
+            }
+            replaceExisting(documentContext.json(), baseSegments, jsonFragment, jsonProvider);
+        } else {
+            Object baseNode;
+            try {
+                baseNode = nodes.read(cleanBasePath);
+            } catch (IllegalArgumentException ex) {
+                applyUpdateJsonPath(documentContext, nodes, cleanBasePath, updateSegments, jsonFragment);
+                return;
+            }
+            if (baseNode == null) {
+                throw new IllegalStateException("Base path for update " + basePath + " was not found in document");
+            }
+            drillDownToUpdate(baseNode, updateSegments, 0, jsonFragment, jsonProvider);
+        }
+        // anything at or below the base may have been replaced
+        nodes.invalidate(cleanBasePath);
+    }
+
+    // a base path that is not normalized, set at every match or updated below the first one
+    private void applyUpdateJsonPath(DocumentContext documentContext, ResolvedNodeCache nodes, String basePath, List<PathSegment> updateSegments, Object jsonFragment) {
+        Configuration config = valueListConfig(documentContext);
         JsonPath startingPath = JsonPath.compile(basePath);
         Object json = documentContext.json();
-        JsonProvider jsonProvider = config.jsonProvider();
 
-        if (updatePath.trim().isEmpty()) {
+        if (updateSegments.isEmpty()) {
             startingPath.set(json, jsonFragment, config);
         } else {
             List<Object> read = startingPath.read(json, config);
             if (read.isEmpty()) {
                 throw new IllegalStateException("Base path for update " + basePath + " was not found in document");
             }
-            Object baseNode = read.get(0);
-            List<String> updateSteps = Arrays.asList(updatePath.trim().split(Pattern.quote(".")));
+            drillDownToUpdate(read.get(0), updateSegments, 0, jsonFragment, config.jsonProvider());
+        }
+        // could have matched anywhere
+        nodes.invalidateAll();
+    }
 
-            drillDownToUpdate(baseNode, updatePath, updateSteps, jsonFragment, jsonProvider);
+    // like JsonPath.set, only an existing node is replaced, a missing one is left alone
+    private void replaceExisting(Object json, List<PathSegment> segments, Object jsonFragment, JsonProvider provider) {
+        if (segments.isEmpty()) {
+            return; // cannot replace the root
+        }
+        Object parent = readSegments(json, segments, segments.size() - 1, provider);
+        PathSegment last = segments.get(segments.size() - 1);
+        if (last.isProperty()) {
+            if (parent != null && provider.isMap(parent) && provider.getPropertyKeys(parent).contains(last.getName())) {
+                provider.setProperty(parent, last.getName(), jsonFragment);
+            }
+        } else if (parent != null && provider.isArray(parent) && last.getIndex() < provider.length(parent)) {
+            provider.setArrayIndex(parent, last.getIndex(), jsonFragment);
         }
     }
 
-    private void drillDownToUpdate(Object startNode, String updatePath, List<String> steps, Object jsonFragment, JsonProvider provider) {
+    private void drillDownToUpdate(Object startNode, List<PathSegment> steps, int from, Object jsonFragment, JsonProvider provider) {
         Object currentNode = startNode;
-        List<String> currentSteps = steps;
-
-        while (!currentSteps.isEmpty()) {
-            String step = currentSteps.get(0);
-            boolean isLastStep = currentSteps.size() == 1;
-            currentSteps = currentSteps.subList(1, currentSteps.size());
 
-            String id = substringBefore(step, "[", step);
-            String idx = removeSuffix(substringAfter(step, "[", ""), "]");
-            boolean silentArrayIndex = id.trim().isEmpty() && !idx.trim().isEmpty();
-
-            if (silentArrayIndex && !provider.isArray(currentNode)) {
-                throw new IllegalStateException("Update pathing through [" + idx + "] found something other than an Array at current point");
-            }
-            if (!silentArrayIndex && !provider.isMap(currentNode)) {
-                throw new IllegalStateException("Update pathing through " + id + "found something other than a Map at current point");
-            }
+        for (int i = from; i < steps.size(); i++) {
+            PathSegment step = steps.get(i);
+            boolean isLastStep = i == steps.size() - 1;
 
-            if (idx.trim().isEmpty()) {
-                //map or property
+            if (step.isProperty()) {
+                if (!provider.isMap(currentNode)) {
+                    throw new IllegalStateException("Update pathing through " + step.getName() + " found something other than a Map at current point");
+                }
+                String id = step.getName();
+                PathSegment next = isLastStep ? null : steps.get(i + 1);
                 if (isLastStep) {
                     provider.setProperty(currentNode, id, jsonFragment);
-                } else {
-                    if (!provider.getPropertyKeys(currentNode).contains(id)) {
-                        Object newNode = provider.createMap();
-                        provider.setProperty(currentNode, id, newNode);
-                        currentNode = newNode;
-                    } else {
-                        currentNode = provider.getMapValue(currentNode, id);
+                } else if (provider.getPropertyKeys(currentNode).contains(id)) {
+                    currentNode = provider.getMapValue(currentNode, id);
+                    if (next.isArrayModifier() && !provider.isArray(currentNode)) {
+                        throw new IllegalStateException("Expected array at " + id + " in " + startNode + " / " + render(steps) + " during update traversal");
+                    }
+                } else if (next.isArrayModifier()) {
+                    // only [+] or [*+] and [0+] may create the array
+                    if (!next.isOrAppend()) {
+                        throw new IllegalStateException("Expected array at " + id + " in " + startNode + " / " + render(steps) + " during update traversal");
                     }
+                    Object newArray = provider.createArray();
+                    provider.setProperty(currentNode, id, newArray);
+                    currentNode = newArray;
+                } else {
+                    Object newNode = provider.createMap();
+                    provider.setProperty(currentNode, id, newNode);
+                    currentNode = newNode;
                 }
-
             } else {
-                Object checkArrayNode = null;
-                if (silentArrayIndex) {
-                    checkArrayNode = currentNode;
-                } else if (provider.getPropertyKeys(currentNode).contains(id)) {
-                    checkArrayNode = provider.getMapValue(currentNode, id);
-                }
-                if ((checkArrayNode == null && (idx.equals("*") || idx.equals("0"))) ||
-                        (checkArrayNode != null && !provider.isArray(checkArrayNode))) {
-                    throw new IllegalStateException("Expected array at "+id+" in "+startNode+" / "+updatePath+" during update traversal");
-                }
-                Object arrayNode;
-                if (checkArrayNode != null) {
-                    arrayNode = checkArrayNode;
-                } else {
-                    Object array = provider.createArray();
-                    provider.setProperty(currentNode, id, array);
-                    arrayNode = array;
+                if (!provider.isArray(currentNode)) {
+                    throw new IllegalStateException("Update pathing through " + step + " found something other than an Array at current point");
                 }
-
+                Object arrayNode = currentNode;
                 int arraySize = provider.length(arrayNode);
 
-                if (idx.equals("*") || idx.equals("*+")) {
-                    for (int i = 0; i < arraySize; ++i) {
-                        if (isLastStep) {
-                            provider.setArrayIndex(arrayNode, i, jsonFragment);
-                        } else {
-                            drillDownToUpdate(provider.getArrayIndex(arrayNode, i), updatePath, currentSteps, jsonFragment, provider);
-                        }
-                    }
-
-                    if (arraySize == 0 && idx.endsWith("+")) {
-                        if (isLastStep) {
-                            provider.setArrayIndex(arrayNode, arraySize, jsonFragment);
-                        } else {
-                            Object emptyItem = provider.createMap();
-                            provider.setArrayIndex(arrayNode, arraySize, emptyItem);
-                            drillDownToUpdate(emptyItem, updatePath, currentSteps, jsonFragment, provider);
-                            return;
-                        }
-                    }
-                } else if (idx.equals("0") || idx.equals("0+")) {
-                    if (isLastStep) {
-                        provider.setArrayIndex(arrayNode, 0, jsonFragment );
-                    } else {
-                        drillDownToUpdate(provider.getArrayIndex(arrayNode, 0), updatePath, steps, jsonFragment, provider);
-                        return;
+                if (arraySize == 0 || step.getKind() == PathSegment.Kind.APPEND) {
+                    // a last [0] sets the first item, which on an empty array adds it
+                    if (step.isOrAppend() || (isLastStep && step.getKind() == PathSegment.Kind.FIRST)) {
+                        appendItem(arrayNode, arraySize, steps, i, isLastStep, jsonFragment, provider);
                     }
-
-                    if (arraySize == 0 && idx.endsWith("+")) {
+                } else if (step.getKind() == PathSegment.Kind.EACH) {
+                    for (int item = 0; item < arraySize; ++item) {
                         if (isLastStep) {
-                            provider.setArrayIndex(arrayNode, arraySize, jsonFragment);
+                            provider.setArrayIndex(arrayNode, item, jsonFragment);
                         } else {
-                            Object emptyItem = provider.createMap();
-                            provider.setArrayIndex(arrayNode, arraySize, emptyItem);
-                            drillDownToUpdate(emptyItem, updatePath, currentSteps, jsonFragment, provider);
-                            return;
+                            drillDownToUpdate(provider.getArrayIndex(arrayNode, item), steps, i + 1, jsonFragment, provider);
                         }
                     }
-                } else if (idx.equals("+")) {
+                } else if (step.getKind() == PathSegment.Kind.FIRST) {
                     if (isLastStep) {
-                        provider.setArrayIndex(arrayNode, arraySize, jsonFragment);
+                        provider.setArrayIndex(arrayNode, 0, jsonFragment);
                     } else {
-                        Object emptyItem = provider.createMap();
-                        provider.setArrayIndex(arrayNode, arraySize, emptyItem);
-                        drillDownToUpdate(emptyItem, updatePath, currentSteps, jsonFragment, provider);
-                        return;
+                        drillDownToUpdate(provider.getArrayIndex(arrayNode, 0), steps, i + 1, jsonFragment, provider);
                     }
                 } else {
-                    throw new IllegalStateException("Update pathing contains invalid array modifier, " + startNode +" / "+updatePath);
+                    throw new IllegalStateException("Update pathing contains invalid array modifier, " + startNode + " / " + render(steps));
                 }
+                // the remaining steps were applied to the selected item(s)
+                return;
             }
         }
     }
 
-    private Configuration buildConfig(DocumentContext documentContext, Option option) {
+    private void appendItem(Object arrayNode, int arraySize, List<PathSegment> steps, int at, boolean isLastStep, Object jsonFragment, JsonProvider provider) {
+        if (isLastStep) {
+            provider.setArrayIndex(arrayNode, arraySize, jsonFragment);
+        } else {
+            Object emptyItem = provider.createMap();
+            provider.setArrayIndex(arrayNode, arraySize, emptyItem);
+            drillDownToUpdate(emptyItem, steps, at + 1, jsonFragment, provider);
+        }
+    }
+
+    private String render(List<PathSegment> steps) {
+        return steps.stream().map(PathSegment::toString).collect(joining(""));
+    }
+
+    private Configuration valueListConfig(DocumentContext documentContext) {
+        Configuration existing = documentContext.configuration();
+        return Configuration.builder()
+                .options(Option.ALWAYS_RETURN_LIST, Option.SUPPRESS_EXCEPTIONS)
+                .jsonProvider(existing.jsonProvider())
+                .mappingProvider(existing.mappingProvider())
+                .build();
+    }
+
+    // the context handed in by JsonTransformerContext is already configured for path lists, only build one otherwise
+    private Configuration pathListConfig(DocumentContext documentContext) {
+        Configuration existing = documentContext.configuration();
+        if (existing.containsOption(Option.AS_PATH_LIST) && existing.containsOption(Option.SUPPRESS_EXCEPTIONS)) {
+            return existing;
+        }
         return Configuration.builder()
-                .options(option, Option.SUPPRESS_EXCEPTIONS)
-                .jsonProvider(documentContext.configuration().jsonProvider())
-                .mappingProvider(documentContext.configuration().mappingProvider())
+                .options(Option.AS_PATH_LIST, Option.SUPPRESS_EXCEPTIONS)
+                .jsonProvider(existing.jsonProvider())
+                .mappingProvider(existing.mappingProvider())
                 .build();
     }
 
+    // a found path relates to a matching path if either is a prefix of the other, the trie finds those in time of the
+    // path depth instead of comparing every matching path against every found path
     private List<Match> matchPaths(List<String> matchingPaths, List<String> foundPaths) {
+        if (foundPaths.isEmpty()) {
+            return Collections.emptyList();
+        }
+        PathTrie foundPathIndex = new PathTrie(foundPaths);
         return matchingPaths.stream()
-                .flatMap(matchingPath -> foundPaths.stream()
-                        .filter(foundPath -> matchingPath.startsWith(foundPath) || foundPath.startsWith(matchingPath))
+                .flatMap(matchingPath -> foundPathIndex.findRelated(matchingPath).stream()
                         .map(prefix -> Match.of(matchingPath, prefix)))
                 .collect(toList());
     }
 
 
-    @Value(staticConstructor = "of")
-    private class Match {
-        String path;
-        String prefix;
+    // the relative part of a target path is compiled once as a path from '$', and evaluated against the node the
+    // navigation landed on, the found paths are then prefixed with the path of that node
+    private Stream<Match> matchRelative(ResolvedNodeCache nodes, Configuration config, String matchingPath, String startingPath, JsonPath relativePath) {
+        Object startingNode = nodes.read(startingPath);
+        List<String> foundPaths = startingNode == null ? Collections.emptyList() : relativePath.read(startingNode, config);
+
+        if (foundPaths.isEmpty()) {
+            return Stream.of(Match.of(matchingPath, null));
+        } else {
+            return foundPaths.stream().map(foundPath -> Match.of(matchingPath, startingPath + foundPath.substring(1)));
+        }
     }
 
     /**
-     * two types of paths:
-     * <p>
-     * absolute:   $.a.b.c[*].d[0].e[?(@.filter)].f
-     * relative:   @^e^d.z
-     * relative:   @.x.y.z
-     * <p>
-     * both can have one update marker '+' in the path indicating that the path to the left must exist, and the
-     * remainder of the path to the right may be inserted.
-     * <p>
-     * absolute:   $a.b.c[*]+d.e.f
-     * relative:   @^y^x+d[0+].e.f
-     * relative:   @.x+y.z
+     * Walks a normalized path as returned by JsonPath for AS_PATH_LIST (i.e. $['a']['b'][0]) without compiling it,
+     * returns null if the path does not exist or leads to a null value
      */
-    @Value(staticConstructor = "of")
-    private class TargetPath {
-        BasePath basePath;
-        String updatePath;
-
-        static TargetPath fromString(String targetPath) {
-            String cleanPath = targetPath.trim();
-            String basePath = substringBefore(cleanPath, "+", cleanPath);
-            String updatePath = substringAfter(cleanPath, "+", "");
-            return TargetPath.of(BasePath.fromString(basePath), updatePath);
-        }
+    Object readNormalizedPath(Object json, String normalizedPath, JsonProvider provider) {
+        List<PathSegment> segments = PathSegment.parseNormalized(normalizedPath);
+        return readSegments(json, segments, segments.size(), provider);
     }
 
-    @Value(staticConstructor = "of")
-    private class BasePath {
-        String pathString;
-
-        static BasePath fromString(String basePath) {
-            String cleanPath = basePath.trim();
-            if (cleanPath.isEmpty()) {
-                throw new IllegalStateException("A base path cannot be blank");
-            }
-            if (!cleanPath.startsWith("$") && !cleanPath.startsWith("@")) {
-                throw new IllegalArgumentException("Base path must start with $ absolute, or @ relative path marker " + basePath);
-            }
-            if (cleanPath.contains("^")) {
-                int firstDotPosition = cleanPath.indexOf('.');
-                if (cleanPath.charAt(1) != '^' ||
-                        (firstDotPosition != -1 && cleanPath.indexOf('^', firstDotPosition) != -1)) {
-                    throw new IllegalStateException("Relative path " + basePath + " must have ^ as second character and all ^ before the first .");
+    private Object readSegments(Object json, List<PathSegment> segments, int count, JsonProvider provider) {
+        Object currentNode = json;
+        for (int i = 0; i < count && currentNode != null; i++) {
+            PathSegment segment = segments.get(i);
+            if (segment.isProperty()) {
+                if (!provider.isMap(currentNode) || !provider.getPropertyKeys(currentNode).contains(segment.getName())) {
+                    return null;
                 }
-            } else {
-                if (basePath.length() > 1 && (basePath.charAt(1) != '.' && basePath.charAt(1) != '[')) {
-                    throw new IllegalStateException("Expected '.' or '[' as second char in @ relative path, " + basePath);
+                currentNode = provider.getMapValue(currentNode, segment.getName());
+            } else if (segment.isIndex()) {
+                if (!provider.isArray(currentNode) || segment.getIndex() >= provider.length(currentNode)) {
+                    return null;
                 }
+                currentNode = provider.getArrayIndex(currentNode, segment.getIndex());
+            } else {
+                throw new IllegalStateException("Expected normalized path, found " + PathSegment.render(segments));
             }
-            return BasePath.of(cleanPath);
-        }
-
-        boolean hasUpwardParts() {
-            return pathString.contains("^");
-        }
-
-        boolean isAbsolute() {
-            return pathString.startsWith("$");
-        }
-
-        boolean isRelative() {
-            return pathString.startsWith("@");
-        }
-
-        List<String> getUpwardParts() {
-            // after popping up, we can only go downwards.  So start with all the upward movement...
-            String startingPath = pathString.substring(2);
-
-            // and now . or [] starts downwards again...
-            int earliestDownSymbol = indexOfAny(startingPath, '.', '[');
-            String upwards = earliestDownSymbol >= 0 ? startingPath.substring(0, earliestDownSymbol) : startingPath;
-            return Arrays.asList(upwards.split(Pattern.quote("^")));
-        }
-
-        String getDownWardPart() {
-            String startingPath = pathString.substring(2);
-
-            int earliestDownSymbol = indexOfAny(startingPath, '.', '[');
-            return earliestDownSymbol >= 0 ?
-                    removePrefix(startingPath.substring(earliestDownSymbol), ".") : "";
-
         }
+        return currentNode;
+    }
 
-        JsonPath compile() {
-            return JsonPath.compile(pathString);
-        }
+    @Value(staticConstructor = "of")
+    private class Match {
+        String path;
+        String prefix;
     }
 
 }
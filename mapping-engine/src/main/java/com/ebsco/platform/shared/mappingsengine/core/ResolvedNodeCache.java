@@ -0,0 +1,63 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Per document memo of normalized path (i.e. $['a']['b'][0]) to the node found there.  Kept sorted so that a mutation
+ * at a path drops exactly the cached paths at or below it, everything else in the document is still the same node.
+ * <p>
+ * Not thread safe, like the document it belongs to.
+ */
+final class ResolvedNodeCache {
+    private final Object json;
+    private final JsonProvider provider;
+    private final TreeMap<String, Object> nodes = new TreeMap<>();
+
+    ResolvedNodeCache(@NotNull final Object json, @NotNull final JsonProvider provider) {
+        this.json = json;
+        this.provider = provider;
+    }
+
+    /**
+     * The node at the normalized path, or null if it does not exist or is a null value
+     */
+    @Nullable
+    Object read(@NotNull final String normalizedPath) {
+        Object node = nodes.get(normalizedPath);
+        if (node == null) {
+            node = PathUtils.readNormalizedPath(json, normalizedPath, provider);
+            if (node != null) {
+                nodes.put(normalizedPath, node);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Something at or below the normalized path was replaced, added or removed
+     */
+    void invalidate(@NotNull final String normalizedPath) {
+        nodes.subMap(normalizedPath, true, normalizedPath + Character.MAX_VALUE, true).clear();
+    }
+
+    /**
+     * The node at the normalized path was removed, which shifts the items after it if its parent is an array
+     */
+    void invalidateRemoved(@NotNull final String normalizedPath) {
+        List<PathSegment> segments = PathSegment.parseNormalized(normalizedPath);
+        if (segments.isEmpty()) {
+            nodes.clear();
+        } else {
+            invalidate(PathSegment.render(segments, segments.size() - 1));
+        }
+    }
+
+    void invalidateAll() {
+        nodes.clear();
+    }
+}
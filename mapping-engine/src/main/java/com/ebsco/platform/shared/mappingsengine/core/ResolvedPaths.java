@@ -1,17 +1,34 @@
 package com.ebsco.platform.shared.mappingsengine.core;
 
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 
+import java.util.List;
+
 @Value
+@EqualsAndHashCode(exclude = "targetUpdateSegments")
+@ToString(exclude = "targetUpdateSegments")
 public class ResolvedPaths {
     public String sourcePath;
     public String targetBasePath;
     public String targetUpdatePath;
 
+    // the already parsed form of targetUpdatePath when resolved from a TargetPath, so applying it does not parse again
+    @Getter(AccessLevel.PACKAGE)
+    List<PathSegment> targetUpdateSegments;
+
     public ResolvedPaths(final String sourcePath, final String targetBasePath, final String targetUpdatePath) {
+        this(sourcePath, targetBasePath, targetUpdatePath, null);
+    }
+
+    ResolvedPaths(final String sourcePath, final String targetBasePath, final String targetUpdatePath, final List<PathSegment> targetUpdateSegments) {
         this.sourcePath = sourcePath;
         this.targetBasePath = targetBasePath;
         this.targetUpdatePath = targetUpdatePath;
+        this.targetUpdateSegments = targetUpdateSegments;
     }
 
     public static ResolvedPaths of(final String sourcePath, final String targetBasePath, final String targetUpdatePath) {
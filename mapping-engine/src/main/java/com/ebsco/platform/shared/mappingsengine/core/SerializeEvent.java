@@ -0,0 +1,24 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of a mapped document written as output.  Only touched through {@link FlightRecorderEvents}.
+ */
+@Name("com.ebsco.mappingsengine.Serialize")
+@Label("Output Serialization")
+@Category("Mappings Engine")
+@Description("A mapped document serialized for output")
+@StackTrace(false)
+final class SerializeEvent extends Event {
+    @Label("Format")
+    String format;
+
+    @Label("Characters")
+    long characters;
+}
@@ -0,0 +1,65 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+import static com.ebsco.platform.shared.mappingsengine.core.StringUtils.*;
+
+/**
+ * two types of paths:
+ * <p>
+ * absolute:   $.a.b.c[*].d[0].e[?(@.filter)].f
+ * relative:   @^e^d.z
+ * relative:   @.x.y.z
+ * <p>
+ * both can have one update marker '+' in the path indicating that the path to the left must exist, and the
+ * remainder of the path to the right may be inserted.
+ * <p>
+ * absolute:   $a.b.c[*]+d.e.f
+ * relative:   @^y^x+d[0+].e.f
+ * relative:   @.x+y.z
+ * <p>
+ * A target path is parsed (and its JsonPath parts compiled) once, transformers keep the parsed instance
+ * instead of the string so that nothing is re-parsed per document.
+ */
+@Getter
+@EqualsAndHashCode(of = "pathString")
+public final class TargetPath {
+    private final String pathString;
+    private final BasePath basePath;
+    private final String updatePath;
+    @Getter(AccessLevel.PACKAGE)
+    private final List<PathSegment> updateSegments;
+
+    private TargetPath(final String pathString, final BasePath basePath, final String updatePath) {
+        this.pathString = pathString;
+        this.basePath = basePath;
+        this.updatePath = updatePath;
+        this.updateSegments = PathSegment.parseUpdate(updatePath);
+    }
+
+    /**
+     * true if the update part starts directly on an array (i.e. @+[+]), the resolved base path then has to be the
+     * array and not one of its items
+     */
+    boolean updatesArrayInPlace() {
+        return !updateSegments.isEmpty() && updateSegments.get(0).isArrayModifier();
+    }
+
+    @NotNull
+    public static TargetPath fromString(@NotNull final String targetPath) {
+        String cleanPath = targetPath.trim();
+        String basePath = substringBefore(cleanPath, "+", cleanPath);
+        String updatePath = substringAfter(cleanPath, "+", "");
+        return new TargetPath(cleanPath, BasePath.fromString(basePath), updatePath);
+    }
+
+    @Override
+    public String toString() {
+        return pathString;
+    }
+}
@@ -0,0 +1,41 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of one transform step applied to one document, including its testPath.  Only touched
+ * through {@link FlightRecorderEvents}.
+ */
+@Name("com.ebsco.mappingsengine.Transform")
+@Label("Transform Step")
+@Category("Mappings Engine")
+@Description("A transform of the mappings applied to a document")
+@StackTrace(false)
+final class TransformEvent extends Event {
+    @Label("Step")
+    @Description("Position of the transform in the configuration")
+    int step;
+
+    @Label("Id")
+    String id;
+
+    @Label("Type")
+    String type;
+
+    @Label("Skipped")
+    @Description("The testPath matched nothing, so the transform was not applied")
+    boolean skipped;
+
+    @Label("Matches")
+    @Description("Paths found by the queries of the transform")
+    long matches;
+
+    @Label("Updates")
+    @Description("Values set or deleted by the transform")
+    long updates;
+}
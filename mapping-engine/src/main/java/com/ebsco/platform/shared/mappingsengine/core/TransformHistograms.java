@@ -0,0 +1,118 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TransformMetrics} kept in memory, per transform step:  how often it ran or was skipped, the matches and updates
+ * and a histogram of its wall time with power of two buckets (bucket n counts times from 2^n up to 2^(n+1) nanoseconds).
+ * Safe to share between threads and engines, though the steps of different engines end up in the same statistics.
+ */
+public class TransformHistograms implements TransformMetrics {
+    private static final int BUCKETS = 64;
+
+    private final ConcurrentMap<Integer, Step> steps = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(final int step, @NotNull final TransformsConfig transform, final boolean skipped, final long nanos,
+                       final long matches, final long updates) {
+        Step stats = steps.computeIfAbsent(step, it -> new Step(transform));
+        if (skipped) {
+            stats.skipped.increment();
+        } else {
+            stats.applied.increment();
+            stats.matches.add(matches);
+            stats.updates.add(updates);
+        }
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulate(nanos);
+        stats.nanosHistogram.incrementAndGet(bucketOf(nanos));
+    }
+
+    /**
+     * The statistics so far, in the order of the steps
+     */
+    @NotNull
+    public List<TransformStats> snapshot() {
+        List<TransformStats> snapshot = new ArrayList<>();
+        steps.keySet().stream().sorted().forEach(step -> {
+            Step stats = steps.get(step);
+            long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = stats.nanosHistogram.get(i);
+            }
+            snapshot.add(new TransformStats(step, stats.id, stats.type, stats.applied.sum(), stats.skipped.sum(),
+                    stats.matches.sum(), stats.updates.sum(), stats.totalNanos.sum(), stats.maxNanos.get(), histogram));
+        });
+        return snapshot;
+    }
+
+    public void reset() {
+        steps.clear();
+    }
+
+    private static int bucketOf(final long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    private static final class Step {
+        private final String id;
+        private final String type;
+        private final LongAdder applied = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder matches = new LongAdder();
+        private final LongAdder updates = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray nanosHistogram = new AtomicLongArray(BUCKETS);
+
+        private Step(final TransformsConfig transform) {
+            this.id = transform.getId();
+            this.type = transform.getType();
+        }
+    }
+
+    @Value
+    public static class TransformStats {
+        int step;
+        @Nullable
+        String id;
+        String type;
+        long applied;
+        long skipped;
+        long matches;
+        long updates;
+        long totalNanos;
+        long maxNanos;
+        long[] nanosHistogram;
+
+        /**
+         * Upper bound of the bucket holding the given fraction (0.5, 0.99) of the times, 0 if there are none
+         */
+        public long percentileNanos(final double fraction) {
+            long total = 0;
+            for (long count : nanosHistogram) {
+                total += count;
+            }
+            long wanted = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < nanosHistogram.length; i++) {
+                seen += nanosHistogram[i];
+                if (seen > 0 && seen >= wanted) {
+                    return i == 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives a measurement of every transform step of every document an engine processes, set it with
+ * {@link MappingsEngine.MappingsEngineBuilder#metrics(TransformMetrics)}.  {@link TransformHistograms} keeps them in
+ * memory, or implement it to pass them on to a metrics library.
+ * <p>
+ * Called on the thread that processes the document, so with {@link MappingsEngine#processDocuments} from many threads
+ * at once.  With the default {@link #NO_OP} the engine does not measure anything, unless a flight recording has the
+ * {@link FlightRecorderEvents} of the steps enabled.
+ */
+public interface TransformMetrics {
+
+    TransformMetrics NO_OP = (step, transform, skipped, nanos, matches, updates) -> {
+    };
+
+    /**
+     * @param step      position of the transform in the configuration
+     * @param transform its configuration, for its id and type
+     * @param skipped   the testPath matched nothing, so the transform was not applied
+     * @param nanos     wall time of the step, including the testPath
+     * @param matches   paths found by the queries of the transform, its source paths (the testPath not included)
+     * @param updates   values set or deleted by the transform
+     */
+    void record(int step, @NotNull TransformsConfig transform, boolean skipped, long nanos, long matches, long updates);
+}
@@ -3,12 +3,15 @@ package com.ebsco.platform.shared.mappingsengine.core.transformers;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformer;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformerContext;
 import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jayway.jsonpath.JsonPath;
 import lombok.NonNull;
 import lombok.Value;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -29,6 +32,10 @@ public class ConcatJson implements JsonTransformer {
     @NonNull
     private String delimiter;
 
+    private Map<String, JsonPath> compiledFromPaths = new LinkedHashMap<>();
+
+    private TargetPath compiledTargetPath;
+
     @JsonCreator
     public ConcatJson(@NotNull @JsonProperty("fromPaths") List<String> fromPaths,
                       @NotNull @JsonProperty("targetPath") String targetPath,
@@ -36,13 +43,15 @@ public class ConcatJson implements JsonTransformer {
         this.fromPaths = fromPaths;
         this.targetPath = targetPath;
         this.delimiter = delimiter;
+        this.fromPaths.forEach(fromPath -> compiledFromPaths.put(fromPath, JsonPath.compile(fromPath)));
+        this.compiledTargetPath = TargetPath.fromString(this.targetPath);
     }
 
     @Override
     public void apply(@NotNull JsonTransformerContext context) {
         Stream<FromPath2ResolvedTargetPathsList> mappings = fromPaths.stream()
                 .map(fromPath -> FromPath2ResolvedTargetPathsList.of(fromPath,
-                        context.queryAndResolveTargetPaths(fromPath, targetPath, true)));
+                        context.queryAndResolveTargetPaths(compiledFromPaths.get(fromPath), compiledTargetPath, true)));
 
         Map<TargetBasePath2TargetUpdatePath, List<Mapping>> groupedMappings =
                 mappings.flatMap(fromPath2ResolvedTargetPathsList -> fromPath2ResolvedTargetPathsList.getTargetPaths().stream()
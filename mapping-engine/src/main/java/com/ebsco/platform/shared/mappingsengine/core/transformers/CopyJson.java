@@ -1,15 +1,18 @@
 package com.ebsco.platform.shared.mappingsengine.core.transformers;
 
+import com.ebsco.platform.shared.mappingsengine.core.EvaluablePath;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformer;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformerContext;
 import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.jayway.jsonpath.JsonPath;
 import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class CopyJson implements JsonTransformer {
 
@@ -19,21 +22,25 @@ public class CopyJson implements JsonTransformer {
     @NonNull
     private String targetPath;
 
-    private JsonPath compiledSourceJsonPath;
+    private EvaluablePath compiledSourceJsonPath;
+
+    private TargetPath compiledTargetPath;
 
     @JsonCreator
     public CopyJson(@NotNull @JsonProperty("fromPath") String fromPath,
                     @NotNull @JsonProperty("targetPath") String targetPath) {
         this.fromPath = fromPath;
         this.targetPath = targetPath;
-        this.compiledSourceJsonPath = JsonPath.compile(this.fromPath);
+        this.compiledSourceJsonPath = JsonTransformerContext.compileEvaluable(this.fromPath);
+        this.compiledTargetPath = TargetPath.fromString(this.targetPath);
     }
 
     @Override
     public void apply(@NotNull JsonTransformerContext context) {
-        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths(compiledSourceJsonPath, targetPath);
+        Map<String, Object> sourceValues = context.queryForPathsAndValues(compiledSourceJsonPath);
+        List<ResolvedPaths> fromToMapping = context.resolveTargetPaths(compiledTargetPath, new ArrayList<>(sourceValues.keySet()), false);
         fromToMapping.forEach(mapping -> {
-            Object sourceValue = context.queryForValue(mapping.getSourcePath());
+            Object sourceValue = sourceValues.get(mapping.getSourcePath());
             context.applyUpdate(mapping, sourceValue);
         });
     }
@@ -3,6 +3,7 @@ package com.ebsco.platform.shared.mappingsengine.core.transformers;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformer;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformerContext;
 import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -27,6 +28,8 @@ public class DisArrayJson implements JsonTransformer {
 
     private JsonPath compiledSourceJsonPath;
 
+    private TargetPath compiledTargetPath;
+
     private ObjectMapper mapper = new ObjectMapper();
 
     @JsonCreator
@@ -35,13 +38,14 @@ public class DisArrayJson implements JsonTransformer {
         this.fromPath = fromPath;
         this.targetPath = fromPath;
         this.compiledSourceJsonPath = JsonPath.compile(this.fromPath);
+        this.compiledTargetPath = TargetPath.fromString(this.targetPath);
         this.keyField = keyField;
     }
 
     @Override
     public void apply(@NotNull JsonTransformerContext context) {
 
-        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths(compiledSourceJsonPath, targetPath);
+        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths(compiledSourceJsonPath, compiledTargetPath);
         fromToMapping.forEach(mapping -> {
             Object sourceValue = context.queryForValue(mapping.getSourcePath());
             //for cases like "contrib" : [ [ {},{} ], [ {}, {} ]...] "fromPath": "$.contrib[*][*]"
@@ -0,0 +1,228 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column oriented, dictionary encoded lookup table on the heap.  Each column keeps its distinct values once, and one int code per
+ * row into them, instead of a map per row repeating the header keys and the values.  Rows are only ids, a value is
+ * read with {@link #value(int, int)} and is the same String instance for every row that has it.
+ * <p>
+ * Column indexes (value to ascending row ids) are built on first use and then shared, the table is immutable otherwise
+ * and safe to use from many threads.
+ */
+final class HeapLookupTable implements LookupTable {
+    private static final int MISSING = -1;
+
+    private final String[] columnNames;
+    private final Map<String, Integer> columnsByName;
+    private final String[][] dictionaries;
+    private final int[][] codes;
+    private final int rowCount;
+    private final Map<Integer, ColumnIndex> indexes = new ConcurrentHashMap<>();
+
+    private HeapLookupTable(final String[] columnNames, final String[][] dictionaries, final int[][] codes, final int rowCount) {
+        this.columnNames = columnNames;
+        this.dictionaries = dictionaries;
+        this.codes = codes;
+        this.rowCount = rowCount;
+
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < columnNames.length; i++) {
+            columns.putIfAbsent(columnNames[i], i);
+        }
+        this.columnsByName = Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * Read a tab separated table with a header row.  Rows that cannot be parsed, or have more values than the header,
+     * are skipped.  Rows with fewer values are missing the rest.
+     */
+    @NotNull
+    static HeapLookupTable readTsv(@NotNull final Reader contents) throws IOException {
+        CsvMapper mapper = new CsvMapper();
+        mapper.enable(CsvParser.Feature.WRAP_AS_ARRAY);
+        CsvSchema schema = CsvSchema.emptySchema().withColumnSeparator('\t');
+        MappingIterator<String[]> it = mapper.readerFor(String[].class).with(schema).readValues(contents);
+
+        Builder builder = null;
+        while (it.hasNext()) {
+            String[] row;
+            try {
+                row = it.next();
+            } catch (RuntimeException ex) {
+                // nop, we have bad encoding, bad rows, skip those
+                // TODO: the input data is not correctly encoded, and seems to be malformed
+                continue;
+            }
+            if (builder == null) {
+                builder = new Builder(row);
+            } else {
+                builder.addRow(row);
+            }
+        }
+        if (builder == null) {
+            throw new IllegalStateException("Lookup table has no header row");
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int columnIndex(@NotNull final String columnName) {
+        Integer column = columnsByName.get(columnName);
+        return column != null ? column : -1;
+    }
+
+    @NotNull
+    @Override
+    public List<String> columnNames() {
+        return Collections.unmodifiableList(Arrays.asList(columnNames));
+    }
+
+    @Nullable
+    @Override
+    public String value(final int row, final int column) {
+        int code = codes[column][row];
+        return code == MISSING ? null : dictionaries[column][code];
+    }
+
+    /**
+     * The column index is built on first use
+     */
+    @NotNull
+    @Override
+    public int[] rowsMatching(final int column, @NotNull final String value) {
+        ColumnIndex index = index(column);
+        Integer code = index.codes.get(value);
+        return code == null ? NO_ROWS : index.rowsByCode[code];
+    }
+
+    /**
+     * Build the index of a column now, instead of on the first lookup
+     */
+    @Override
+    public void index(@NotNull final String columnName) {
+        int column = columnIndex(columnName);
+        if (column < 0) {
+            throw new IllegalStateException("Lookup table has no column " + columnName + ", found " + columnNames());
+        }
+        index(column);
+    }
+
+    private ColumnIndex index(final int column) {
+        return indexes.computeIfAbsent(column, it -> new ColumnIndex(dictionaries[column], codes[column], rowCount));
+    }
+
+    private static final class ColumnIndex {
+        // dictionary position by value, and the ascending row ids by dictionary position
+        private final Map<String, Integer> codes;
+        private final int[][] rowsByCode;
+
+        private ColumnIndex(final String[] dictionary, final int[] columnCodes, final int rowCount) {
+            this.codes = new HashMap<>(dictionary.length * 2);
+            for (int code = 0; code < dictionary.length; code++) {
+                codes.put(dictionary[code], code);
+            }
+
+            int[] counts = new int[dictionary.length];
+            for (int row = 0; row < rowCount; row++) {
+                if (columnCodes[row] != MISSING) {
+                    counts[columnCodes[row]]++;
+                }
+            }
+            this.rowsByCode = new int[dictionary.length][];
+            for (int code = 0; code < dictionary.length; code++) {
+                rowsByCode[code] = new int[counts[code]];
+                counts[code] = 0;
+            }
+            for (int row = 0; row < rowCount; row++) {
+                int code = columnCodes[row];
+                if (code != MISSING) {
+                    rowsByCode[code][counts[code]++] = row;
+                }
+            }
+        }
+    }
+
+    static final class Builder {
+        private final String[] columnNames;
+        private final List<Map<String, Integer>> dictionaryCodes = new ArrayList<>();
+        private final List<List<String>> dictionaries = new ArrayList<>();
+        private int[][] codes;
+        private int rowCount = 0;
+
+        Builder(@NotNull final String[] header) {
+            this.columnNames = new String[header.length];
+            for (int i = 0; i < header.length; i++) {
+                this.columnNames[i] = header[i].intern();
+                dictionaryCodes.add(new HashMap<>());
+                dictionaries.add(new ArrayList<>());
+            }
+            this.codes = new int[header.length][16];
+        }
+
+        /**
+         * Add a row of values in header order, returns false (and adds nothing) if it has more values than the header
+         */
+        boolean addRow(@NotNull final String[] values) {
+            if (values.length > columnNames.length) {
+                return false;
+            }
+            if (codes.length > 0 && rowCount == codes[0].length) {
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = Arrays.copyOf(codes[i], rowCount * 2);
+                }
+            }
+            for (int column = 0; column < columnNames.length; column++) {
+                codes[column][rowCount] = column < values.length ? encode(column, values[column]) : MISSING;
+            }
+            rowCount++;
+            return true;
+        }
+
+        private int encode(final int column, final String value) {
+            if (value == null) {
+                return MISSING;
+            }
+            Map<String, Integer> columnCodes = dictionaryCodes.get(column);
+            Integer code = columnCodes.get(value);
+            if (code == null) {
+                code = columnCodes.size();
+                columnCodes.put(value, code);
+                dictionaries.get(column).add(value);
+            }
+            return code;
+        }
+
+        @NotNull
+        HeapLookupTable build() {
+            String[][] dictionaryArrays = new String[columnNames.length][];
+            int[][] trimmedCodes = new int[columnNames.length][];
+            for (int column = 0; column < columnNames.length; column++) {
+                dictionaryArrays[column] = dictionaries.get(column).toArray(new String[0]);
+                trimmedCodes[column] = Arrays.copyOf(codes[column], rowCount);
+            }
+            // the value to code maps are only needed while building, indexes make their own for the columns they need
+            return new HeapLookupTable(columnNames, dictionaryArrays, trimmedCodes, rowCount);
+        }
+    }
+}
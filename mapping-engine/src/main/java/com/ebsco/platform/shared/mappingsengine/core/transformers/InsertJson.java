@@ -2,35 +2,60 @@ package com.ebsco.platform.shared.mappingsengine.core.transformers;
 
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformer;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformerContext;
-import com.ebsco.platform.shared.mappingsengine.core.PathUtils;
 import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.json.JsonProvider;
 import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
 
 public class InsertJson implements JsonTransformer {
+    private static final JsonPath ROOT_PATH = JsonPath.compile("$");
+
     @NonNull
     private String targetPath;
 
     @NonNull
     private Object jsonFragment;
 
+    private TargetPath compiledTargetPath;
+
     @JsonCreator
     public InsertJson(@NotNull @JsonProperty("targetPath") String targetPath, @NotNull @JsonProperty("jsonFragment") Object jsonFragment) {
         if (!targetPath.startsWith("$")) throw new IllegalArgumentException("targetPath must be absolute path");
         this.targetPath = targetPath;
         this.jsonFragment = jsonFragment;
+        this.compiledTargetPath = TargetPath.fromString(this.targetPath);
     }
 
     @Override
     public void apply(@NotNull JsonTransformerContext context) {
-        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths("$", targetPath, true);
+        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths(ROOT_PATH, compiledTargetPath, true);
         fromToMapping.forEach(mapping -> {
-            context.applyUpdate(mapping, jsonFragment);
+            // every document (and every target in it) gets its own copy, the configured fragment is never shared
+            context.applyUpdate(mapping, copyOf(jsonFragment, context.getJsonProvider()));
         });
     }
+
+    private Object copyOf(Object node, JsonProvider provider) {
+        if (provider.isMap(node)) {
+            Object copy = provider.createMap();
+            for (String key : provider.getPropertyKeys(node)) {
+                provider.setProperty(copy, key, copyOf(provider.getMapValue(node, key), provider));
+            }
+            return copy;
+        } else if (provider.isArray(node)) {
+            Object copy = provider.createArray();
+            int length = provider.length(node);
+            for (int i = 0; i < length; i++) {
+                provider.setArrayIndex(copy, i, copyOf(provider.getArrayIndex(node, i), provider));
+            }
+            return copy;
+        }
+        return node;
+    }
 }
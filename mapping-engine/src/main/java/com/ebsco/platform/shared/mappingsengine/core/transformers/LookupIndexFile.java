@@ -0,0 +1,182 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-built binary form of a lookup TSV, opened by {@link LookupJson} with a lookupResource of mmap:/path/to/file.
+ * Building it once offline (see the CLI build-lookup-index command) moves the parsing out of engine start up, and as
+ * the file is memory mapped read only, all JVMs on a host share its pages.
+ * <p>
+ * Layout, big endian:
+ * <pre>
+ * header:   int magic, int version, int columnCount, int rowCount,
+ *           per column:  UTF name, long sectionOffset, long sectionLength
+ * section:  int dictionarySize (d)
+ *           int[d + 1]      offsets of the values in the value bytes
+ *           int[rowCount]   dictionary code per row, -1 if the row has no value
+ *           int[d + 1]      offsets in the row ids per code
+ *           int[...]        ascending row ids, grouped by code
+ *           byte[...]       value bytes, UTF-8
+ * </pre>
+ * The dictionary of every column is sorted by the unsigned bytes of its values, so a value is found by binary search.
+ */
+@UtilityClass
+public class LookupIndexFile {
+    static final int MAGIC = 0x4D454C4B;
+    static final int VERSION = 1;
+    static final int MISSING = -1;
+
+    /**
+     * Read the lookup TSV (file: or classpath:, gzipped if it ends with .gz) and write it as an index file
+     */
+    public void build(@NotNull final String lookupResource, @NotNull final File indexFile) throws IOException {
+        HeapLookupTable table;
+        try (Reader contents = LookupJson.openLookupResource(lookupResource)) {
+            table = HeapLookupTable.readTsv(contents);
+        }
+        write(table, indexFile);
+    }
+
+    void write(@NotNull final LookupTable table, @NotNull final File indexFile) throws IOException {
+        List<String> columnNames = table.columnNames();
+        List<ColumnSection> sections = new ArrayList<>(columnNames.size());
+        for (int column = 0; column < columnNames.size(); column++) {
+            sections.add(new ColumnSection(table, column));
+        }
+
+        // the header has a fixed size for the names, so write it once to find where the sections start
+        long offset = header(table, sections, new long[sections.size()]).length;
+        long[] offsets = new long[sections.size()];
+        for (int i = 0; i < sections.size(); i++) {
+            offsets[i] = offset;
+            offset += sections.get(i).length();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16))) {
+            out.write(header(table, sections, offsets));
+            for (ColumnSection section : sections) {
+                section.writeTo(out);
+            }
+        }
+    }
+
+    private byte[] header(final LookupTable table, final List<ColumnSection> sections, final long[] offsets) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sections.size());
+        out.writeInt(table.rowCount());
+        List<String> columnNames = table.columnNames();
+        for (int i = 0; i < sections.size(); i++) {
+            out.writeUTF(columnNames.get(i));
+            out.writeLong(offsets[i]);
+            out.writeLong(sections.get(i).length());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    int compareUnsigned(final byte[] left, final byte[] right) {
+        int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (left[i] & 0xFF) - (right[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return left.length - right.length;
+    }
+
+    private static final class ColumnSection {
+        private final byte[][] dictionary;
+        private final int[] codes;
+        private final int[] rowOffsets;
+        private final int[] rows;
+        private final int valueBytes;
+
+        private ColumnSection(final LookupTable table, final int column) {
+            int rowCount = table.rowCount();
+            Map<String, byte[]> distinct = new HashMap<>();
+            for (int row = 0; row < rowCount; row++) {
+                String value = table.value(row, column);
+                if (value != null) {
+                    distinct.computeIfAbsent(value, it -> it.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            this.dictionary = distinct.values().toArray(new byte[0][]);
+            Arrays.sort(dictionary, LookupIndexFile::compareUnsigned);
+
+            Map<String, Integer> codesByValue = new HashMap<>(dictionary.length * 2);
+            int bytes = 0;
+            for (int code = 0; code < dictionary.length; code++) {
+                codesByValue.put(new String(dictionary[code], StandardCharsets.UTF_8), code);
+                bytes += dictionary[code].length;
+            }
+            this.valueBytes = bytes;
+
+            this.codes = new int[rowCount];
+            this.rowOffsets = new int[dictionary.length + 1];
+            int present = 0;
+            for (int row = 0; row < rowCount; row++) {
+                String value = table.value(row, column);
+                codes[row] = value == null ? MISSING : codesByValue.get(value);
+                if (value != null) {
+                    rowOffsets[codes[row] + 1]++;
+                    present++;
+                }
+            }
+            for (int code = 0; code < dictionary.length; code++) {
+                rowOffsets[code + 1] += rowOffsets[code];
+            }
+            this.rows = new int[present];
+            int[] next = Arrays.copyOf(rowOffsets, dictionary.length);
+            for (int row = 0; row < rowCount; row++) {
+                if (codes[row] != MISSING) {
+                    rows[next[codes[row]]++] = row;
+                }
+            }
+        }
+
+        private long length() {
+            return 4L + 4L * (dictionary.length + 1) + 4L * codes.length + 4L * rowOffsets.length + 4L * rows.length + valueBytes;
+        }
+
+        private void writeTo(final DataOutputStream out) throws IOException {
+            out.writeInt(dictionary.length);
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] value : dictionary) {
+                offset += value.length;
+                out.writeInt(offset);
+            }
+            writeInts(out, codes);
+            writeInts(out, rowOffsets);
+            writeInts(out, rows);
+            for (byte[] value : dictionary) {
+                out.write(value);
+            }
+        }
+
+        private static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+}
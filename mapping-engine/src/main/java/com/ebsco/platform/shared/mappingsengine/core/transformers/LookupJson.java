@@ -2,24 +2,50 @@ package com.ebsco.platform.shared.mappingsengine.core.transformers;
 
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformer;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformerContext;
+import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.MappingIterator;
-import com.fasterxml.jackson.dataformat.csv.CsvMapper;
-import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.json.JsonProvider;
 import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.zip.GZIPInputStream;
 
-public class LookupJson implements JsonTransformer {
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Looks up rows of a TSV table by the values of one or more filters, and applies the jsonTemplate (with {{column}}
+ * placeholders filled from each matching row) at the target.  A filter takes its values either from lookupValues, or
+ * from a fromPath that is absolute or relative (@) to each resolved target node.  Rows must match every filter, and
+ * any one of the values of a filter.
+ * <p>
+ * Modes:  insert applies one fragment per matching row at the target, replace sets the target to the fragment (or a
+ * list of them if several rows match), and merge sets the fragment properties on the existing target object (an
+ * update path after a '+' has nothing to merge into, so it is applied as insert).
+ * <p>
+ * The table is held by column and dictionary encoded ({@link LookupTable}), and every lookupField of the filters is
+ * hash indexed when it is loaded, so matching costs the number of filter values and matching rows, not the size of
+ * the table.
+ * <p>
+ * A lookupResource of mmap:/path/to/file opens an index file made by {@link LookupIndexFile#build(String, File)} in
+ * place, without parsing or copying it to the heap.
+ * <p>
+ * Tables are shared with every other LookupJson in the JVM using the same resource ({@link LookupTableRegistry}),
+ * close the transform (the engine does, when it is closed) to let go of it.
+ */
+public class LookupJson implements JsonTransformer, AutoCloseable {
+    private static final JsonPath ROOT_PATH = JsonPath.compile("$");
     @NonNull
     private String lookupResource;
 
@@ -37,7 +63,16 @@ public class LookupJson implements JsonTransformer {
 
     @NotNull
     @JsonIgnore
-    private List<Map<String, String>> lookupRecords;
+    private LookupTable lookupTable;
+
+    @JsonIgnore
+    private LookupTableRegistry.Lease lookupTableLease;
+
+    private LookupTemplate compiledTemplate;
+
+    private TargetPath compiledTargetPath;
+
+    private List<CompiledFilter> compiledFilters;
 
     @JsonCreator
     public LookupJson(@NotNull @JsonProperty("lookupResource") String lookupResource,
@@ -51,49 +86,30 @@ public class LookupJson implements JsonTransformer {
         this.targetPath = targetPath;
         this.jsonTemplate = jsonTemplate;
 
+        this.lookupTableLease = acquireTable(this.lookupResource);
         try {
-            InputStream lookupContents = null;
-            if (this.lookupResource.startsWith("file:")) {
-                String filename = this.lookupResource.substring(5);
-                lookupContents = new FileInputStream(new File(filename));
-            } else if (this.lookupResource.startsWith("classpath:")) {
-                String filename = this.lookupResource.substring(10);
-                lookupContents = Thread.currentThread().getContextClassLoader().getResourceAsStream(filename);
-                if (lookupContents == null) {
-                    lookupContents = ClassLoader.getSystemResourceAsStream(filename);
-                }
-                if (lookupContents == null) {
-                    lookupContents = getClass().getResourceAsStream(filename);
-                }
-                if (lookupContents == null) {
-                    throw new IllegalStateException("Lookup resource not found in classpath: " + this.lookupResource);
-                }
-            } else {
-                throw new IllegalStateException("Unexpected protocol for lookup file (expected one of ['file', 'classpath']).");
-            }
+            this.lookupTable = lookupTableLease.getTable();
 
-            if (this.lookupResource.endsWith(".gz")) {
-                lookupContents = new GZIPInputStream(lookupContents);
-            }
+            this.compiledTargetPath = TargetPath.fromString(this.targetPath);
+            this.compiledFilters = this.filters.stream().map(filter -> new CompiledFilter(filter, lookupTable)).collect(toList());
+            this.compiledTemplate = new LookupTemplate(this.jsonTemplate, lookupTable);
+        } catch (RuntimeException ex) {
+            // a transform that failed to build is never closed, so let go of the table here
+            lookupTableLease.close();
+            throw ex;
+        }
+    }
 
-            // TODO: the input data is not correctly encoded, and seems to be malformed
-            Reader contentsReader = new InputStreamReader(lookupContents, "UTF-8");
-
-            CsvMapper mapper = new CsvMapper();
-            CsvSchema schema = CsvSchema.emptySchema().withColumnSeparator('\t').withHeader();
-            MappingIterator<Map<String,String>> it = mapper.readerFor(Map.class)
-                    .with(schema)
-                    .readValues(contentsReader);
-            lookupRecords = new ArrayList<>();
-            while (it.hasNext()) {
-                try {
-                    Map<String, String> rowAsMap = it.next();
-                    lookupRecords.add(rowAsMap);
-                } catch (RuntimeException ex) {
-                    // nop, we have bad encoding, bad rows, skip those
-                    // TODO: the input data is not correctly encoded, and seems to be malformed
+    private static LookupTableRegistry.Lease acquireTable(final String lookupResource) {
+        try {
+            return LookupTableRegistry.acquire(lookupResource, () -> {
+                if (lookupResource.startsWith("mmap:")) {
+                    return MappedLookupTable.open(new File(lookupResource.substring(5)));
                 }
-            }
+                try (Reader contentsReader = openLookupResource(lookupResource)) {
+                    return HeapLookupTable.readTsv(contentsReader);
+                }
+            });
         } catch (IOException ex) {
             throw new IllegalStateException("Error reading lookup file: " + ex.getMessage());
         } catch (RuntimeException ex) {
@@ -101,9 +117,171 @@ public class LookupJson implements JsonTransformer {
         }
     }
 
+    /**
+     * Open a file: or classpath: lookup TSV, gunzipped if the name ends with .gz
+     */
+    static Reader openLookupResource(final String lookupResource) throws IOException {
+        InputStream lookupContents = openLookupStream(lookupResource);
+        if (lookupResource.endsWith(".gz")) {
+            lookupContents = new GZIPInputStream(lookupContents);
+        }
+
+        // TODO: the input data is not correctly encoded, and seems to be malformed
+        return new InputStreamReader(lookupContents, "UTF-8");
+    }
+
+    /**
+     * The bytes of a file: or classpath: lookup resource as they are stored
+     */
+    static InputStream openLookupStream(final String lookupResource) throws IOException {
+        InputStream lookupContents = null;
+        if (lookupResource.startsWith("file:")) {
+            String filename = lookupResource.substring(5);
+            lookupContents = new FileInputStream(new File(filename));
+        } else if (lookupResource.startsWith("classpath:")) {
+            String filename = lookupResource.substring(10);
+            lookupContents = Thread.currentThread().getContextClassLoader().getResourceAsStream(filename);
+            if (lookupContents == null) {
+                lookupContents = ClassLoader.getSystemResourceAsStream(filename);
+            }
+            if (lookupContents == null) {
+                lookupContents = LookupJson.class.getResourceAsStream(filename);
+            }
+            if (lookupContents == null) {
+                throw new IllegalStateException("Lookup resource not found in classpath: " + lookupResource);
+            }
+        } else {
+            throw new IllegalStateException("Unexpected protocol for lookup file (expected one of ['file', 'classpath', 'mmap']).");
+        }
+        return lookupContents;
+    }
+
+    /**
+     * Let go of the shared lookup table
+     */
+    @Override
+    public void close() {
+        lookupTableLease.close();
+    }
+
     @Override
     public void apply(@NotNull JsonTransformerContext context) {
-        // TODO, no Kotlin implementation
+        List<ResolvedPaths> targets = context.queryAndResolveTargetPaths(ROOT_PATH, compiledTargetPath, true);
+        JsonProvider provider = context.getJsonProvider();
+        targets.stream().filter(target -> !target.getTargetBasePath().isEmpty()).forEach(target -> {
+            int[] rows = matchingRows(context, target.getTargetBasePath());
+            if (rows.length == 0) {
+                return;
+            }
+            List<Object> fragments = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                fragments.add(compiledTemplate.render(lookupTable, row, provider));
+            }
+            applyFragments(context, target, fragments, provider);
+        });
+    }
+
+    private int[] matchingRows(JsonTransformerContext context, String targetNodePath) {
+        int[] matched = null;
+        for (CompiledFilter filter : compiledFilters) {
+            List<int[]> candidates = new ArrayList<>();
+            for (String value : filter.valuesFor(context, targetNodePath)) {
+                int[] rows = lookupTable.rowsMatching(filter.column, value);
+                if (rows.length > 0) {
+                    candidates.add(rows);
+                }
+            }
+            int[] filterRows = union(candidates);
+            matched = matched == null ? filterRows : intersect(matched, filterRows);
+            if (matched.length == 0) {
+                return LookupTable.NO_ROWS;
+            }
+        }
+        return matched == null ? LookupTable.NO_ROWS : matched;
+    }
+
+    private void applyFragments(JsonTransformerContext context, ResolvedPaths target, List<Object> fragments, JsonProvider provider) {
+        boolean updatesExisting = target.getTargetUpdatePath().isEmpty();
+        if (mode == LookupApplyModes.merge && updatesExisting) {
+            Object existing = context.queryForValues(target.getTargetBasePath()).stream().findFirst().orElse(null);
+            if (existing == null || !provider.isMap(existing)) {
+                throw new IllegalStateException("Lookup merge expected an object at " + target.getTargetBasePath());
+            }
+            fragments.stream().filter(provider::isMap).forEach(fragment -> provider.getPropertyKeys(fragment).forEach(key ->
+                    provider.setProperty(existing, key, provider.getMapValue(fragment, key))));
+            // changed in place, this lets the context know
+            context.applyUpdate(target, existing);
+        } else if (mode == LookupApplyModes.replace) {
+            context.applyUpdate(target, fragments.size() == 1 ? fragments.get(0) : fragments);
+        } else {
+            fragments.forEach(fragment -> context.applyUpdate(target, fragment));
+        }
+    }
+
+    private static int[] union(List<int[]> sortedRows) {
+        if (sortedRows.isEmpty()) {
+            return LookupTable.NO_ROWS;
+        } else if (sortedRows.size() == 1) {
+            return sortedRows.get(0);
+        }
+        return sortedRows.stream().flatMapToInt(Arrays::stream).sorted().distinct().toArray();
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] result = new int[Math.min(left.length, right.length)];
+        int i = 0, j = 0, count = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static class CompiledFilter {
+        private final int column;
+        private final List<String> lookupValues;
+        private final JsonPath absolutePath;
+        private final TargetPath relativePath;
+
+        private CompiledFilter(LookupFilter filter, LookupTable table) {
+            // fail here for a field the table does not have, and index the column while loading
+            table.index(filter.lookupField);
+            this.column = table.columnIndex(filter.lookupField);
+            this.lookupValues = filter.lookupValues != null ? filter.lookupValues : Collections.emptyList();
+            if (filter.fromPath == null) {
+                this.absolutePath = null;
+                this.relativePath = null;
+            } else if (filter.fromPath.trim().startsWith("@")) {
+                this.absolutePath = null;
+                this.relativePath = TargetPath.fromString(filter.fromPath);
+            } else {
+                this.absolutePath = JsonPath.compile(filter.fromPath);
+                this.relativePath = null;
+            }
+        }
+
+        private List<String> valuesFor(JsonTransformerContext context, String targetNodePath) {
+            if (absolutePath == null && relativePath == null) {
+                return lookupValues;
+            }
+            List<Object> found = new ArrayList<>();
+            if (absolutePath != null) {
+                found.addAll(context.queryForValues(absolutePath));
+            } else {
+                context.resolveTargetPaths(relativePath, Collections.singletonList(targetNodePath), true).stream()
+                        .map(ResolvedPaths::getTargetBasePath)
+                        .filter(path -> !path.isEmpty())
+                        .forEach(path -> found.addAll(context.queryForValues(path)));
+            }
+            return found.stream().filter(Objects::nonNull).map(Object::toString).collect(toList());
+        }
     }
 
     public enum LookupApplyModes {
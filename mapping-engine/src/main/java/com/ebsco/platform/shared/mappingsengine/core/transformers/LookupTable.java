@@ -0,0 +1,41 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Read only table of {@link LookupJson}, rows are ids from 0 to rowCount and columns are positions in the header.
+ * Implementations are immutable and safe to use from many threads.
+ */
+interface LookupTable {
+    int[] NO_ROWS = new int[0];
+
+    int rowCount();
+
+    /**
+     * The position of the named column, or -1 if the table has no such column
+     */
+    int columnIndex(@NotNull String columnName);
+
+    @NotNull
+    List<String> columnNames();
+
+    /**
+     * The value of a row in a column, or null if the row was missing it
+     */
+    @Nullable
+    String value(int row, int column);
+
+    /**
+     * Ascending row ids that have the value in the column
+     */
+    @NotNull
+    int[] rowsMatching(int column, @NotNull String value);
+
+    /**
+     * Get the column ready for {@link #rowsMatching(int, String)}, fails if the table has no such column
+     */
+    void index(@NotNull String columnName);
+}
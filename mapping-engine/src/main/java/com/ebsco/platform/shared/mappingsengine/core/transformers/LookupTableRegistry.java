@@ -0,0 +1,150 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import lombok.Value;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide registry of loaded lookup tables, so that every {@link LookupJson} (of any engine, or StreamSets
+ * processor instance, in the JVM) using the same table shares one copy of it.  Tables are keyed by the resource and a
+ * hash of its contents, so a file that changed is loaded again rather than served stale, and reference counted so that
+ * a table is dropped once the last {@link Lease} on it is closed.
+ * <p>
+ * For mmap: index files the size and modification time stand in for the content hash, reading the whole file to hash
+ * it would undo the point of mapping it.
+ */
+final class LookupTableRegistry {
+    private static final Map<Key, Entry> TABLES = new HashMap<>();
+
+    private LookupTableRegistry() {
+    }
+
+    interface Loader {
+        LookupTable load() throws IOException;
+    }
+
+    /**
+     * A reference to a shared table, close it when the table is no longer needed
+     */
+    static final class Lease implements AutoCloseable {
+        private final Key key;
+        private final Entry entry;
+        private boolean closed = false;
+
+        private Lease(final Key key, final Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @NotNull
+        LookupTable getTable() {
+            return entry.table;
+        }
+
+        @Override
+        public void close() {
+            synchronized (TABLES) {
+                if (!closed) {
+                    closed = true;
+                    release(key, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * A lease on the table of the lookupResource, loaded with the loader only if no one holds it already
+     */
+    @NotNull
+    static Lease acquire(@NotNull final String lookupResource, @NotNull final Loader loader) throws IOException {
+        Key key = keyOf(lookupResource);
+        Entry entry;
+        synchronized (TABLES) {
+            entry = TABLES.computeIfAbsent(key, it -> new Entry());
+            entry.references++;
+        }
+
+        // loaded outside the registry lock, only others waiting on the same table wait for it
+        try {
+            synchronized (entry) {
+                if (entry.table == null) {
+                    entry.table = loader.load();
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            synchronized (TABLES) {
+                release(key, entry);
+            }
+            throw ex;
+        }
+        return new Lease(key, entry);
+    }
+
+    /**
+     * How many leases are open on the table of the lookupResource, as it is now
+     */
+    static int referenceCount(@NotNull final String lookupResource) throws IOException {
+        Key key = keyOf(lookupResource);
+        synchronized (TABLES) {
+            Entry entry = TABLES.get(key);
+            return entry != null ? entry.references : 0;
+        }
+    }
+
+    private static void release(final Key key, final Entry entry) {
+        entry.references--;
+        if (entry.references <= 0 && TABLES.get(key) == entry) {
+            TABLES.remove(key);
+        }
+    }
+
+    private static Key keyOf(final String lookupResource) throws IOException {
+        if (lookupResource.startsWith("mmap:")) {
+            File file = new File(lookupResource.substring(5)).getCanonicalFile();
+            return new Key("mmap:" + file.getPath(), file.length() + "@" + file.lastModified());
+        } else if (lookupResource.startsWith("file:")) {
+            File file = new File(lookupResource.substring(5)).getCanonicalFile();
+            return new Key("file:" + file.getPath(), contentHash(lookupResource));
+        }
+        return new Key(lookupResource, contentHash(lookupResource));
+    }
+
+    private static String contentHash(final String lookupResource) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available: " + ex.getMessage());
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream contents = new DigestInputStream(LookupJson.openLookupStream(lookupResource), digest)) {
+            while (contents.read(buffer) >= 0) {
+                // reading is hashing
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Value
+    private static class Key {
+        String resource;
+        String contentHash;
+    }
+
+    private static final class Entry {
+        private int references = 0;
+        private volatile LookupTable table;
+    }
+}
@@ -0,0 +1,105 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A jsonTemplate of {@link LookupJson} compiled against the columns of its table.  The {{column}} placeholders are
+ * found and resolved to column positions once, rendering a row only copies the structure and joins the strings.
+ */
+final class LookupTemplate {
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{([^}]+)}}");
+
+    private final Node root;
+
+    LookupTemplate(@NotNull final Object template, @NotNull final LookupTable table) {
+        this.root = compile(template, table);
+    }
+
+    /**
+     * A new fragment for the row, placeholders of columns the table (or the row) does not have become empty strings
+     */
+    Object render(final LookupTable table, final int row, final JsonProvider provider) {
+        return root.render(table, row, provider);
+    }
+
+    private static Node compile(final Object template, final LookupTable table) {
+        if (template instanceof Map) {
+            Map<String, Node> properties = new LinkedHashMap<>();
+            ((Map<?, ?>) template).forEach((key, value) -> properties.put(key.toString(), compile(value, table)));
+            return (t, row, provider) -> {
+                Object result = provider.createMap();
+                properties.forEach((key, node) -> provider.setProperty(result, key, node.render(t, row, provider)));
+                return result;
+            };
+        } else if (template instanceof List) {
+            List<Node> items = new ArrayList<>();
+            ((List<?>) template).forEach(item -> items.add(compile(item, table)));
+            return (t, row, provider) -> {
+                Object result = provider.createArray();
+                for (int i = 0; i < items.size(); i++) {
+                    provider.setArrayIndex(result, i, items.get(i).render(t, row, provider));
+                }
+                return result;
+            };
+        } else if (template instanceof String) {
+            return compileString((String) template, table);
+        }
+        return (t, row, provider) -> template;
+    }
+
+    private static Node compileString(final String template, final LookupTable table) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> columns = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(template.substring(last, matcher.start()));
+            columns.add(table.columnIndex(matcher.group(1).trim()));
+            last = matcher.end();
+        }
+        if (columns.isEmpty()) {
+            return (t, row, provider) -> template;
+        }
+        literals.add(template.substring(last));
+
+        if (columns.size() == 1 && literals.get(0).isEmpty() && literals.get(1).isEmpty()) {
+            // a lone placeholder is the stored value itself, nothing to join
+            int column = columns.get(0);
+            if (column < 0) {
+                return (t, row, provider) -> "";
+            }
+            return (t, row, provider) -> {
+                String value = t.value(row, column);
+                return value != null ? value : "";
+            };
+        }
+
+        String[] literalParts = literals.toArray(new String[0]);
+        int[] columnIndexes = columns.stream().mapToInt(Integer::intValue).toArray();
+        return (t, row, provider) -> {
+            StringBuilder sb = new StringBuilder(literalParts[0]);
+            for (int i = 0; i < columnIndexes.length; i++) {
+                int column = columnIndexes[i];
+                String value = column >= 0 ? t.value(row, column) : null;
+                if (value != null) {
+                    sb.append(value);
+                }
+                sb.append(literalParts[i + 1]);
+            }
+            return sb.toString();
+        };
+    }
+
+    @FunctionalInterface
+    private interface Node {
+        Object render(LookupTable table, int row, JsonProvider provider);
+    }
+}
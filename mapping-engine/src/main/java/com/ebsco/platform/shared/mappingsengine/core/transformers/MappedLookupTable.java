@@ -0,0 +1,201 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link LookupIndexFile} mapped read only into memory, one mapping per column.  Nothing is copied to the heap when
+ * it is opened, values and row ids are read from the mapping when asked for.  Only absolute reads are used, so one
+ * instance can be shared by many threads.
+ * <p>
+ * The mappings are released when the table is garbage collected, the JDK has no way to unmap them sooner.
+ */
+final class MappedLookupTable implements LookupTable {
+    private final List<String> columnNames;
+    private final Map<String, Integer> columnsByName;
+    private final int rowCount;
+    private final Column[] columns;
+
+    private MappedLookupTable(final List<String> columnNames, final int rowCount, final Column[] columns) {
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.rowCount = rowCount;
+        this.columns = columns;
+
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            byName.putIfAbsent(columnNames.get(i), i);
+        }
+        this.columnsByName = Collections.unmodifiableMap(byName);
+    }
+
+    @NotNull
+    static MappedLookupTable open(@NotNull final File indexFile) throws IOException {
+        List<String> names = new ArrayList<>();
+        long[] offsets;
+        long[] lengths;
+        int rowCount;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != LookupIndexFile.MAGIC) {
+                throw new IllegalStateException("Not a lookup index file: " + indexFile.getAbsolutePath());
+            }
+            int version = in.readInt();
+            if (version != LookupIndexFile.VERSION) {
+                throw new IllegalStateException("Unsupported lookup index file version " + version + ": " + indexFile.getAbsolutePath());
+            }
+            int columnCount = in.readInt();
+            rowCount = in.readInt();
+            offsets = new long[columnCount];
+            lengths = new long[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                names.add(in.readUTF());
+                offsets[i] = in.readLong();
+                lengths[i] = in.readLong();
+            }
+        }
+
+        Column[] columns = new Column[names.size()];
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "r"); FileChannel channel = file.getChannel()) {
+            for (int i = 0; i < columns.length; i++) {
+                if (lengths[i] > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Lookup index column " + names.get(i) + " is over 2GB: " + indexFile.getAbsolutePath());
+                }
+                // the mapping stays valid after the channel is closed
+                columns[i] = new Column(channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i]), rowCount);
+            }
+        }
+        return new MappedLookupTable(names, rowCount, columns);
+    }
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int columnIndex(@NotNull final String columnName) {
+        Integer column = columnsByName.get(columnName);
+        return column != null ? column : -1;
+    }
+
+    @NotNull
+    @Override
+    public List<String> columnNames() {
+        return columnNames;
+    }
+
+    @Nullable
+    @Override
+    public String value(final int row, final int column) {
+        Column col = columns[column];
+        int code = col.code(row);
+        return code == LookupIndexFile.MISSING ? null : col.value(code);
+    }
+
+    @NotNull
+    @Override
+    public int[] rowsMatching(final int column, @NotNull final String value) {
+        Column col = columns[column];
+        int code = col.find(value.getBytes(StandardCharsets.UTF_8));
+        return code < 0 ? NO_ROWS : col.rows(code);
+    }
+
+    /**
+     * The file is already indexed, only checks the column exists
+     */
+    @Override
+    public void index(@NotNull final String columnName) {
+        if (columnIndex(columnName) < 0) {
+            throw new IllegalStateException("Lookup table has no column " + columnName + ", found " + columnNames);
+        }
+    }
+
+    private static final class Column {
+        private final ByteBuffer buffer;
+        private final int dictionarySize;
+        private final int valueOffsetsAt;
+        private final int codesAt;
+        private final int rowOffsetsAt;
+        private final int rowsAt;
+        private final int valuesAt;
+
+        private Column(final ByteBuffer buffer, final int rowCount) {
+            this.buffer = buffer;
+            this.dictionarySize = buffer.getInt(0);
+            this.valueOffsetsAt = 4;
+            this.codesAt = valueOffsetsAt + 4 * (dictionarySize + 1);
+            this.rowOffsetsAt = codesAt + 4 * rowCount;
+            this.rowsAt = rowOffsetsAt + 4 * (dictionarySize + 1);
+            this.valuesAt = rowsAt + 4 * buffer.getInt(rowOffsetsAt + 4 * dictionarySize);
+        }
+
+        private int code(final int row) {
+            return buffer.getInt(codesAt + 4 * row);
+        }
+
+        private String value(final int code) {
+            int start = buffer.getInt(valueOffsetsAt + 4 * code);
+            int end = buffer.getInt(valueOffsetsAt + 4 * (code + 1));
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(valuesAt + start + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int[] rows(final int code) {
+            int start = buffer.getInt(rowOffsetsAt + 4 * code);
+            int end = buffer.getInt(rowOffsetsAt + 4 * (code + 1));
+            int[] rows = new int[end - start];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = buffer.getInt(rowsAt + 4 * (start + i));
+            }
+            return rows;
+        }
+
+        // binary search of the sorted dictionary, the code of the value or -1
+        private int find(final byte[] value) {
+            int low = 0;
+            int high = dictionarySize - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, value);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private int compare(final int code, final byte[] value) {
+            int start = valuesAt + buffer.getInt(valueOffsetsAt + 4 * code);
+            int length = valuesAt + buffer.getInt(valueOffsetsAt + 4 * (code + 1)) - start;
+            int common = Math.min(length, value.length);
+            for (int i = 0; i < common; i++) {
+                int diff = (buffer.get(start + i) & 0xFF) - (value[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return length - value.length;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.ebsco.platform.shared.mappingsengine.core.transformers;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformer;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformerContext;
 import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -18,11 +19,15 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
 public class MultiSelectJMESJson implements JsonTransformer {
+    private static final Pattern FIELD_NAME = Pattern.compile("\"[a-z-]+\"");
+
     // The first thing you need is a runtime. These objects can compile expressions
 // and they are specific to the kind of structure you want to search in.
 // For most purposes you want the Jackson runtime, it can search in JsonNode
@@ -38,14 +43,17 @@ public class MultiSelectJMESJson implements JsonTransformer {
     @NonNull
     private String filterExpression;
 
-    private Expression<JsonNode> jsonNodeExpression;
+    // the expression for input item i has every digit of filterExpression replaced by i (item 0 uses it as is),
+    // compiled once per index and shared by every document and thread
+    private final ConcurrentMap<Integer, Expression<JsonNode>> expressionsByIndex = new ConcurrentHashMap<>();
 
-    private JsonPath compiledSourceJsonPath;
+    private final List<String> fieldNames = new ArrayList<>();
 
-    private ObjectMapper mapper = new ObjectMapper();
+    private JsonPath compiledSourceJsonPath;
 
+    private TargetPath compiledTargetPath;
 
-    private ArrayNode arrayNode = mapper.createArrayNode();
+    private ObjectMapper mapper = new ObjectMapper();
 
 
     @JsonCreator
@@ -55,45 +63,48 @@ public class MultiSelectJMESJson implements JsonTransformer {
         this.fromPath = fromPath;
         this.targetPath = targetPath;
         this.compiledSourceJsonPath = JsonPath.compile(this.fromPath);
+        this.compiledTargetPath = TargetPath.fromString(this.targetPath);
         this.filterExpression = filterExpression;
+
+        Matcher matcher = FIELD_NAME.matcher(filterExpression);
+        while (matcher.find()) {
+            fieldNames.add(matcher.group().replace("\"", ""));
+        }
     }
 
     @Override
     public void apply(@NotNull JsonTransformerContext context) {
-        Object sourceValue = context.queryForValue(fromPath);
+        Object sourceValue = context.queryForValue(compiledSourceJsonPath);
         JsonNode input = mapper.convertValue(sourceValue, JsonNode.class);
 
-        List<String> allMatches = new ArrayList<String>();
-        Pattern pattern = Pattern.compile("\"[a-z-]+\"");
-        Matcher matcher = pattern.matcher(filterExpression);
-        while (matcher.find()) {
-            allMatches.add(matcher.group().replace("\"", ""));
-        }
         //check if any fields ara missing in the input, in order not to brake array structure
         for (int i = 0; i < input.size(); i++) {
-            for (int j = 0; j < allMatches.size(); j++) {
-                if (input.get(i).findValue(allMatches.get(j)) == null) {
+            for (int j = 0; j < fieldNames.size(); j++) {
+                if (input.get(i).findValue(fieldNames.get(j)) == null) {
                     ObjectNode jNode = ((ArrayNode) input.get(i)).addObject();
-                    jNode.put(allMatches.get(j), "");
+                    jNode.put(fieldNames.get(j), "");
                 }
             }
         }
 
+        // the result belongs to this document only
+        ArrayNode arrayNode = mapper.createArrayNode();
         for (int i = 0; i < input.size(); i++) {
-            if (i > 0) {
-                filterExpression = filterExpression.replaceAll("\\d", String.valueOf(i));
-            }
-            // Expressions need to be compiled before you can search. Compiled expressions
-            // are reusable and thread safe. Compile your expressions once, just like database
-            // prepared statements.
-            jsonNodeExpression = jmespath.compile(filterExpression);
             // Finally this is how you search a structure. There's really not much more to it.
-            JsonNode result = jsonNodeExpression.search(input);
+            JsonNode result = expressionFor(i).search(input);
             arrayNode.add(result);
         }
-        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths(compiledSourceJsonPath, targetPath);
+        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths(compiledSourceJsonPath, compiledTargetPath);
         fromToMapping.forEach(mapping -> {
             context.applyUpdate(mapping, arrayNode);
         });
     }
+
+    private Expression<JsonNode> expressionFor(int index) {
+        // Expressions need to be compiled before you can search. Compiled expressions
+        // are reusable and thread safe. Compile your expressions once, just like database
+        // prepared statements.
+        return expressionsByIndex.computeIfAbsent(index, i -> jmespath.compile(
+                i == 0 ? filterExpression : filterExpression.replaceAll("\\d", String.valueOf(i))));
+    }
 }
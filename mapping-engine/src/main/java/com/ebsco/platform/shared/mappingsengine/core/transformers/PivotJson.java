@@ -1,17 +1,20 @@
 package com.ebsco.platform.shared.mappingsengine.core.transformers;
 
+import com.ebsco.platform.shared.mappingsengine.core.EvaluablePath;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformer;
 import com.ebsco.platform.shared.mappingsengine.core.JsonTransformerContext;
 import com.ebsco.platform.shared.mappingsengine.core.ResolvedPaths;
+import com.ebsco.platform.shared.mappingsengine.core.TargetPath;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.json.JsonProvider;
 import lombok.NonNull;
 import lombok.val;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -28,7 +31,9 @@ public class PivotJson implements JsonTransformer {
     @NonNull
     private String valueField;
 
-    private JsonPath compiledSourceJsonPath;
+    private EvaluablePath compiledSourceJsonPath;
+
+    private TargetPath compiledTargetPath;
 
     @JsonCreator
     public PivotJson(@NotNull @JsonProperty("fromPath") String fromPath,
@@ -39,19 +44,22 @@ public class PivotJson implements JsonTransformer {
         this.targetPath = targetPath;
         this.keyField = keyField;
         this.valueField = valueField;
-        this.compiledSourceJsonPath = JsonPath.compile(this.fromPath);
+        this.compiledSourceJsonPath = JsonTransformerContext.compileEvaluable(this.fromPath);
+        this.compiledTargetPath = TargetPath.fromString(this.targetPath);
     }
 
     @Override
     public void apply(@NotNull JsonTransformerContext context) {
-        List<ResolvedPaths> fromToMapping = context.queryAndResolveTargetPaths(fromPath, targetPath);
+        Map<String, Object> sourceValues = context.queryForPathsAndValues(compiledSourceJsonPath);
+        List<ResolvedPaths> fromToMapping = context.resolveTargetPaths(compiledTargetPath, new ArrayList<>(sourceValues.keySet()), false);
+        JsonProvider provider = context.getJsonProvider();
         fromToMapping.forEach(mapping -> {
-            Object fromNode = context.queryForValue(mapping.sourcePath);
-            if (!context.getJpathCtx().configuration().jsonProvider().isMap(fromNode)) {
+            Object fromNode = sourceValues.get(mapping.sourcePath);
+            if (!provider.isMap(fromNode)) {
                 throw new IllegalStateException("Expected an object at " + mapping.sourcePath);
             }
-            String key = context.getJpathCtx().configuration().jsonProvider().getMapValue(fromNode, keyField).toString();
-            Object value = context.getJpathCtx().configuration().jsonProvider().getMapValue(fromNode, valueField);
+            String key = provider.getMapValue(fromNode, keyField).toString();
+            Object value = provider.getMapValue(fromNode, valueField);
             String updatePath = mapping.targetUpdatePath;
             if (!"".equals(updatePath)) updatePath = updatePath + "." + key;
             context.applyUpdate(mapping.targetBasePath, updatePath, value);
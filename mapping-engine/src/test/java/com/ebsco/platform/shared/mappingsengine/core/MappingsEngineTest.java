@@ -0,0 +1,276 @@
+package com.ebsco.platform.shared.mappingsengine.core;
+
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParser;
+import com.ebsco.platform.shared.mappingsengine.xml.XmlToRecordParserConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappingsEngineTest extends BasePathTest {
+
+    private TransformsConfig transform(String type, String testPath, String... configKeyValues) {
+        Map<String, Object> config = new HashMap<>();
+        for (int i = 0; i < configKeyValues.length; i += 2) {
+            config.put(configKeyValues[i], configKeyValues[i + 1]);
+        }
+        return new TransformsConfig(type, null, null, testPath, config);
+    }
+
+    private Map<String, Object> freshDocument() throws Exception {
+        return new ObjectMapper().readValue(json, Map.class);
+    }
+
+    @Test
+    public void testCompiledPlanIsReusedAcrossDocuments() throws Exception {
+        List<TransformsConfig> transforms = Arrays.asList(
+                transform("copy", null, "fromPath", "$.a.b[*].c.d[?(@.e == 'foo')]", "targetPath", "@^c+renamed"),
+                transform("copy", "$.missing", "fromPath", "$.people[*].lastname", "targetPath", "@^people+skipped"),
+                transform("rename", "$.people", "fromPath", "$.people[*].firstname", "targetPath", "@^people+first"));
+        MappingsEngine engine = MappingsEngine.builder().transforms(transforms).build();
+
+        CompiledPlan plan = engine.getPlan();
+        assertEquals(3, plan.getSteps().size());
+
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> document = freshDocument();
+            engine.processDocument(document);
+
+            JsonTransformerContext context = new JsonTransformerContext(document, jpathConfig, jvalueConfig, jvalueListConfig);
+            assertEquals(singletonList("$['a']['b'][0]['c']['renamed']"), context.queryForPaths("$.a.b[*].c.renamed"));
+            assertEquals(Arrays.asList("$['people'][0]['first']", "$['people'][1]['first']"), context.queryForPaths("$.people[*].first"));
+            assertTrue(context.queryForPaths("$.people[*].firstname").isEmpty());
+            // the testPath did not match anything, so the step was skipped
+            assertTrue(context.queryForPaths("$.people[*].skipped").isEmpty());
+        }
+
+        // the same plan instance is used for every document
+        assertSame(plan, engine.getPlan());
+    }
+
+    @Test
+    // per step over both documents:  applied or skipped by its testPath, source matches and values set or deleted
+    public void testTransformMetrics() throws Exception {
+        List<TransformsConfig> transforms = Arrays.asList(
+                transform("copy", null, "fromPath", "$.a.b[*].c.d[?(@.e == 'foo')]", "targetPath", "@^c+renamed"),
+                transform("copy", "$.missing", "fromPath", "$.people[*].lastname", "targetPath", "@^people+skipped"),
+                transform("rename", "$.people", "fromPath", "$.people[*].firstname", "targetPath", "@^people+first"));
+        TransformHistograms histograms = new TransformHistograms();
+        MappingsEngine engine = MappingsEngine.builder().transforms(transforms).metrics(histograms).build();
+        engine.processDocument(freshDocument());
+        engine.processDocument(freshDocument());
+
+        List<TransformHistograms.TransformStats> stats = histograms.snapshot();
+        assertEquals(3, stats.size());
+        assertStats(stats.get(0), "copy", 2, 0, 2, 2);
+        assertStats(stats.get(1), "copy", 0, 2, 0, 0);
+        // a rename sets the new value and deletes the old one
+        assertStats(stats.get(2), "rename", 2, 0, 4, 8);
+
+        for (TransformHistograms.TransformStats step : stats) {
+            assertEquals(2, Arrays.stream(step.getNanosHistogram()).sum());
+            assertTrue(step.getMaxNanos() <= step.getTotalNanos());
+            assertTrue(step.percentileNanos(1.0) >= step.getMaxNanos());
+        }
+
+        histograms.reset();
+        assertTrue(histograms.snapshot().isEmpty());
+    }
+
+    private void assertStats(TransformHistograms.TransformStats stats, String type, long applied, long skipped, long matches, long updates) {
+        assertEquals(type, stats.getType());
+        assertEquals(applied, stats.getApplied());
+        assertEquals(skipped, stats.getSkipped());
+        assertEquals(matches, stats.getMatches());
+        assertEquals(updates, stats.getUpdates());
+    }
+
+    @Test
+    // the same measurements as the metrics, as flight recorder events of each step and of the serialized output
+    public void testFlightRecorderEvents() throws Exception {
+        Assume.assumeTrue(FlightRecorder.isAvailable());
+        List<TransformsConfig> transforms = Arrays.asList(
+                transform("copy", null, "fromPath", "$.a.b[*].c.d[?(@.e == 'foo')]", "targetPath", "@^c+renamed"),
+                transform("copy", "$.missing", "fromPath", "$.people[*].lastname", "targetPath", "@^people+skipped"),
+                transform("rename", "$.people", "fromPath", "$.people[*].firstname", "targetPath", "@^people+first"));
+        MappingsEngine engine = MappingsEngine.builder().transforms(transforms).build();
+        Map<String, Object> document = freshDocument();
+
+        List<RecordedEvent> events;
+        String output;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.ebsco.mappingsengine.Transform").withoutThreshold();
+            recording.enable("com.ebsco.mappingsengine.Serialize").withoutThreshold();
+            recording.start();
+            engine.processDocument(document);
+            output = FlightRecorderEvents.serialize("json", () -> new ObjectMapper().writeValueAsString(document));
+            recording.stop();
+            Path file = Files.createTempFile("engine", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file).stream()
+                        .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                        .collect(Collectors.toList());
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        assertEquals(4, events.size());
+        assertTransformEvent(events.get(0), 0, "copy", false, 1, 1);
+        assertTransformEvent(events.get(1), 1, "copy", true, 0, 0);
+        assertTransformEvent(events.get(2), 2, "rename", false, 2, 4);
+        assertEquals("com.ebsco.mappingsengine.Serialize", events.get(3).getEventType().getName());
+        assertEquals("json", events.get(3).getString("format"));
+        assertEquals(output.length(), events.get(3).getLong("characters"));
+    }
+
+    private void assertTransformEvent(RecordedEvent event, int step, String type, boolean skipped, long matches, long updates) {
+        assertEquals("com.ebsco.mappingsengine.Transform", event.getEventType().getName());
+        assertEquals(step, event.getInt("step"));
+        assertEquals(type, event.getString("type"));
+        assertEquals(skipped, event.getBoolean("skipped"));
+        assertEquals(matches, event.getLong("matches"));
+        assertEquals(updates, event.getLong("updates"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCompiledPlanIsImmutable() {
+        MappingsEngine engine = MappingsEngine.builder()
+                .transforms(singletonList(transform("delete", null, "deletePath", "$.people")))
+                .build();
+        engine.compile().getSteps().clear();
+    }
+
+    @Test
+    public void testCompileFailsFastOnInvalidTargetPath() {
+        MappingsEngine engine = MappingsEngine.builder()
+                .transforms(singletonList(transform("copy", null, "fromPath", "$.people[*]", "targetPath", "people+x")))
+                .build();
+        try {
+            engine.compile();
+            fail("compile should reject a target path without $ or @");
+        } catch (IllegalArgumentException ex) {
+            // yay!
+        }
+    }
+
+    @Test
+    public void testProcessDocumentsInParallelMatchesSequential() throws Exception {
+        Map<String, Object> insertConfig = new HashMap<>();
+        insertConfig.put("targetPath", "$+inserted");
+        insertConfig.put("jsonFragment", singletonMap("nested", new ArrayList<>(singletonList("x"))));
+        List<TransformsConfig> transforms = Arrays.asList(
+                new TransformsConfig("insert", null, null, null, insertConfig),
+                transform("insert", null, "targetPath", "$.inserted.nested+[+]", "jsonFragment", "y"),
+                transform("copy", null, "fromPath", "$.states[*].name", "targetPath", "@^states+cities[*].stateName"),
+                transform("multiselect", null, "fromPath", "$.contrib", "targetPath", "$+contributors",
+                        "filterExpression", "{rid: [].\"rid\" | [0], name: [].\"given-names\" | [0]}"),
+                transform("rename", null, "fromPath", "$.people[*].firstname", "targetPath", "@^people+first"));
+        MappingsEngine engine = MappingsEngine.builder().transforms(transforms).build();
+
+        Map<String, Object> expected = freshDocument();
+        engine.processDocument(expected);
+
+        List<Object> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            documents.add(freshDocument());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            engine.processDocuments(documents, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        // every document ends up the same as the one processed alone, nothing leaked between documents
+        for (Object document : documents) {
+            assertEquals(expected, document);
+        }
+        assertEquals(Arrays.asList("x", "y"), new JsonTransformerContext(documents.get(0), jpathConfig, jvalueListConfig)
+                .queryForValue("$.inserted.nested"));
+    }
+
+    @Test
+    public void testProcessDocumentsReportsFailuresAfterAllDocuments() throws Exception {
+        MappingsEngine engine = MappingsEngine.builder()
+                .transforms(singletonList(transform("pivot", null, "fromPath", "$.people[*]", "targetPath", "$+pivots",
+                        "keyField", "firstname", "valueField", "lastname")))
+                .build();
+
+        Map<String, Object> broken = freshDocument();
+        broken.put("people", singletonList("not an object"));
+        Map<String, Object> fine = freshDocument();
+        try {
+            engine.processDocuments(Arrays.asList(broken, fine), Runnable::run);
+            fail("the broken document should fail the batch");
+        } catch (IllegalStateException ex) {
+            // yay!
+        }
+        assertEquals("Stark", new JsonTransformerContext(fine, jpathConfig, jvalueListConfig).queryForValue("$.pivots.Michael"));
+    }
+
+    @Test
+    public void testMaterializedPathsGiveTheSameResultAsTheWholeTree() throws Exception {
+        String xml = "<doc><meta><ids><id type=\"doi\"><value>10.1/x</value></id><id type=\"isbn\"><value>123</value></id></ids>" +
+                "<edition>2</edition></meta><title>T</title><junk>x</junk><body><sec><p>a</p><p>b</p></sec></body></doc>";
+        List<TransformsConfig> transforms = Arrays.asList(
+                transform("copy", null, "fromPath", "$.doc.meta[0].ids[0].id[?(@.type == 'doi')].value", "targetPath", "@^id^ids+doi"),
+                transform("copy", null, "fromPath", "$.doc.title", "targetPath", "$.doc+heading[+]"),
+                transform("delete", "$.doc.junk", "deletePath", "$.doc.junk"));
+        MappingsEngine engine = MappingsEngine.builder().transforms(transforms).build();
+
+        List<List<String>> paths = engine.getMaterializedPaths();
+        assertEquals(new HashSet<>(Arrays.asList(Arrays.asList("doc", "meta", "ids", "id"), Arrays.asList("doc", "meta"),
+                Arrays.asList("doc", "title"), Arrays.asList("doc", "heading"), Arrays.asList("doc", "junk"))), new HashSet<>(paths));
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> whole = parseAndProcess(engine, XmlToRecordParserConfig.builder().build(), xml);
+        Map<String, Object> partial = parseAndProcess(engine, XmlToRecordParserConfig.builder().materializedPaths(paths).build(), xml);
+        assertEquals(mapper.readTree(mapper.writeValueAsString(whole)), mapper.readTree(mapper.writeValueAsString(partial)));
+        assertTrue(((Map<?, ?>) partial.get("doc")).get("body") instanceof RawValue);
+
+        // a path ending at the root, or a transform that is not a default one, may touch anything
+        assertEquals(singletonList(emptyList()), MappingsEngine.builder()
+                .transforms(singletonList(transform("insert", null, "targetPath", "$..p+x", "jsonFragment", "y"))).build()
+                .getMaterializedPaths());
+        assertEquals(singletonList(emptyList()), MaterializedPaths.of(singletonList(transform("custom", null, "fromPath", "$.doc")),
+                singletonMap("custom", JsonTransformer.class)));
+    }
+
+    private Map<String, Object> parseAndProcess(MappingsEngine engine, XmlToRecordParserConfig config, String xml) {
+        XmlToRecordParser.Result parsed = new XmlToRecordParser(config).parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        Map<String, Object> document = new HashMap<>();
+        document.put(parsed.getName(), parsed.getJsonNode());
+        engine.processDocument(document);
+        return document;
+    }
+}
@@ -8,7 +8,9 @@ import java.util.List;
 
 import static com.ebsco.platform.shared.mappingsengine.core.PathUtils.applyUpdatePath;
 import static com.ebsco.platform.shared.mappingsengine.core.PathUtils.resolveTargetPaths;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.joining;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -351,4 +353,102 @@ public class PathUtilsTest extends BasePathTest {
         String checkInsertInNewArray2 = read5.get(0);
         assertEquals("HOWDY 2", checkInsertInNewArray2);
     }
+
+    @Test
+    public void testUpdatesThroughArrayItemsStayInTheItems() {
+        String queryPath = "$.states[*].name";
+        List<String> matchingPaths = jpathCtx.read(queryPath);
+
+        // [*] in the middle of an update path applies the rest of the path to each item, and nowhere else
+        String eachCity = "@^states+cities[*].stateName";
+        resolveTargetPaths(jpathCtx, eachCity, matchingPaths).forEach(it ->
+                applyUpdatePath(jpathCtx, it.getTargetBasePath(), it.getTargetUpdatePath(), "STATE"));
+
+        Object json = jpathCtx.json();
+        assertEquals(Arrays.asList("STATE", "STATE", "STATE", "STATE"),
+                JsonPath.compile("$.states[*].cities[*].stateName").read(json, jvalueListConfig));
+        assertEquals(emptyList(), JsonPath.compile("$.states[*].stateName").read(json, jvalueListConfig));
+
+        // [0] in the middle of an update path continues with the remaining steps inside the first item
+        String firstCity = "@^states+cities[0].capital";
+        resolveTargetPaths(jpathCtx, firstCity, matchingPaths).forEach(it ->
+                applyUpdatePath(jpathCtx, it.getTargetBasePath(), it.getTargetUpdatePath(), true));
+
+        assertEquals(Arrays.asList("$['states'][0]['cities'][0]['capital']", "$['states'][1]['cities'][0]['capital']"),
+                jpathCtx.read("$.states[*].cities[*].capital"));
+    }
+
+    @Test
+    public void testUpdatesAtBasePathsThatAreNotNormalized() {
+        Object json = jpathCtx.json();
+
+        // with no update path every match is set
+        applyUpdatePath(jpathCtx, "$.states[*].name", "", "STATE");
+        assertEquals(Arrays.asList("STATE", "STATE"), JsonPath.compile("$.states[*].name").read(json, jvalueListConfig));
+
+        // otherwise the update is below the first match
+        applyUpdatePath(jpathCtx, "$.states[*]", "motto", "MOTTO");
+        assertEquals(singletonList("MOTTO"), JsonPath.compile("$.states[*].motto").read(json, jvalueListConfig));
+        assertEquals(singletonList("$['states'][0]['motto']"), jpathCtx.read("$.states[*].motto"));
+    }
+
+    @Test
+    public void testLastFirstItemUpdateAddsToAnEmptyArray() {
+        Object json = jpathCtx.json();
+        applyUpdatePath(jpathCtx, "$['states'][0]", "tags", jpathCtx.configuration().jsonProvider().createArray());
+        applyUpdatePath(jpathCtx, "$['states'][0]", "others", jpathCtx.configuration().jsonProvider().createArray());
+
+        // setting the first item of an empty array adds it, while [*] has no items to set
+        applyUpdatePath(jpathCtx, "$['states'][0]", "tags[0]", "first");
+        applyUpdatePath(jpathCtx, "$['states'][0]", "others[*]", "every");
+        assertEquals(singletonList("first"), JsonPath.compile("$.states[0].tags[*]").read(json, jvalueListConfig));
+        assertEquals(emptyList(), JsonPath.compile("$.states[0].others[*]").read(json, jvalueListConfig));
+
+        // an existing first item is replaced
+        applyUpdatePath(jpathCtx, "$['states'][0]", "tags[0]", "again");
+        assertEquals(singletonList("again"), JsonPath.compile("$.states[0].tags[*]").read(json, jvalueListConfig));
+    }
+
+    @Test
+    public void testInvalidArrayModifierFailsWhenParsed() {
+        try {
+            TargetPath.fromString("@^states+cities[2].name");
+            fail("Only [*], [*+], [0], [0+] and [+] are allowed in an update path");
+        } catch (IllegalArgumentException ex) {
+            // yay!
+        }
+    }
+
+    @Test
+    public void testPathSegmentsRoundTrip() {
+        String normalized = "$['a']['b'][10]['c']";
+        List<PathSegment> segments = PathSegment.parseNormalized(normalized);
+        assertEquals(Arrays.asList(PathSegment.property("a"), PathSegment.property("b"), PathSegment.index(10), PathSegment.property("c")),
+                segments);
+        assertEquals(normalized, PathSegment.render(segments));
+        assertEquals("$['a']['b']", PathSegment.render(segments, 2));
+        assertEquals("$", PathSegment.render(PathSegment.parseNormalized("$")));
+
+        assertEquals("['a']['b'][+]['c'][*+]", PathSegment.parseUpdate("a.b[+].c[*+]").stream()
+                .map(PathSegment::toString).collect(joining()));
+    }
+
+    @Test
+    public void testPathTrieFindsAncestorsAndDescendantsInIndexOrder() {
+        List<String> foundPaths = Arrays.asList(
+                "$['a']['b'][1]['c']",
+                "$['a']",
+                "$['a']['b'][10]",
+                "$['a']['b'][1]",
+                "$['a']['bb']",
+                "$['x']");
+        PathTrie index = new PathTrie(foundPaths);
+
+        assertEquals(Arrays.asList("$['a']['b'][1]['c']", "$['a']", "$['a']['b'][1]"),
+                index.findRelated("$['a']['b'][1]"));
+        assertEquals(Arrays.asList("$['a']['b'][1]['c']", "$['a']", "$['a']['b'][10]", "$['a']['b'][1]"),
+                index.findRelated("$['a']['b']"));
+        assertEquals(singletonList("$['a']"), index.findRelated("$['a']['z']['q']"));
+        assertEquals(emptyList(), index.findRelated("$['y']"));
+    }
 }
@@ -3,14 +3,19 @@ package com.ebsco.platform.shared.mappingsengine.core;
 import com.ebsco.platform.shared.mappingsengine.core.transformers.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.*;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TransformsTest extends BasePathTest {
 
@@ -186,6 +191,63 @@ public class TransformsTest extends BasePathTest {
         assertEquals("Santa Cruz", context.queryForValue("$.states[1].cities[1].name"));
     }
 
+    @Test
+    public void testIndexedLookupTransformer() throws Exception {
+        JsonTransformerContext context = makeContext();
+        List<LookupJson.LookupFilter> filters = new ArrayList<>();
+        filters.add(new LookupJson.LookupFilter("state", "@^states.name"));
+        filters.add(new LookupJson.LookupFilter("city", "@.name"));
+        filters.add(new LookupJson.LookupFilter("year", Collections.singletonList("2017")));
+
+        new LookupJson("classpath:/lookup-cities.tsv", filters, LookupJson.LookupApplyModes.merge, "$.states[*].cities[*]",
+                new ObjectMapper().readValue("{ \"population\": \"{{population}}\" }", Map.class)).apply(context);
+        printJson(context.getJsonObject(), "After Lookup");
+
+        // every filter has to match, the Nevada Denver and the 2016 rows do not
+        assertEquals("Denver", context.queryForValue("$.states[0].cities[0].name"));
+        assertEquals("3500000", context.queryForValue("$.states[0].cities[0].population"));
+        assertEquals("509490", context.queryForValue("$.states[0].cities[1].population"));
+        assertEquals("884363", context.queryForValue("$.states[1].cities[0].population"));
+        assertTrue(context.queryForPaths("$.states[1].cities[1].population").isEmpty());
+
+        // any of the values of one filter match, one fragment per row
+        filters = new ArrayList<>();
+        filters.add(new LookupJson.LookupFilter("city", "@.name"));
+        new LookupJson("classpath:/lookup-cities.tsv", filters, LookupJson.LookupApplyModes.insert, "$.states[0].cities[0]+history[+]",
+                new ObjectMapper().readValue("{ \"year\": \"{{year}}\", \"label\": \"{{city}}, {{state}}\" }", Map.class)).apply(context);
+
+        assertEquals(Arrays.asList("2016", "2017", "2017"), context.queryForValues("$.states[0].cities[0].history[*].year"));
+        assertEquals("Denver, Nevada", context.queryForValue("$.states[0].cities[0].history[2].label"));
+    }
+
+    @Test
+    public void testMappedLookupIndexMatchesTsv() throws Exception {
+        File indexFile = File.createTempFile("lookup-cities", ".idx");
+        indexFile.deleteOnExit();
+        LookupIndexFile.build("classpath:/lookup-cities.tsv", indexFile);
+
+        List<LookupJson.LookupFilter> filters = new ArrayList<>();
+        filters.add(new LookupJson.LookupFilter("state", "@^states.name"));
+        filters.add(new LookupJson.LookupFilter("city", "@.name"));
+        Map<String, Object> template = singletonMap("populations", singletonList("{{year}}: {{population}}"));
+
+        JsonTransformerContext fromTsv = new JsonTransformerContext(new ObjectMapper().readValue(json, Map.class), jpathConfig, jvalueListConfig);
+        new LookupJson("classpath:/lookup-cities.tsv", filters, LookupJson.LookupApplyModes.insert,
+                "$.states[*].cities[*]+census[+]", template).apply(fromTsv);
+        JsonTransformerContext fromIndex = new JsonTransformerContext(new ObjectMapper().readValue(json, Map.class), jpathConfig, jvalueListConfig);
+        new LookupJson("mmap:" + indexFile.getAbsolutePath(), filters, LookupJson.LookupApplyModes.insert,
+                "$.states[*].cities[*]+census[+]", template).apply(fromIndex);
+
+        assertEquals(Arrays.asList("2016: 3488010", "2017: 3500000"), fromIndex.queryForValues("$.states[0].cities[0].census[*].populations[0]"));
+        assertEquals(fromTsv.getJsonObject(), fromIndex.getJsonObject());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLookupFieldMustBeAColumn() throws Exception {
+        new LookupJson("classpath:/lookup-cities.tsv", singletonList(new LookupJson.LookupFilter("active", singletonList("true"))),
+                LookupJson.LookupApplyModes.merge, "$.states[*].cities[*]", singletonMap("population", "{{population}}"));
+    }
+
     @Test
     public void testInsertTransformer() throws Exception {
         JsonTransformerContext context = makeContext();
@@ -253,4 +315,42 @@ public class TransformsTest extends BasePathTest {
         assertEquals("Chen", context.queryForValue(".contribresult[0].surname"));
         assertEquals(al, context.queryForValue(".contribresult[1].surname"));
     }
+
+    @Test
+    public void testQueryForPathsAndValuesInOneWalk() throws Exception {
+        JsonTransformerContext context = makeContext();
+
+        // indefinite path with a filter, compiled so that paths and values come from the same evaluation
+        Map<String, Object> cities = context.queryForPathsAndValues(
+                JsonTransformerContext.compileEvaluable("$.states[*].cities[?(@.name =~ /^[BS].*/)].name"));
+        assertEquals(Arrays.asList("$['states'][0]['cities'][1]['name']", "$['states'][1]['cities'][0]['name']", "$['states'][1]['cities'][1]['name']"),
+                new ArrayList<>(cities.keySet()));
+        assertEquals(Arrays.asList("Boulder", "San Francisco", "Santa Cruz"), new ArrayList<>(cities.values()));
+
+        // definite path
+        Map<String, Object> person = context.queryForPathsAndValues(JsonTransformerContext.compileEvaluable("$.people[1].lastname"));
+        assertEquals(singletonMap("$['people'][1]['lastname']", "Stark"), person);
+
+        // missing, and a plain JsonPath that is read along its found paths instead
+        assertEquals(emptyMap(), context.queryForPathsAndValues(JsonTransformerContext.compileEvaluable("$.people[5].lastname")));
+        assertEquals(singletonMap("$['people'][0]['firstname']", "David"),
+                context.queryForPathsAndValues(JsonPath.compile("$.people[?(@.lastname == 'Smith')].firstname")));
+    }
+
+    @Test
+    public void testMemoizedValuesFollowUpdatesAndDeletes() throws Exception {
+        JsonTransformerContext context = makeContext();
+
+        assertEquals("David", context.queryForValue("$['people'][0]['firstname']"));
+        assertEquals("Michael", context.queryForValue("$['people'][1]['firstname']"));
+
+        // replacing a node drops what was memoized at and below it
+        context.applyUpdate("$['people'][0]", "", singletonMap("firstname", "Dave"));
+        assertEquals("Dave", context.queryForValue("$['people'][0]['firstname']"));
+
+        // removing an array item shifts the items after it
+        context.deleteValue("$['people'][0]");
+        assertEquals("Michael", context.queryForValue("$['people'][0]['firstname']"));
+        assertEquals(emptyList(), context.queryForValues("$['people'][1]['firstname']"));
+    }
 }
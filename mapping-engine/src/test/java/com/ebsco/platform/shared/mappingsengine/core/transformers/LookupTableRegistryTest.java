@@ -0,0 +1,130 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import com.ebsco.platform.shared.mappingsengine.config.TransformsConfig;
+import com.ebsco.platform.shared.mappingsengine.core.MappingsEngine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class LookupTableRegistryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String writeTable(String name, String contents) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return "file:" + file.getAbsolutePath();
+    }
+
+    private LookupJson lookup(String resource) {
+        return new LookupJson(resource, singletonList(new LookupJson.LookupFilter("city", "@.name")),
+                LookupJson.LookupApplyModes.merge, "$.cities[*]", singletonMap("population", "{{population}}"));
+    }
+
+    @Test
+    public void testTransformsShareOneTableUntilTheLastIsClosed() throws Exception {
+        String resource = writeTable("cities.tsv", "city\tpopulation\nDenver\t3500000\n");
+
+        LookupJson first = lookup(resource);
+        LookupJson second = lookup(resource);
+        assertEquals(2, LookupTableRegistry.referenceCount(resource));
+
+        first.close();
+        first.close(); // closing twice only lets go once
+        assertEquals(1, LookupTableRegistry.referenceCount(resource));
+        second.close();
+        assertEquals(0, LookupTableRegistry.referenceCount(resource));
+    }
+
+    @Test
+    public void testChangedContentsAreLoadedAgain() throws Exception {
+        String resource = writeTable("cities.tsv", "city\tpopulation\nDenver\t3500000\n");
+        LookupTableRegistry.Loader loader = () -> {
+            try (Reader reader = LookupJson.openLookupResource(resource)) {
+                return HeapLookupTable.readTsv(reader);
+            }
+        };
+
+        try (LookupTableRegistry.Lease first = LookupTableRegistry.acquire(resource, loader);
+             LookupTableRegistry.Lease same = LookupTableRegistry.acquire(resource, loader)) {
+            assertSame(first.getTable(), same.getTable());
+
+            Files.write(new File(resource.substring(5)).toPath(), "city\tpopulation\nBoulder\t509490\n".getBytes(StandardCharsets.UTF_8));
+            try (LookupTableRegistry.Lease changed = LookupTableRegistry.acquire(resource, loader)) {
+                assertNotSame(first.getTable(), changed.getTable());
+                assertEquals("Boulder", changed.getTable().value(0, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testClosingTheEngineReleasesItsTables() throws Exception {
+        String resource = writeTable("cities.tsv", "city\tpopulation\nDenver\t3500000\n");
+        Map<String, Object> config = new HashMap<>();
+        config.put("lookupResource", resource);
+        config.put("filters", singletonList(singletonMap("lookupField", "city")));
+        config.put("mode", "merge");
+        config.put("targetPath", "$.cities[*]");
+        config.put("jsonTemplate", singletonMap("population", "{{population}}"));
+        TransformsConfig transform = new TransformsConfig("lookup", null, null, null, config);
+
+        MappingsEngine one = MappingsEngine.builder().transforms(singletonList(transform)).build();
+        MappingsEngine two = MappingsEngine.builder().transforms(singletonList(transform)).build();
+        one.getPlan();
+        two.getPlan();
+        assertEquals(2, LookupTableRegistry.referenceCount(resource));
+
+        one.close();
+        assertEquals(1, LookupTableRegistry.referenceCount(resource));
+        two.close();
+        assertEquals(0, LookupTableRegistry.referenceCount(resource));
+    }
+
+    @Test
+    // a transform or engine that fails to build lets go of the tables it took
+    public void testFailedBuildReleasesItsTables() throws Exception {
+        String resource = writeTable("cities.tsv", "city\tpopulation\nDenver\t3500000\n");
+        try {
+            new LookupJson(resource, singletonList(new LookupJson.LookupFilter("country", "@.name")),
+                    LookupJson.LookupApplyModes.merge, "$.cities[*]", singletonMap("population", "{{population}}"));
+            fail("a lookup field the table does not have should fail");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(0, LookupTableRegistry.referenceCount(resource));
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("lookupResource", resource);
+        config.put("filters", singletonList(singletonMap("lookupField", "city")));
+        config.put("mode", "merge");
+        config.put("targetPath", "$.cities[*]");
+        config.put("jsonTemplate", singletonMap("population", "{{population}}"));
+        MappingsEngine engine = MappingsEngine.builder().transforms(asList(
+                new TransformsConfig("lookup", null, null, null, config),
+                new TransformsConfig("unknown", null, null, null, emptyMap()))).build();
+        try {
+            engine.getPlan();
+            fail("an unknown transform type should fail");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(0, LookupTableRegistry.referenceCount(resource));
+    }
+}
@@ -0,0 +1,32 @@
+package com.ebsco.platform.shared.mappingsengine.core.transformers;
+
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LookupTemplateTest {
+    private final JsonProvider provider = new JacksonJsonProvider();
+
+    @Test
+    // a lone placeholder renders the stored value itself, anything else joins the parts
+    public void testRenderedStrings() throws Exception {
+        LookupTable table = HeapLookupTable.readTsv(new StringReader("city\tpopulation\nDenver\t3500000\n"));
+        Map<String, Object> template = new LinkedHashMap<>();
+        template.put("name", "{{city}}");
+        template.put("missing", "{{country}}");
+        template.put("label", "{{city}} ({{ population }})");
+
+        Object rendered = new LookupTemplate(template, table).render(table, 0, provider);
+
+        assertSame(table.value(0, table.columnIndex("city")), provider.getMapValue(rendered, "name"));
+        assertEquals("", provider.getMapValue(rendered, "missing"));
+        assertEquals("Denver (3500000)", provider.getMapValue(rendered, "label"));
+    }
+}